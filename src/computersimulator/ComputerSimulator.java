@@ -2,7 +2,11 @@ package computersimulator;
 
 import computersimulator.cpu.Computer;
 import computersimulator.cpu.ControlUnit;
+import computersimulator.cpu.MappedMemoryStore;
+import computersimulator.cpu.Trace;
 import computersimulator.gui.OperatorConsole;
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,6 +26,7 @@ public class ComputerSimulator {
     public static void main(String[] args) {
         
         computer = new Computer();  // (contains memory, cpu, and IO)
+        computer.setParkWhenIdle(true); // keys are pressed on the Swing thread
                            
         OperatorConsole opconsole = new OperatorConsole();        
         opconsole.setComputer(computer); // pass computer instance into GUI
@@ -31,8 +36,17 @@ public class ComputerSimulator {
             filename = args[0];
         }       
         
-        // Pass file from command line to IO Controller        
-        computer.getIO().setFilename(filename);
+        if(MappedMemoryStore.isImage(new File(filename))){ 
+            // A saved memory image: start where it was saved instead of IPL
+            try {
+                computer.loadImage(new File(filename));
+            } catch (IOException ex) {
+                Logger.getLogger(ComputerSimulator.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } else {
+            // Pass file from command line to IO Controller        
+            computer.getIO().setFilename(filename);
+        }
         
         Logger.getLogger("").setLevel(Level.ALL);
         
@@ -40,7 +54,15 @@ public class ComputerSimulator {
         for ( int index = 0; index < handlers.length; index++ ) {
             handlers[index].setLevel( Level.INFO); // This is what level is output
         }
-                
+        
+        if(Trace.ENABLED){ // -Dcomputersimulator.trace=true: most recent events on exit
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    Trace.dump(System.err);
+                }
+            });
+        }
         
         SwingUtilities.invokeLater(opconsole);
     }
@@ -0,0 +1,121 @@
+package computersimulator.components;
+
+/**
+ * Barrel shifter and bitwise logic for Units of any width (1-64 bits).
+ * Every operation works on the raw bits of a value in a single step,
+ * regardless of the shift/rotate count. Inputs are expected to already be
+ * masked to size; results are always masked to size.
+ */
+public final class BarrelShifter {
+
+    private BarrelShifter() {
+    }
+
+    /**
+     * Shift as performed by SRC
+     * @param bits Raw bits
+     * @param size Width in bits
+     * @param leftRight shifted left (L/R =1) or right (L/R = 0)
+     * @param count number of positions to shift
+     * @param algorithmicLogical logically (A/L = 1) or arithmetically (A/L = 0)
+     * @return shifted bits
+     */
+    public static long shift(long bits, int size, int leftRight, int count, int algorithmicLogical){
+        if(leftRight==1){ // logical / algorithmic are identical
+            return BarrelShifter.shiftLeft(bits, size, count);
+        } else if(algorithmicLogical==0){
+            return BarrelShifter.shiftRightArithmetic(bits, size, count);
+        } else {
+            return BarrelShifter.shiftRightLogical(bits, size, count);
+        }
+    }
+
+    /**
+     * Rotate as performed by RRC
+     * @param bits Raw bits
+     * @param size Width in bits
+     * @param leftRight rotated left (L/R =1) or right (L/R = 0)
+     * @param count number of positions to rotate
+     * @return rotated bits
+     */
+    public static long rotate(long bits, int size, int leftRight, int count){
+        if(leftRight==1){
+            return BarrelShifter.rotateLeft(bits, size, count);
+        } else {
+            return BarrelShifter.rotateRight(bits, size, count);
+        }
+    }
+
+    public static long shiftLeft(long bits, int size, int count){
+        if(count<=0){
+            return bits;
+        } else if(count>=size){
+            return 0;
+        }
+        return (bits << count) & Unit.maskForSize(size);
+    }
+
+    public static long shiftRightLogical(long bits, int size, int count){
+        if(count<=0){
+            return bits;
+        } else if(count>=size){
+            return 0;
+        }
+        return bits >>> count;
+    }
+
+    /**
+     * Right shift filling with the sign bit. Shifting by size or more leaves
+     * every bit equal to the sign bit.
+     */
+    public static long shiftRightArithmetic(long bits, int size, int count){
+        if(count<=0){
+            return bits;
+        }
+        return (Unit.signExtend(bits, size) >> Math.min(count, 63)) & Unit.maskForSize(size);
+    }
+
+    /**
+     * Rotate left. Count is taken modulo size.
+     */
+    public static long rotateLeft(long bits, int size, int count){
+        if(count<=0){
+            return bits;
+        }
+        int c = count % size;
+        if(c==0){
+            return bits;
+        }
+        return ((bits << c) | (bits >>> (size - c))) & Unit.maskForSize(size);
+    }
+
+    /**
+     * Rotate right. Count is taken modulo size.
+     */
+    public static long rotateRight(long bits, int size, int count){
+        if(count<=0){
+            return bits;
+        }
+        int c = count % size;
+        if(c==0){
+            return bits;
+        }
+        return ((bits >>> c) | (bits << (size - c))) & Unit.maskForSize(size);
+    }
+
+    public static long and(long left, long right, int size){
+        return left & right & Unit.maskForSize(size);
+    }
+
+    public static long or(long left, long right, int size){
+        return (left | right) & Unit.maskForSize(size);
+    }
+
+    public static long xor(long left, long right, int size){
+        return (left ^ right) & Unit.maskForSize(size);
+    }
+
+    public static long not(long bits, int size){
+        return ~bits & Unit.maskForSize(size);
+    }
+}
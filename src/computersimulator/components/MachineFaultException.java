@@ -7,6 +7,7 @@ package computersimulator.components;
     *     0            Illegal Memory Address
     *     1            Illegal TRAP Code
     *     2            Illegal Opcode
+    *     3            Page Fault (outside virtual memory)
  */
 public class MachineFaultException extends Exception {
             
@@ -14,6 +15,7 @@ public class MachineFaultException extends Exception {
     public final static int ILLEGAL_MEMORY_ADDRESS = 0;
     public final static int ILLEGAL_TRAP_CODE = 1;
     public final static int ILLEGAL_OPCODE = 2;
+    public final static int PAGE_FAULT = 3;
 
     private int faultID;
    
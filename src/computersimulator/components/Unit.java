@@ -7,16 +7,48 @@ package computersimulator.components;
  */
 public class Unit {
     
-    private String data;   
+    // Raw bits of the unit, always masked to size (bit size-1 is the sign bit)
+    private long data;   
     private final int size;
+    
+    // Shared instances handed out by valueOf() refuse to be modified
+    private final boolean immutable;
 
-
-    private final int MIN_SIGNED_VALUE;
-    private final int MIN_UNSIGNED_VALUE;
+    // Precomputed masks for every supported width (index = number of bits)
+    private final static long[] MASKS = new long[65];
+    
+    // Per-width bounds (index = number of bits)
+    private final static int[] MIN_SIGNED_VALUE = new int[65];
+    private final static int[] MAX_SIGNED_VALUE = new int[65];
+    private final static int[] MAX_UNSIGNED_VALUE = new int[65];
+    private final static int MIN_UNSIGNED_VALUE = 0;
     
+    // Every value of every width up to this size is interned by valueOf()
+    private final static int INTERN_MAX_SIZE = 13;
+    private final static Unit[][] INTERNED = new Unit[INTERN_MAX_SIZE+1][];
     
-    private final int MAX_SIGNED_VALUE;
-    private final int MAX_UNSIGNED_VALUE;
+    static {
+        for(int i=1;i<64;i++){
+            MASKS[i] = (1L << i) - 1;
+        }
+        MASKS[64] = -1L;
+        
+        for(int i=1;i<=64;i++){
+            // MAX SIGNED VALUE = ((2xy(n-1))-1)      
+            MAX_SIGNED_VALUE[i] = (int)(Math.pow(2, (i-1))-1);        
+            // MIN SIGNED VALUE = -((2xy(n-1))-1)
+            MIN_SIGNED_VALUE[i] = -(MAX_SIGNED_VALUE[i]);
+            // MAX UNSIGNED VALUE (2xyn)-1
+            MAX_UNSIGNED_VALUE[i] = (int)(Math.pow(2, i))-1;
+        }
+        
+        for(int i=1;i<=INTERN_MAX_SIZE;i++){
+            INTERNED[i] = new Unit[1 << i];
+            for(int v=0;v<INTERNED[i].length;v++){
+                INTERNED[i][v] = new Unit(i, v, true);
+            }
+        }
+    }
     
     
     public Unit(int Size) {
@@ -25,40 +57,116 @@ public class Unit {
 
     
     public Unit(int Size, int Value){
-        if(Size>64 || Size<1){
-            throw new java.lang.ArithmeticException("Unit size valid range 1-64 ("+Size+")");
-           
-        }
+        Unit.checkSize(Size);
         this.size = Size;
-        
-        // MAX SIGNED VALUE = ((2xy(n-1))-1)      
-        this.MAX_SIGNED_VALUE = (int)(Math.pow(2, (this.size-1))-1);        
-        // MIN SIGNED VALUE = -((2xy(n-1))-1)
-        this.MIN_SIGNED_VALUE = -(this.MAX_SIGNED_VALUE);
-        
-        // MAX UNSIGNED VALUE (2xyn)-1
-        this.MAX_UNSIGNED_VALUE = (int)(Math.pow(2, this.size))-1;
-        this.MIN_UNSIGNED_VALUE = 0;
+        this.immutable = false;
         
         this.setValue(Value);
     }
     
+    /**
+     * Raw constructor used by the factories
+     * @param Size Number of bits
+     * @param bits Raw bits (masked to size)
+     * @param immutable true for shared instances
+     */
+    Unit(int Size, long bits, boolean immutable){
+        Unit.checkSize(Size);
+        this.size = Size;
+        this.immutable = immutable;
+        this.data = bits & MASKS[Size];
+    }
+    
     
     /**
-     * Copy constructor
+     * Copy constructor (the copy is always mutable)
      * @param c
      */
     public Unit(Unit c){        
         this.data = c.data;
         this.size = c.size;
-        
-        this.MAX_SIGNED_VALUE = c.MAX_SIGNED_VALUE;
-        this.MAX_UNSIGNED_VALUE = c.MAX_UNSIGNED_VALUE;
-        
-        this.MIN_SIGNED_VALUE = c.MIN_SIGNED_VALUE;
-        this.MIN_UNSIGNED_VALUE = c.MIN_UNSIGNED_VALUE;        
+        this.immutable = false;
     }    
     
+    /**
+     * Returns a shared, immutable Unit. Small widths (including every 13-bit
+     * address) come from a table built once; call new Unit(...) instead when
+     * the result is going to be modified.
+     * @param size Number of bits
+     * @param value Value (same range as the constructor)
+     * @return immutable Unit
+     */
+    public static Unit valueOf(int size, int value){
+        Unit.checkSize(size);
+        Unit.checkRange(size, value);
+        return Unit.valueOfBits(size, value & MASKS[size]);
+    }
+    
+    /**
+     * Returns a shared, immutable Unit holding raw bits
+     * @param size Number of bits
+     * @param bits Raw bits (cut to size)
+     * @return immutable Unit
+     */
+    public static Unit valueOfBits(int size, long bits){
+        if(size <= INTERN_MAX_SIZE){
+            return INTERNED[size][(int)(bits & MASKS[size])];
+        }
+        return new Unit(size, bits, true);
+    }
+    
+    /**
+     * Returns c if it is already immutable, otherwise an immutable copy.
+     * Registers that hand their contents out without cloning store snapshots.
+     * @param c Unit (may be null)
+     * @return immutable Unit of the same type and value
+     */
+    public static Unit snapshot(Unit c){
+        if(c==null || c.immutable){
+            return c;
+        }
+        return c.immutableCopy();
+    }
+    
+    /**
+     * @return immutable copy of this Unit (Word overrides to keep its type)
+     */
+    protected Unit immutableCopy(){
+        return Unit.valueOfBits(this.size, this.data);
+    }
+    
+    /**
+     * @return true if this is a shared instance which cannot be modified
+     */
+    public boolean isImmutable(){
+        return this.immutable;
+    }
+    
+    private static void checkSize(int Size){
+        if(Size>64 || Size<1){
+            throw new java.lang.ArithmeticException("Unit size valid range 1-64 ("+Size+")");
+        }
+    }
+    
+    /**
+     * Throws if value cannot be stored in a Unit of the given size
+     * @param size Number of bits
+     * @param value Value
+     * @throws ArithmeticException
+     */
+    public static void checkRange(int size, int value){
+        if(value > MAX_UNSIGNED_VALUE[size] || value < MIN_SIGNED_VALUE[size]){
+            throw new java.lang.ArithmeticException("{"+value+"} Out Of Range: ["+MIN_UNSIGNED_VALUE+" through "+MAX_SIGNED_VALUE[size]+"]"); 
+            //@TODO: this is a great location to throw a special overflow exception which can be caught later
+        }
+    }
+    
+    private void checkMutable(){
+        if(this.immutable){
+            throw new UnsupportedOperationException("Shared Unit cannot be modified (copy it first): "+this);
+        }
+    }
+    
     /**
      * Clone static (supports null clone)
      * @param c
@@ -97,27 +205,44 @@ public class Unit {
         return size;
     }
 
+    /**
+     * Mask for a given width
+     * @param size Number of bits (1-64)
+     * @return mask with the low size bits set
+     */
+    public static long maskForSize(int size){
+        return MASKS[size];
+    }
+    
+    /**
+     * Smallest signed value for a given width (see getMinSignedValue)
+     * @param size Number of bits (1-64)
+     * @return MIN_SIGNED_VALUE
+     */
+    public static int minSignedValueForSize(int size){
+        return MIN_SIGNED_VALUE[size];
+    }
+    
+    /**
+     * Sign extends the low size bits of raw to a full long
+     * @param raw Raw bits
+     * @param size Number of significant bits
+     * @return sign extended value
+     */
+    public static long signExtend(long raw, int size){
+        int shift = 64 - size;
+        return (raw << shift) >> shift;
+    }
+
     /**
      *
      * @param value Integer
      * @throws ArithmeticException
      */
     public final void setValue(int value) throws java.lang.ArithmeticException {        
-        if(value <= this.MAX_UNSIGNED_VALUE && value >= this.MIN_SIGNED_VALUE){           
-            String raw = Integer.toBinaryString(value);            
-            
-            char signExtend = (value < 0) ? raw.charAt(0) : '0';
-            
-            while(raw.length() < this.size){
-                raw = signExtend + raw;
-            }
-            
-            this.data=raw;
-            
-        } else {
-            throw new java.lang.ArithmeticException("{"+value+"} Out Of Range: ["+this.MIN_UNSIGNED_VALUE+" through "+this.MAX_SIGNED_VALUE+"]"); 
-            //@TODO: this is a great location to throw a special overflow exception which can be caught later
-        }
+        this.checkMutable();
+        Unit.checkRange(this.size, value);
+        this.data = value & MASKS[this.size];            
     }        
     
     
@@ -125,27 +250,67 @@ public class Unit {
      *
      * @return Value as Signed Integer
      */
-    public Integer getSignedValue(){        
-        return this.getLongValue().intValue();
+    public int getSignedValue(){        
+        return (int)this.getLongValue();
     }
     
     /**
      * @return Value as Unsigned Integer
      */
-    public Integer getUnsignedValue(){
-        return Integer.parseInt(this.data, 2);
+    public int getUnsignedValue(){
+        return (int)this.data;
     }
     
     
     /**
-     * @return Value as Unsigned Long
+     * @return Value as Unsigned Long (units under 32 bits are sign extended to 32 bits)
      */
-    public Long getLongValue(){
-        String res = this.data;
-        while(res.length() < 32){ // sign extend
-            res = res.charAt(0) + res;
+    public long getLongValue(){
+        if(this.size < 32){ // sign extend
+            return Unit.signExtend(this.data, this.size) & 0xFFFFFFFFL;
         }
-        return Long.parseLong(res, 2);
+        return this.data;
+    }
+    
+    /**
+     * @return Raw bits of this Unit (no sign extension)
+     */
+    public long getBits(){
+        return this.data;
+    }
+    
+    /**
+     * Extracts a bit field without allocating. Indexes are counted from the
+     * most significant bit, the same as decomposeByOffset.
+     * @param start Start Index
+     * @param stop  Stop Index
+     * @return Unsigned value of bits start to stop
+     */
+    public int bits(int start, int stop){
+        return (int)((this.data >>> (this.size - 1 - stop)) & MASKS[stop - start + 1]);
+    }
+    
+    /**
+     * Extracts a single bit without allocating.
+     * @param index Index (0 is the most significant bit)
+     * @return 1 or 0
+     */
+    public int bit(int index){
+        return (int)((this.data >>> (this.size - 1 - index)) & 1L);
+    }
+    
+    /**
+     * Writes value into bits start to stop, leaving the other bits alone.
+     * Value is cut to the width of the field.
+     * @param start Start Index
+     * @param stop  Stop Index
+     * @param value Field value
+     */
+    public void deposit(int start, int stop, int value){
+        this.checkMutable();
+        int shift = this.size - 1 - stop;
+        long fieldMask = MASKS[stop - start + 1] << shift;
+        this.data = (this.data & ~fieldMask) | (((long)value << shift) & fieldMask);
     }
     
     /**
@@ -155,18 +320,7 @@ public class Unit {
      * @return Unit(Start to Stop)
      */
     public Unit decomposeByOffset(int start, int stop){
-        Integer[] digits = this.getBinaryArray();
-        StringBuilder tempBinaryString = new StringBuilder();
-        
-        for(int i=start; i<=stop;i++){
-            tempBinaryString.append(digits[i]);            
-        }
-        
-        String binary = tempBinaryString.toString();
-        
-        int intValue = Integer.parseInt(binary, 2);
-        
-        return new Unit(binary.length(), intValue);        
+        return new Unit(stop - start + 1, this.bits(start, stop));        
     }
 
     /**
@@ -175,11 +329,7 @@ public class Unit {
      * @return Unit(index)
      */
     public Unit decomposeByIndex(int index){
-        Integer[] digits = this.getBinaryArray();
-        
-        int intValue = Integer.parseInt(String.valueOf(digits[index]), 2);
-        
-        return new Unit(1, intValue);        
+        return new Unit(1, this.bit(index));        
     }
 
     /** 
@@ -197,11 +347,9 @@ public class Unit {
      * @return Array of Bits (Only possible values are 1/0 despite integer storage)
      */
     public Integer[] getBinaryArray(){
-        char[] temp=this.data.toCharArray();
-        
-        Integer[] digits = new Integer[temp.length];
-        for (int i = 0; i < temp.length; ++i) {
-            digits[i]= Character.digit(temp[i],10);
+        Integer[] digits = new Integer[this.size];
+        for (int i = 0; i < this.size; ++i) {
+            digits[i]= (int)((this.data >>> (this.size - 1 - i)) & 1L);
         }
 
         return digits;  
@@ -212,7 +360,11 @@ public class Unit {
      * @param raw Integer Binary Array
      */
     public void setValueBinaryArray(Integer[] raw){
-        this.setValueBinary(Unit.IntArrayToBinaryString(raw));
+        long bits = 0;
+        for (Integer el : raw) {
+            bits = (bits << 1) | (el & 1);
+        }
+        this.setBits(bits, raw.length);
     }
     
     /**
@@ -222,31 +374,8 @@ public class Unit {
      * @param algorithmicLogical logically (A/L = 1) or arithmetically (A/L = 0)
      */
     public void shiftByCount(int leftRight, int count, int algorithmicLogical){
-        if(leftRight==1){ // left
-            // logical / algorithmic are identical
-            while(count>0){
-                Integer[] shiftTemp= this.getBinaryArray();
-                for(int i=0; i<this.size-1; i++){
-                    shiftTemp[i] = shiftTemp[i+1];
-                }
-                shiftTemp[this.size-1] = 0; // shiftOff in Rotate
-                this.setValueBinaryArray(shiftTemp);
-                count--;
-            }
-        } else { // right            
-            while(count>0){
-                Integer[] shiftTemp= this.getBinaryArray();
-                int shiftOn=(algorithmicLogical==0) ? shiftTemp[0] : 0; 
-
-                for(int i=this.size-1; i>0; i--){
-                    shiftTemp[i] = shiftTemp[i-1];
-                }
-                shiftTemp[0] = shiftOn;
-                this.setValueBinaryArray(shiftTemp);
-                count--;
-            }
-            
-        }
+        this.checkMutable();
+        this.data = BarrelShifter.shift(this.data, this.size, leftRight, count, algorithmicLogical);
     }
     
     /**
@@ -255,30 +384,8 @@ public class Unit {
      * @param count number of times to rotate
      */
     public void rotateByCount(int leftRight, int count){
-        if(leftRight==1){ // left
-            // logical / algorithmic are identical
-            while(count>0){
-                Integer[] shiftTemp= this.getBinaryArray();
-                int shiftOff = shiftTemp[0]; // shifted on to the right side below
-                for(int i=0; i<this.size-1; i++){
-                    shiftTemp[i] = shiftTemp[i+1];
-                }
-                shiftTemp[this.size-1] = shiftOff; 
-                this.setValueBinaryArray(shiftTemp);
-                count--;
-            }
-        } else { // right            
-            while(count>0){
-                Integer[] shiftTemp= this.getBinaryArray();
-                int shiftOff = shiftTemp[this.size-1]; // used in rotate
-                for(int i=this.size-1; i>0; i--){
-                    shiftTemp[i] = shiftTemp[i-1];
-                }
-                shiftTemp[0] = shiftOff;
-                this.setValueBinaryArray(shiftTemp);
-                count--;
-            }            
-        }
+        this.checkMutable();
+        this.data = BarrelShifter.rotate(this.data, this.size, leftRight, count);
     }    
     
     /**
@@ -286,8 +393,11 @@ public class Unit {
      * @return Binary representation as a String
      */
     public String getBinaryString(){        
-        Integer[] arr = getBinaryArray();
-        return Unit.IntArrayToBinaryString(arr);                
+        char[] digits = new char[this.size];
+        for (int i = 0; i < this.size; i++) {
+            digits[i] = (((this.data >>> (this.size - 1 - i)) & 1L) == 1L) ? '1' : '0';
+        }
+        return new String(digits);                
     }
     
     public static String IntArrayToBinaryString(Integer [] arr){
@@ -303,32 +413,60 @@ public class Unit {
      * @param binary
      */
     public void setValueBinary(String binary){
-        if(binary.length()==this.size){
-            this.data = binary;
-        } else if(binary.length() < this.size){
-            do { // extend sign until bitsize matches
-                binary = binary.substring(0,1) + binary;
-            } while(binary.length() < this.size);
-            this.data=binary;
+        // only the low 64 digits can matter after the overflow cut below
+        int first = Math.max(0, binary.length() - 64);
+        long bits = 0;
+        for (int i = first; i < binary.length(); i++) {
+            bits = (bits << 1) | ((binary.charAt(i) == '1') ? 1L : 0L);
+        }
+        this.setBits(bits, binary.length());
+    }
+    
+    /**
+     * Loads raw bits of a given width, sign extending narrower values and 
+     * cutting wider values from the left.
+     * @param bits Raw bits
+     * @param length Number of significant bits in raw
+     */
+    final void setBits(long bits, int length){
+        this.checkMutable();
+        this.data = Unit.resizeBits(bits, length, this.size);
+    }
+    
+    /**
+     * Resizes raw bits, sign extending narrower values and cutting wider
+     * values from the left.
+     * @param bits Raw bits
+     * @param length Number of significant bits in raw
+     * @param size Target number of bits
+     * @return bits masked to size
+     */
+    public static long resizeBits(long bits, int length, int size){
+        if(length==size){
+            return bits & MASKS[size];
+        } else if(length < size){ // extend sign until bitsize matches
+            return Unit.signExtend(bits, length) & MASKS[size];
         } else {
-            this.data = binary.substring(binary.length()-this.size); // cut from end (overflow left)
             System.out.println("ERROR: overflow in set value -- this should never happen!!!!!");
+            return bits & MASKS[size]; // cut from end (overflow left)
         }
-            
     }
+    /**
+     * Loads raw bits, cutting anything wider than this Unit
+     * @param bits Raw bits
+     */
+    public void setValueBits(long bits){
+        this.checkMutable();
+        this.data = bits & MASKS[this.size];
+    }
+    
     /**
      * Returns an inverted Unit
      * @return Unit Inverted
      */
     public Unit logicalNOT(){        
-        Integer[] ref = this.getBinaryArray();
-        
-        for (int i = 0; i < ref.length; i++){
-            ref[i] = 1 - ref[i];
-        }
-        
         Unit inverted = new Unit(this.size);
-        inverted.setValueBinaryArray(ref);
+        inverted.data = BarrelShifter.not(this.data, this.size);
         
         return inverted;
     }
@@ -339,15 +477,8 @@ public class Unit {
      * @return Unit result
      */
     public Unit logicalOR(Unit operand2){
-        Integer[] left = this.getBinaryArray();
-        Integer[] right = operand2.getBinaryArray();
-        
-        for (int i = 0; i < left.length; i++){
-            left[i] = left[i] | right[i];
-        }
-        
         Unit result = new Unit(this.size);
-        result.setValueBinaryArray(left);
+        result.data = BarrelShifter.or(this.data, operand2.data, this.size);
         
         return result;
     }
@@ -358,15 +489,20 @@ public class Unit {
      * @return Unit result
      */
     public Unit logicalAND(Unit operand2){
-        Integer[] left = this.getBinaryArray();
-        Integer[] right = operand2.getBinaryArray();
-        
-        for (int i = 0; i < left.length; i++){
-            left[i] = left[i] & right[i];
-        }
+        Unit result = new Unit(this.size);
+        result.data = BarrelShifter.and(this.data, operand2.data, this.size);
         
+        return result;
+    }
+    
+    /**
+     * Performs an XOR operation on this operand with operand2
+     * @param operand2
+     * @return Unit result
+     */
+    public Unit logicalXOR(Unit operand2){
         Unit result = new Unit(this.size);
-        result.setValueBinaryArray(left);
+        result.data = BarrelShifter.xor(this.data, operand2.data, this.size);
         
         return result;
     }
@@ -382,7 +518,7 @@ public class Unit {
      * @return 
      */
     public int getMinSignedValue() {
-        return this.MIN_SIGNED_VALUE;
+        return Unit.minSignedValueForSize(this.size);
     }
     
     /**
@@ -390,7 +526,7 @@ public class Unit {
      * @return 
      */
     public int getMaxSignedValue() {
-        return this.MAX_SIGNED_VALUE;
+        return MAX_SIGNED_VALUE[this.size];
     }
     
 }
@@ -8,6 +8,16 @@ package computersimulator.components;
 public class Word extends Unit {
     
     private final static int WORD_SIZE=20;
+    
+    // Shared words for small negatives and every 13-bit address value
+    private final static int CACHE_LOW=-128;
+    private final static int CACHE_HIGH=8191;
+    private final static Word[] CACHE = new Word[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for(int i=0;i<CACHE.length;i++){
+            CACHE[i] = new Word(Unit.maskForSize(WORD_SIZE) & (i + CACHE_LOW), true);
+        }
+    }
 
     public Word() {
         super(WORD_SIZE);
@@ -31,10 +41,62 @@ public class Word extends Unit {
      */
     public Word(Unit c){
         super(WORD_SIZE);
-        this.setValueBinary(c.getBinaryString());
+        this.setBits(c.getBits(), c.getSize());
     }
     
     
+    private Word(long bits, boolean immutable){
+        super(WORD_SIZE, bits, immutable);
+    }
+    
+    /**
+     * Returns a shared, immutable Word. Use new Word(...) when the result
+     * is going to be modified.
+     * @param value Value (same range as the constructor)
+     * @return immutable Word
+     */
+    public static Word valueOf(int value){
+        Unit.checkRange(WORD_SIZE, value);
+        return Word.valueOfBits(value);
+    }
+    
+    /**
+     * Immutable version of the conversion constructor
+     * @param c
+     * @return immutable Word
+     */
+    public static Word valueOf(Unit c){
+        return Word.valueOfBits(Unit.resizeBits(c.getBits(), c.getSize(), WORD_SIZE));
+    }
+    
+    /**
+     * Returns a shared, immutable Word holding raw bits, with no range 
+     * check: bit 19 set is a negative number, 0x80000 included
+     * @param bits Raw bits (cut to 20)
+     * @return immutable Word
+     */
+    public static Word valueOfBits(long bits){
+        long signed = Unit.signExtend(bits & Unit.maskForSize(WORD_SIZE), WORD_SIZE);
+        if(signed >= CACHE_LOW && signed <= CACHE_HIGH){
+            return CACHE[(int)signed - CACHE_LOW];
+        }
+        return new Word(bits, true);
+    }
+    
+    /**
+     * Returns c if it is already immutable, otherwise an immutable copy.
+     * @param c Word (may be null)
+     * @return immutable Word
+     */
+    public static Word snapshot(Word c){
+        return (Word)Unit.snapshot(c);
+    }
+    
+    @Override
+    protected Word immutableCopy(){
+        return Word.valueOfBits(this.getBits());
+    }
+    
     /**
      * Clone static (supports null clone)
      * @param c
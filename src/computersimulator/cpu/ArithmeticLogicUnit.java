@@ -1,9 +1,6 @@
 package computersimulator.cpu;
 
 import computersimulator.components.Unit;
-import computersimulator.components.Word;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * This is the ALU class. It receives 3 inputs, processes them, and sets an 
@@ -15,11 +12,13 @@ public class ArithmeticLogicUnit implements IClockCycle {
     
 
     
-    // OP1 - Unit - Up to 20 Bits
-    private Unit operand1;
+    // OP1 - raw bits and width - Up to 20 Bits (width 0 means nothing latched)
+    private long operand1;
+    private int operand1Size;
     
-    // OP2 - Unit - Up to 20 Bits
-    private Unit operand2;
+    // OP2 - raw bits and width - Up to 20 Bits
+    private long operand2;
+    private int operand2Size;
     
     //CTRL - Used to signal operation
     private int control;
@@ -30,10 +29,25 @@ public class ArithmeticLogicUnit implements IClockCycle {
     public final static int CONTROL_DIVIDE=4;
     
     
-    // RES - Unit - Up to 20 Bits
-    private Unit result;
+    // RES - raw bits and width - Up to 20 Bits (40 for multiply/divide)
+    private long result;
+    private int resultSize;
     
     private int state;
+    
+    // Last operation whose condition flags have not been written to CC yet
+    // (CONTROL_NONE when nothing is pending)
+    private int flagsOperation = CONTROL_NONE;
+    private long flagsOperand1;
+    private int flagsOperand1Size;
+    private long flagsOperand2;
+    private int flagsOperand2Size;
+    private long flagsResult;
+    
+    // Multiply/Divide pack two words into one result: HI/quotient in the top 
+    // 20 bits, LOW/remainder in the bottom 20 bits
+    public final static int HALF_WORD_SIZE=20;
+    public final static int DOUBLE_WORD_SIZE=40;
 
     private final static int STATE_NONE = 0;
     private final static int STATE_START_COMPUTATION = 1;
@@ -61,7 +75,7 @@ public class ArithmeticLogicUnit implements IClockCycle {
     public void clockCycle() throws Exception {
         switch(this.state){
             case ArithmeticLogicUnit.STATE_START_COMPUTATION:
-                if(this.operand1==null || this.operand2==null){
+                if(this.operand1Size==0 || this.operand2Size==0){
                     throw new Exception("ALU Error Missing Operand");
                 }
                 this.compute();
@@ -87,52 +101,90 @@ public class ArithmeticLogicUnit implements IClockCycle {
      * Used internally on the clock cycle when start computation is set.
      */
     private void compute(){
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: Starting Computation.");
+        // operands are zero extended to the wider of the two
+        int size = (operand1Size > operand2Size ? operand1Size : operand2Size);
         switch(this.control){
             case ArithmeticLogicUnit.CONTROL_ADD:
-                this.setResult(this.add(operand1, operand2));
+                this.setResult(this.add(operand1, operand2, size), size);
                 break;
             case ArithmeticLogicUnit.CONTROL_SUBTRACT:
-                this.setResult(this.subtract(operand1, operand2));                 
+                this.setResult(this.subtract(operand1, operand2, size), size);                 
                 break;
             case ArithmeticLogicUnit.CONTROL_MULTIPLY:
-                this.setResult(this.multiply(operand1, operand2));                 
+                this.setResult(this.multiply(operand1, operand1Size, operand2, operand2Size), ArithmeticLogicUnit.DOUBLE_WORD_SIZE);                 
                 break;
             case ArithmeticLogicUnit.CONTROL_DIVIDE:
-                this.setResult(this.divide(operand1, operand2)); 
+                this.setResult(this.divide(operand1, operand1Size, operand2, operand2Size), ArithmeticLogicUnit.DOUBLE_WORD_SIZE); 
             break;
             case ArithmeticLogicUnit.CONTROL_NONE:
             default:
-                Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: Unhandled ALU operation");
                 break;
         }                
                
         // Reset inputs & set state to finished
         this.control = ArithmeticLogicUnit.CONTROL_NONE;
-        this.operand1=null;
-        this.operand2=null;       
+        this.operand1Size=0;
+        this.operand2Size=0;       
         this.setState(ArithmeticLogicUnit.STATE_COMPUTATION_FINISHED);
     }
         
 
     
     
+    /**
+     * @return view of OP1 (null when nothing is latched)
+     */
     public Unit getOperand1() {
-        return Unit.cloneUnit(operand1);
+        return (operand1Size==0) ? null : Unit.valueOfBits(operand1Size, operand1);
     }
 
     public void setOperand1(Unit oper1) {
-        this.operand1 = Unit.cloneUnit(oper1);
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: OP1<-{0}", this.operand1);
+        if(oper1==null){
+            this.operand1Size = 0;
+        } else {
+            this.setOperand1(oper1.getBits(), oper1.getSize());
+        }
+    }
+    
+    /**
+     * Latch OP1 from raw bits
+     * @param bits Raw bits
+     * @param size Number of bits
+     */
+    public void setOperand1(long bits, int size) {
+        this.operand1 = bits & Unit.maskForSize(size);
+        this.operand1Size = size;
+        if(Trace.ENABLED){
+            Trace.record(Trace.ALU_OPERAND1, this.operand1);
+        }
     }
 
+    /**
+     * @return view of OP2 (null when nothing is latched)
+     */
     public Unit getOperand2() {
-        return Unit.cloneUnit(operand2);
+        return (operand2Size==0) ? null : Unit.valueOfBits(operand2Size, operand2);
     }
 
     public void setOperand2(Unit oper2) {        
-        this.operand2 = Unit.cloneUnit(oper2);
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: OP2<-{0}", this.operand2);
+        if(oper2==null){
+            this.operand2Size = 0;
+        } else {
+            this.setOperand2(oper2.getBits(), oper2.getSize());
+        }
+    }
+    
+    /**
+     * Latch OP2 from raw bits
+     * @param bits Raw bits
+     * @param size Number of bits
+     */
+    public void setOperand2(long bits, int size) {
+        this.operand2 = bits & Unit.maskForSize(size);
+        this.operand2Size = size;
+        if(Trace.ENABLED){
+            Trace.record(Trace.ALU_OPERAND2, this.operand2);
+        }
     }
 
     public int getControl() {
@@ -141,7 +193,9 @@ public class ArithmeticLogicUnit implements IClockCycle {
 
     public void setControl(int controlState) {        
         this.control = controlState;
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: CNTRL<-{0}", this.control);
+        if(Trace.ENABLED){
+            Trace.record(Trace.ALU_CONTROL, this.control);
+        }
     }
 
     public int getState() {
@@ -149,238 +203,219 @@ public class ArithmeticLogicUnit implements IClockCycle {
     }
 
     private void setState(int state) {
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: State Change: {0}", state);
+        if(Trace.ENABLED){
+            Trace.record(Trace.ALU_STATE, state);
+        }
         this.state = state;
     }    
 
     public Unit getResult() {
         if(this.getState() == ArithmeticLogicUnit.STATE_COMPUTATION_FINISHED){
-            return Unit.cloneUnit(result);
+            return Unit.valueOfBits(resultSize, result);
         } else {
             return null;
         }
     }
+    
+    /**
+     * Result converted to another width, the same way the Word conversion
+     * constructor would (sign extends narrower results).
+     * @param size Number of bits wanted
+     * @return raw bits
+     */
+    public long getResultBits(int size) {
+        return Unit.resizeBits(result, resultSize, size);
+    }
 
-    private void setResult(Unit res) {
-        this.result = Unit.cloneUnit(res);
-        Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "[ALU]: Result: {0}", this.result);
+    private void setResult(long bits, int size) {
+        this.result = bits;
+        this.resultSize = size;
+        if(Trace.ENABLED){
+            Trace.record(Trace.ALU_RESULT, this.result, this.resultSize);
+        }
     }
     
  
     /**
-     * Perform subtract operation implements twos complement math. 
-     * @param operand1
-     * @param operand2
-     * @return rets
+     * Perform subtract operation implements twos complement math: 
+     * operand1 + (NOT operand2 + 1)
+     * @param operand1 Raw bits
+     * @param operand2 Raw bits
+     * @param size Number of bits
+     * @return difference (raw bits)
      */
-    private Unit subtract(Unit operand1, Unit operand2) {        
-        String op1Str = operand1.getBinaryString();
-        String op2Str = operand2.getBinaryString();
-       
-        // prepare both operands
-        int diff = Math.abs(op1Str.length() - op2Str.length());
-        String zeros = "";
-        for (int i = 0; i < diff; i++) {
-            zeros += "0";
-        }
-        if (op1Str.length() > op2Str.length()) {
-            op2Str = zeros + op2Str;
-        } else {
-            op1Str = zeros + op1Str;
-        }
-         
-        // prepare to invert bits
-        Integer[] op2Binary = new Integer[op2Str.length()];
-        for (int i = 0; i < op2Binary.length; i ++) {
-            op2Binary[i] = Integer.parseInt(op2Str.charAt(i) + "");
-        }
-        for (int i = 0; i < op2Binary.length; i++) {                            
-            op2Binary[i] = 1 - op2Binary[i];
-        }
-        op2Str = Unit.IntArrayToBinaryString(op2Binary);    // get inverted operand2
-        
-        // add 1 bit to operand 2 to make it negative
-        String oneBitStr = createOneBitString(op1Str.length() -1);              // create 1 bit string 
-        String negativeOperand2 = addBinaryOperands(op2Str, oneBitStr);		// add one bit to operand2 
-        
-        // Perform addition 
-        String finalResultStr = addBinaryOperands(negativeOperand2, op1Str);    // add operands
-        
-        int size = (operand1.getSize() > operand2.getSize() ? operand1.getSize() : operand2.getSize());
-        
-        Unit resultTemporary = Unit.UnitFromBinaryString(finalResultStr);
-        Unit resultResized = new Unit(size);        
-        resultResized.setValueBinary(resultTemporary.getBinaryString());
+    private long subtract(long operand1, long operand2, int size) {        
+        long negativeOperand2 = (~operand2 + 1) & Unit.maskForSize(size);
         
-         // check underflow
-         if (checkUnderflow(resultResized)) {
-            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        } else {
-            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        } 
-
-        return resultResized;        
+        return this.add(operand1, negativeOperand2, size);
     }
     
     /**
      * Perform addition operation implements twos complement math. 
-     * @param operand1
-     * @param operand2 
-     * @return  rets
-     * 
+     * Flags: OVERFLOW, UNDERFLOW (see materializeConditions)
+     * @param operand1 Raw bits
+     * @param operand2 Raw bits
+     * @param size Number of bits
+     * @return  sum (raw bits)
      */    
-    private Unit add(Unit operand1, Unit operand2){
-        String op1Str = operand1.getBinaryString();
-        String op2Str = operand2.getBinaryString();
+    private long add(long operand1, long operand2, int size){
+        long mask = Unit.maskForSize(size);
+        long res = ((operand1 & mask) + (operand2 & mask)) & mask;
         
-        String finalResultStr = addBinaryOperands(op1Str, op2Str);       // add operands
-              
-        int size = (operand1.getSize() > operand2.getSize() ? operand1.getSize() : operand2.getSize());
-        
-        Unit resultTemporary = Unit.UnitFromBinaryString(finalResultStr);
-        Unit resultResized = new Unit(size);        
-        resultResized.setValueBinary(resultTemporary.getBinaryString());
-        
-         // check underflow
-        if (checkUnderflow(resultResized)) {
-            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        } else {
-            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        }   
+        this.recordConditions(ArithmeticLogicUnit.CONTROL_ADD, operand1 & mask, size, operand2 & mask, size, res);
           
-        return resultResized;
+        return res;
     }      
     
     /**
-     * Create 1 bit
-     *
-     * @param size
-     * @return 1 bit binary string
+     * Multiply operation on the signed operands. The 40 bit product is packed
+     * HI(20) LOW(20). 
+     * Flags: OVERFLOW, UNDERFLOW (see materializeConditions)
+     * @param operand1 Raw bits
+     * @param size1 Number of bits of operand1
+     * @param operand2 Raw bits
+     * @param size2 Number of bits of operand2
+     * @return product (raw 40 bits)
      */
-    private String createOneBitString(int size) {
-        String str = "";
-        for (int i = 0; i < size; i++) {
-            str += "0";
+    private long multiply(long operand1, int size1, long operand2, int size2){
+        long product = Unit.signExtend(operand1, size1) * Unit.signExtend(operand2, size2);
+        long res = product & Unit.maskForSize(DOUBLE_WORD_SIZE);
+        
+        this.recordConditions(ArithmeticLogicUnit.CONTROL_MULTIPLY, operand1, size1, operand2, size2, res);
 
-            if (i == size - 1) {
-                str += "1";
-            }
-        }
-        return str;
+        return res; // 40 bit result
     }
     
-    /**
-     * Add two binary numbers 
-     * 
-     * @param operand1
-     * @param operand2
-     * @return binary
+     /**
+     * Divide operation on the signed operands. Quotient and remainder are 
+     * packed QUOTIENT(20) REMAINDER(20). Dividing by zero gives a quotient of
+     * 0 with the dividend as remainder. 
+     * Flags: DIVZERO, OVERFLOW, UNDERFLOW (see materializeConditions)
+     * @param operand1 Raw bits (dividend)
+     * @param size1 Number of bits of operand1
+     * @param operand2 Raw bits (divisor)
+     * @param size2 Number of bits of operand2
+     * @return quotient and remainder (raw 40 bits)
      */
-    private String addBinaryOperands(String operand1, String operand2) {
-        int carry = 0;
-        String res = "";        // result
-
-        // prepare operands: add leading zeros if needed
-        int diff = Math.abs(operand1.length() - operand2.length());
-        String zeros = "";
-        for (int i = 0; i < diff; i++) {
-            zeros += "0";
-        }
-        if (operand1.length() > operand2.length()) {
-            operand2 = zeros + operand2;
-        } else {
-            operand1 = zeros + operand1;
-        }
-
-        // perform addition on operands
-        for (int i = operand2.length() - 1; i >= 0; i--) {
-            int sum = Integer.parseInt((operand1.charAt(i) + "")) + Integer.parseInt((operand2.charAt(i) + "")) + carry;
-            carry = 0;              // reset carry
-            res = sum % 2 + res;
-
-            if (sum >= 2) {
-                carry = 1;
-            }
+    private long divide(long operand1, int size1, long operand2, int size2){
+        long dividend = Unit.signExtend(operand1, size1);
+        long divisor = Unit.signExtend(operand2, size2);
+        long quotient, remainder;
+        if(divisor==0){
+            quotient = 0;
+            remainder = dividend;
+        } else{
+            quotient = dividend / divisor;
+            remainder = dividend % divisor;
         }
+        
+        // Overload quotient & remainder into one 40 bit value
+        long halfMask = Unit.maskForSize(HALF_WORD_SIZE);
+        long res = ((quotient & halfMask) << HALF_WORD_SIZE) | (remainder & halfMask);
+        
+        this.recordConditions(ArithmeticLogicUnit.CONTROL_DIVIDE, operand1, size1, operand2, size2, res);
 
-        // check if overflow occurred
-        if (carry == 1) {
-            Logger.getLogger(ArithmeticLogicUnit.class.getName()).log(Level.CONFIG, "****overflow occured**** ");
-            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_OVERFLOW);
-        } else {
-            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_OVERFLOW);
+        return res; // 40 bit result
+    }      
+    
+    /**
+     * Remember the last operation so its condition flags can be computed 
+     * when (if) they are read. A pending divide is materialized first when 
+     * the new operation does not define DIVZERO, so its DIVZERO survives.
+     * @param operation CONTROL_ADD (subtract is recorded as an add), CONTROL_MULTIPLY or CONTROL_DIVIDE
+     * @param operand1 Raw bits
+     * @param size1 Number of bits of operand1
+     * @param operand2 Raw bits
+     * @param size2 Number of bits of operand2
+     * @param res Raw bits of the result
+     */
+    private void recordConditions(int operation, long operand1, int size1, long operand2, int size2, long res){
+        if(this.flagsOperation==ArithmeticLogicUnit.CONTROL_DIVIDE && operation!=ArithmeticLogicUnit.CONTROL_DIVIDE){
+            this.materializeConditions();
         }
-        return res;
+        this.flagsOperation = operation;
+        this.flagsOperand1 = operand1;
+        this.flagsOperand1Size = size1;
+        this.flagsOperand2 = operand2;
+        this.flagsOperand2Size = size2;
+        this.flagsResult = res;
     }
     
-     /**
-     * Multiply operation
-     * @param operand1
-     * @param operand2
-     * @return result of multiplication
+    /**
+     * Write the condition flags of the last operation into the condition code
+     * register. Called by the ControlUnit before the condition code register
+     * is read or changed; does nothing when no flags are pending.
+     *  OVERFLOW  - add: carry out of the top bit
+     *              multiply: product does not fit in 40 signed bits
+     *              divide: quotient does not fit in 20 signed bits
+     *  UNDERFLOW - result is the most negative value (sign bit alone)
+     *  DIVZERO   - divide: divisor was zero
      */
-    private Unit multiply(Unit operand1, Unit operand2){
-        long resultLong = (long)operand1.getSignedValue() * (long)operand2.getSignedValue();
-        String binaryResult =Long.toBinaryString(resultLong);
-        
-        do{ // sign extend result
-            binaryResult = "0" + binaryResult;
-        }while(binaryResult.length()<40);
+    public void materializeConditions(){
+        int operation = this.flagsOperation;
+        if(operation==ArithmeticLogicUnit.CONTROL_NONE){
+            return;
+        }
+        this.flagsOperation = ArithmeticLogicUnit.CONTROL_NONE;
         
-        String truncatedResult = binaryResult.substring(binaryResult.length()-40);     
+        boolean overflow;
+        int size;
+        switch(operation){
+            case ArithmeticLogicUnit.CONTROL_MULTIPLY:
+                long product = Unit.signExtend(flagsOperand1, flagsOperand1Size) * Unit.signExtend(flagsOperand2, flagsOperand2Size);
+                overflow = Unit.signExtend(product, DOUBLE_WORD_SIZE) != product;
+                size = DOUBLE_WORD_SIZE;
+                break;
+            case ArithmeticLogicUnit.CONTROL_DIVIDE:
+                long divisor = Unit.signExtend(flagsOperand2, flagsOperand2Size);
+                long quotient = 0;
+                if(divisor==0){
+                    this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_DIVZERO);
+                } else {
+                    this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_DIVZERO);
+                    quotient = Unit.signExtend(flagsOperand1, flagsOperand1Size) / divisor;
+                }
+                overflow = Unit.signExtend(quotient, HALF_WORD_SIZE) != quotient;
+                size = DOUBLE_WORD_SIZE;
+                break;
+            case ArithmeticLogicUnit.CONTROL_ADD:
+            default:
+                size = flagsOperand1Size;
+                long sum = flagsOperand1 + flagsOperand2;
+                overflow = (size < 64) ? ((sum >>> size) & 1L) == 1L 
+                                       : (sum ^ Long.MIN_VALUE) < (flagsOperand1 ^ Long.MIN_VALUE);
+                break;
+        }
         
-        if(binaryResult.length()>40){
+        if (overflow) {
+            if(Trace.ENABLED){
+                Trace.record(Trace.ALU_OVERFLOW);
+            }
             this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_OVERFLOW);
         } else {
             this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_OVERFLOW);
-        }        
+        }
         
-        // check underflow
-        Unit results = new Unit(40);
-        results.setValueBinary(binaryResult);
-        if (checkUnderflow(results)) {
+        if (ArithmeticLogicUnit.isUnderflow(flagsResult, size)) {
             this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
         } else {
             this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        }   
-
-        return Unit.UnitFromBinaryString(truncatedResult); // 40 bit result
+        }
     }
     
-     /**
-     * Divide operation - calculates quotient
-     * @param operand1
-     * @param operand2
-     * @return result of division
+    /**
+     * @return HI/quotient half of a multiply/divide result (raw 20 bits)
      */
-    private Unit divide(Unit operand1, Unit operand2){
-        int resultQuotient;
-        if(operand2.getSignedValue()==0){
-            resultQuotient = 0;
-            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_DIVZERO);
-        } else{
-            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_DIVZERO);
-            resultQuotient = (int)Math.floor((operand1.getSignedValue() / operand2.getSignedValue()));
-        }
-        int resultRemainder = operand1.getSignedValue() % operand2.getSignedValue();
-        
-        Word quotient = new Word(resultQuotient);
-        Word remainder = new Word(resultRemainder);
-        
-        
-        // Overload quotient & remainder into one 40 bit value
-        Unit results = new Unit(40);
-        results.setValueBinary(quotient.getBinaryString() + remainder.getBinaryString());
-        
-        // check underflow
-        if (checkUnderflow(results)) {
-            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        } else {
-            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_UNDERFLOW);
-        }   
-
-        return results; // 40 bit result
-    }      
+    public long getResultHigh() {
+        return (result >>> HALF_WORD_SIZE) & Unit.maskForSize(HALF_WORD_SIZE);
+    }
+    
+    /**
+     * @return LOW/remainder half of a multiply/divide result (raw 20 bits)
+     */
+    public long getResultLow() {
+        return result & Unit.maskForSize(HALF_WORD_SIZE);
+    }
     
     /**
      * Check for overflow conditions
@@ -402,11 +437,17 @@ public class ArithmeticLogicUnit implements IClockCycle {
      * @return return true if underflow occurs
      */
     public boolean checkUnderflow(Unit result) {
-	boolean underflow = false;
-		
-	if (result.getSignedValue() < result.getMinSignedValue()) {
-            underflow = true;
-	}		
-	return underflow;
+	return ArithmeticLogicUnit.isUnderflow(result.getBits(), result.getSize());
+    }
+    
+    /**
+     * Primitive underflow check, same rule as checkUnderflow
+     * @param bits Raw bits
+     * @param size Number of bits
+     * @return return true if underflow occurs
+     */
+    private static boolean isUnderflow(long bits, int size) {
+        int signed = (size < 32) ? (int)Unit.signExtend(bits, size) : (int)bits;
+        return signed < Unit.minSignedValueForSize(size);
     }
 }
@@ -0,0 +1,250 @@
+package computersimulator.cpu;
+
+/**
+ * Timing of the interleaved memory banks. The model is disabled by default
+ * and enabled with -Dcomputersimulator.memory.timing=true. While it is
+ * disabled, memory answers every request on the cycle it is made, as it
+ * always has.
+ *
+ * Each bank serves one request at a time and keeps the row of its last
+ * access open: an access to the open row takes ROW_HIT cycles
+ * (-Dcomputersimulator.memory.bank.rowhit, default 1), any other access
+ * BUSY cycles (-Dcomputersimulator.memory.bank.busy, default 4). Rows are
+ * ROW_CELLS cells of a bank (-Dcomputersimulator.memory.bank.row, default 32).
+ * Requests wait in a queue of QUEUE_DEPTH entries
+ * (-Dcomputersimulator.memory.queue, default 8); every cycle each free bank
+ * is given a queued request for it, first-ready first-come-first-served: the
+ * oldest one hitting the open row, else the oldest one. Banks work in
+ * parallel, so requests to different banks overlap while requests to the
+ * same bank wait.
+ *
+ * Only timing is modelled. The MemoryControlUnit reads and writes the words
+ * in program order when it queues a request, so reordering cannot change
+ * what a fetch returns.
+ *
+ * Statistics count from the last memory reset. Computer.run()/runUntil()
+ * put the ones of each run in its RunSummary; getReport() breaks requests
+ * down by bank (reach the model through MemoryControlUnit.getBankTimingModel()).
+ */
+public class BankTimingModel {
+
+    public static final boolean ENABLED = Boolean.getBoolean("computersimulator.memory.timing");
+
+    private static final int BUSY = Math.max(1, Integer.getInteger("computersimulator.memory.bank.busy", 4));
+    private static final int ROW_HIT = Math.max(1, Integer.getInteger("computersimulator.memory.bank.rowhit", 1));
+    private static final int ROW_CELLS = Math.max(1, Integer.getInteger("computersimulator.memory.bank.row", 32));
+    private static final int QUEUE_DEPTH = Math.max(1, Integer.getInteger("computersimulator.memory.queue", 8));
+
+    // Queued requests, oldest first: id, bank, row, cycle queued
+    private final int[] queueId = new int[BankTimingModel.QUEUE_DEPTH];
+    private final int[] queueBank = new int[BankTimingModel.QUEUE_DEPTH];
+    private final int[] queueRow = new int[BankTimingModel.QUEUE_DEPTH];
+    private final long[] queueCycle = new long[BankTimingModel.QUEUE_DEPTH];
+    private int queued;
+
+    // Per bank: request being served (-1 if idle), cycles left, open row (-1 if none)
+    private final int[] serving;
+    private final int[] busy;
+    private final int[] openRow;
+
+    private int nextId;
+    private long cycle;
+
+    private long requests;
+    private long rowHits;
+    private long conflictCycles;
+    private long totalLatency;
+    private final long[] bankRequests;
+
+    /**
+     * @param banks Memory banks
+     */
+    BankTimingModel(int banks) {
+        this.serving = new int[banks];
+        this.busy = new int[banks];
+        this.openRow = new int[banks];
+        this.bankRequests = new long[banks];
+        this.reset();
+    }
+
+    /**
+     * Empties the queue and banks and clears the statistics
+     */
+    final void reset(){
+        this.queued = 0;
+        for(int bank=0;bank<this.serving.length;bank++){
+            this.serving[bank] = -1;
+            this.busy[bank] = 0;
+            this.openRow[bank] = -1;
+            this.bankRequests[bank] = 0;
+        }
+        this.nextId = 0;
+        this.cycle = 0;
+        this.requests = 0;
+        this.rowHits = 0;
+        this.conflictCycles = 0;
+        this.totalLatency = 0;
+    }
+
+    /**
+     * Queues a request
+     * @param bank
+     * @param cell Cell within the bank
+     * @return request id, or -1 if the queue is full
+     */
+    int submit(int bank, int cell){
+        if(this.queued==BankTimingModel.QUEUE_DEPTH){
+            return -1;
+        }
+        int id = this.nextId;
+        this.nextId = (this.nextId + 1) & Integer.MAX_VALUE;
+        this.queueId[this.queued] = id;
+        this.queueBank[this.queued] = bank;
+        this.queueRow[this.queued] = cell / BankTimingModel.ROW_CELLS;
+        this.queueCycle[this.queued] = this.cycle;
+        this.queued++;
+        return id;
+    }
+
+    /**
+     * One clock cycle: free banks take a queued request (FR-FCFS), then busy
+     * banks count down and finish their request when they reach zero
+     */
+    void clockCycle(){
+        for(int bank=0;bank<this.serving.length;bank++){
+            if(this.serving[bank] < 0){
+                this.issue(bank);
+            }
+        }
+        for(int i=0;i<this.queued;i++){
+            if(this.serving[this.queueBank[i]] >= 0){
+                this.conflictCycles++;
+            }
+        }
+        for(int bank=0;bank<this.serving.length;bank++){
+            if(this.serving[bank] >= 0){
+                this.busy[bank]--;
+                if(this.busy[bank]==0){
+                    this.serving[bank] = -1;
+                }
+            }
+        }
+        this.cycle++;
+    }
+
+    /**
+     * Starts the request picked for an idle bank, if any is queued for it
+     * @param bank
+     */
+    private void issue(int bank){
+        int pick = -1;
+        for(int i=0;i<this.queued;i++){
+            if(this.queueBank[i]==bank){
+                if(this.queueRow[i]==this.openRow[bank]){
+                    pick = i;
+                    break;
+                }
+                if(pick < 0){
+                    pick = i;
+                }
+            }
+        }
+        if(pick < 0){
+            return;
+        }
+        boolean hit = (this.queueRow[pick]==this.openRow[bank]);
+        this.serving[bank] = this.queueId[pick];
+        this.busy[bank] = hit ? BankTimingModel.ROW_HIT : BankTimingModel.BUSY;
+        this.openRow[bank] = this.queueRow[pick];
+        this.requests++;
+        this.bankRequests[bank]++;
+        if(hit){
+            this.rowHits++;
+        }
+        this.totalLatency += this.cycle - this.queueCycle[pick] + this.busy[bank];
+
+        this.queued--;
+        for(int i=pick;i<this.queued;i++){
+            this.queueId[i] = this.queueId[i + 1];
+            this.queueBank[i] = this.queueBank[i + 1];
+            this.queueRow[i] = this.queueRow[i + 1];
+            this.queueCycle[i] = this.queueCycle[i + 1];
+        }
+    }
+
+    /**
+     * @param id
+     * @return true once request id has been served
+     */
+    boolean isDone(int id){
+        for(int i=0;i<this.queued;i++){
+            if(this.queueId[i]==id){
+                return false;
+            }
+        }
+        for(int bank=0;bank<this.serving.length;bank++){
+            if(this.serving[bank]==id){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Clock cycles within which a new request is served even behind
+     *   a full queue of requests to its bank
+     */
+    int getMaxLatency(){
+        return (BankTimingModel.QUEUE_DEPTH + 2) * Math.max(BankTimingModel.BUSY, BankTimingModel.ROW_HIT);
+    }
+
+    /**
+     * @return Requests served
+     */
+    public long getRequests(){
+        return this.requests;
+    }
+
+    /**
+     * @return Requests that hit the open row of their bank
+     */
+    public long getRowHits(){
+        return this.rowHits;
+    }
+
+    /**
+     * @return Cycles requests spent queued behind another request to the
+     *   same bank, summed over requests
+     */
+    public long getConflictCycles(){
+        return this.conflictCycles;
+    }
+
+    /**
+     * @return Cycles from queueing to completion, summed over requests served
+     */
+    public long getTotalLatency(){
+        return this.totalLatency;
+    }
+
+    /**
+     * @param bank
+     * @return Requests served by bank
+     */
+    public long getBankRequests(int bank){
+        return this.bankRequests[bank];
+    }
+    
+    /**
+     * Get the bank statistics
+     * @return totals, then one line per bank with the requests it served
+     */
+    public String getReport(){
+        String results = "requests " + this.requests + ", row hits " + this.rowHits 
+                + ", conflict cycles " + this.conflictCycles + ", latency " + this.totalLatency + "\n";
+        for(int bank=0;bank<this.bankRequests.length;bank++){
+            results += String.format("bank %-7d", bank) + this.bankRequests[bank] + "\n";
+        }
+        return results;
+    }
+}
@@ -0,0 +1,335 @@
+package computersimulator.cpu;
+
+import computersimulator.components.HaltSystemException;
+import computersimulator.components.MachineFaultException;
+import computersimulator.components.Unit;
+import computersimulator.components.Word;
+import java.util.ArrayList;
+
+/**
+ * Basic block execution engine (Computer.RUNMODE_BLOCK). Code is split into
+ * basic blocks that end at a control transfer (JZ, JNE, JCC, JMP, JSR, RFS,
+ * SOB, JGE, TRAP, HLT). A block is compiled once into a chain of pre-bound
+ * handlers, one per instruction, which run against the ControlUnit's register
+ * file and memory with the same results as functional execution
+ * (Computer.RUNMODE_FAST). Blocks are cached by start address and dropped
+ * when memory they cover is written. Common sequences (TRR/JCC, CHK/TRR/JCC,
+ * SIR/JNE, LDR/AMR/STR) are bound as one superinstruction handler; see
+ * ControlUnit.compileFused().
+ *
+ * Blocks that run often enough are handed to the BlockTranslator and from
+ * then on run as generated JVM code. A translated block falls back to the
+ * handler chain (deoptimizes) when it raises a machine fault, and is
+ * dropped with its block on a self-modifying store. TRAP is never
+ * translated. The micro-stepped ControlUnit stays the reference for all
+ * of these.
+ */
+public class BlockEngine implements IMemoryWriteListener {
+
+    // Longest block compiled (instructions)
+    private static final int MAX_BLOCK_LENGTH = 64;
+    // Executions of a block before it is translated to JVM code
+    private static final int TRANSLATION_THRESHOLD = 50;
+
+    private final ControlUnit controlUnit;
+    private final MemoryControlUnit memory;
+
+    // Compiled blocks by start address
+    private final BasicBlock[] blocks;
+    // Number of compiled blocks containing each address
+    private final int[] coverage;
+
+    // Clock cycles (estimated) of every instruction completed by this engine
+    private long retiredCycles = 0;
+
+    private final BlockTranslator translator = new BlockTranslator();
+    private boolean translationEnabled = true;
+    private boolean fusionEnabled = true;
+
+    /**
+     * A compiled basic block
+     */
+    private static class BasicBlock {
+        private final int start;
+        private final Word[] instructions;
+        // estimated cycles per instruction
+        private final int[] cycles;
+        // one handler per instruction or superinstruction
+        private final IInstructionHandler[] steps;
+        // index of the first instruction of each step, and its cycles
+        private final int[] stepOffsets;
+        private final int[] stepCycles;
+        private boolean valid = true;
+
+        // translation tier
+        private int executions = 0;
+        private boolean translatable = true;
+        private TranslatedBlock translated = null;
+
+        BasicBlock(int start, Word[] instructions, int[] cycles, IInstructionHandler[] steps, int[] stepOffsets) {
+            this.start = start;
+            this.instructions = instructions;
+            this.cycles = cycles;
+            this.steps = steps;
+            this.stepOffsets = stepOffsets;
+            this.stepCycles = new int[steps.length];
+            for(int i=0;i<steps.length;i++){
+                int next = (i + 1 < steps.length) ? stepOffsets[i + 1] : instructions.length;
+                for(int j=stepOffsets[i];j<next;j++){
+                    this.stepCycles[i] += cycles[j];
+                }
+            }
+        }
+
+        int end(){
+            return this.start + this.instructions.length;
+        }
+    }
+
+    public BlockEngine(ControlUnit cu, MemoryControlUnit mem) {
+        this.controlUnit = cu;
+        this.memory = mem;
+        this.blocks = new BasicBlock[MemoryControlUnit.getAddressableSize()];
+        this.coverage = new int[MemoryControlUnit.getAddressableSize()];
+        this.memory.addWriteListener(this);
+    }
+
+    /**
+     * Runs the basic block starting at PC. Must only be called at an
+     * instruction boundary. Stops early if the block stores into itself.
+     * @throws Exception Machine faults/halt, as raised by the instruction
+     */
+    public void execute() throws Exception {
+        int pc = this.controlUnit.getRegisterFile().get(RegisterFile.PC);
+        if(pc >= this.blocks.length){ // not backed by memory, let the instruction fault
+            this.retiredCycles += this.controlUnit.executeInstruction();
+            return;
+        }
+
+        BasicBlock block = this.blocks[pc];
+        if(block==null){
+            block = this.compile(pc);
+        }
+
+        if(block.translated!=null){
+            this.executeTranslated(block);
+            return;
+        }
+
+        IInstructionHandler[] steps = block.steps;
+        int[] cycles = block.stepCycles;
+        int i = 0;
+        try {
+            for(;i<steps.length;i++){
+                steps[i].execute();
+                this.retiredCycles += cycles[i];
+                if(!block.valid){ // self-modifying store, continue from a fresh block
+                    return;
+                }
+            }
+        } catch(HaltSystemException hse){
+            this.retiredCycles += ControlUnit.estimateCycles(ControlUnit.OPCODE_HLT, PredecodeCache.EA_NONE);
+            throw hse;
+        } catch(Exception e){
+            // a superinstruction may have completed part of its sequence; PC is at the one that raised
+            int raised = this.controlUnit.getRegisterFile().get(RegisterFile.PC) - block.start;
+            this.retire(block, block.stepOffsets[i], raised);
+            throw e;
+        }
+
+        block.executions++;
+        if(block.executions >= BlockEngine.TRANSLATION_THRESHOLD && block.translatable && this.translationEnabled){
+            block.translated = this.translator.translate(this.controlUnit, this.memory, block.start, block.instructions);
+            block.translatable = (block.translated!=null);
+        }
+    }
+
+    /**
+     * Runs the generated code of a block. A fault deoptimizes the block: it
+     * runs from the handler chain from then on.
+     * @param block
+     * @throws Exception
+     */
+    private void executeTranslated(BasicBlock block) throws Exception {
+        TranslatedBlock translated = block.translated;
+        int completed;
+        try {
+            completed = translated.run();
+        } catch(Exception e){
+            this.retire(block, 0, translated.getCurrent());
+            block.translated = null;
+            block.translatable = false;
+            throw e;
+        }
+        this.retire(block, 0, completed);
+    }
+
+    /**
+     * Adds the cycles of instructions from (inclusive) to to (exclusive) of block
+     */
+    private void retire(BasicBlock block, int from, int to){
+        for(int i=from;i<to;i++){
+            this.retiredCycles += block.cycles[i];
+        }
+    }
+
+    /**
+     * Turns the translation tier on/off. Off drops every translation.
+     * @param enabled
+     */
+    public void setTranslationEnabled(boolean enabled){
+        this.translationEnabled = enabled;
+        if(!enabled){
+            for(BasicBlock block : this.blocks){
+                if(block!=null && block.translated!=null){
+                    block.translated.invalidate();
+                    block.translated = null;
+                }
+            }
+        }
+    }
+
+    public boolean isTranslationEnabled(){
+        return this.translationEnabled;
+    }
+
+    /**
+     * Turns superinstructions on/off. Blocks are compiled again either way.
+     * @param enabled
+     */
+    public void setFusionEnabled(boolean enabled){
+        this.fusionEnabled = enabled;
+        this.memoryReset();
+    }
+
+    public boolean isFusionEnabled(){
+        return this.fusionEnabled;
+    }
+
+    /**
+     * @return Clock cycles (estimated) of every instruction run by this engine
+     */
+    public long getRetiredCycles() {
+        return retiredCycles;
+    }
+
+    /**
+     * Splits off and compiles the basic block starting at address
+     * @param start
+     * @return block
+     * @throws MachineFaultException
+     */
+    private BasicBlock compile(int start) throws MachineFaultException {
+        ArrayList<Word> instructions = new ArrayList<>();
+        int address = start;
+        while(address < this.blocks.length && instructions.size() < BlockEngine.MAX_BLOCK_LENGTH){
+            Word instruction = this.memory.engineerFetchByMemoryLocation(Unit.valueOf(13, address));
+            instructions.add(instruction);
+            address++;
+
+            if(BlockEngine.endsBlock(PredecodeCache.opcode(PredecodeCache.decode((int)instruction.getBits())))){
+                break;
+            }
+        }
+
+        Word[] words = instructions.toArray(new Word[instructions.size()]);
+        int[] decoded = new int[words.length];
+        int[] cycles = new int[words.length];
+        for(int i=0;i<words.length;i++){
+            decoded[i] = PredecodeCache.decode((int)words[i].getBits());
+            cycles[i] = ControlUnit.estimateCycles(PredecodeCache.opcode(decoded[i]), PredecodeCache.eaMode(decoded[i]));
+        }
+
+        ArrayList<IInstructionHandler> steps = new ArrayList<>();
+        ArrayList<Integer> offsets = new ArrayList<>();
+        for(int i=0;i<words.length;){
+            int fusion = this.fusionEnabled ? ControlUnit.matchFusion(decoded, i) : -1;
+            offsets.add(i);
+            if(fusion >= 0){
+                steps.add(this.controlUnit.compileFused(fusion, start + i, words, i));
+                i += ControlUnit.getFusionLength(fusion);
+            } else {
+                steps.add(this.controlUnit.compileInstruction(start + i, words[i]));
+                i++;
+            }
+        }
+
+        int[] stepOffsets = new int[offsets.size()];
+        for(int i=0;i<stepOffsets.length;i++){
+            stepOffsets[i] = offsets.get(i);
+        }
+        BasicBlock block = new BasicBlock(start, words, cycles, 
+                steps.toArray(new IInstructionHandler[steps.size()]), stepOffsets);
+
+        this.blocks[start] = block;
+        for(int i=block.start;i<block.end();i++){
+            this.coverage[i]++;
+        }
+        return block;
+    }
+
+    /**
+     * @param opcode
+     * @return true for instructions that may transfer control
+     */
+    public static boolean endsBlock(int opcode){
+        switch(opcode){
+            case ControlUnit.OPCODE_JZ:
+            case ControlUnit.OPCODE_JNE:
+            case ControlUnit.OPCODE_JCC:
+            case ControlUnit.OPCODE_JMP:
+            case ControlUnit.OPCODE_JSR:
+            case ControlUnit.OPCODE_RFS:
+            case ControlUnit.OPCODE_SOB:
+            case ControlUnit.OPCODE_JGE:
+            case ControlUnit.OPCODE_TRAP:
+            case ControlUnit.OPCODE_HLT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Drops every block containing address
+     * @param address
+     */
+    @Override
+    public void memoryWritten(int address) {
+        if(address < 0 || address >= this.coverage.length || this.coverage[address]==0){
+            return;
+        }
+        int first = Math.max(0, address - BlockEngine.MAX_BLOCK_LENGTH + 1);
+        for(int start=first;start<=address;start++){
+            BasicBlock block = this.blocks[start];
+            if(block!=null && block.end() > address){
+                this.drop(block);
+            }
+        }
+    }
+
+    /**
+     * Drops every block
+     */
+    @Override
+    public void memoryReset() {
+        for(int i=0;i<this.blocks.length;i++){
+            if(this.blocks[i]!=null){
+                this.drop(this.blocks[i]);
+            }
+            this.coverage[i] = 0;
+        }
+    }
+
+    private void drop(BasicBlock block){
+        block.valid = false;
+        if(block.translated!=null){
+            block.translated.invalidate();
+            block.translated = null;
+        }
+        this.blocks[block.start] = null;
+        for(int i=block.start;i<block.end();i++){
+            this.coverage[i]--;
+        }
+    }
+}
@@ -0,0 +1,719 @@
+package computersimulator.cpu;
+
+import computersimulator.components.Word;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BlockTranslator - second tier of the BlockEngine. Translates a hot basic
+ * block into a JVM class (a TranslatedBlock) whose run() method executes the
+ * whole block. R0-R3 and X1-X3 are loaded into locals on entry and written
+ * back only at block exits (including exceptions). Everything else - memory,
+ * ALU/CC, branch predictor, I/O, MAR/MBR/IR - goes through the TranslatedBlock
+ * helpers, which make the same calls as the functional handlers.
+ *
+ * Class files are written by hand (no bytecode library) as version 49, which
+ * needs no stack map frames, and defined in a class loader of their own so a
+ * dropped block can be unloaded.
+ *
+ * Blocks holding TRAP, HLT, MLT, DVD, an illegal opcode, or STX/INX on
+ * X0 (which fault in the interpreter) are not translated.
+ */
+public class BlockTranslator {
+
+    private static final String BASE = "computersimulator/cpu/TranslatedBlock";
+    private static final String SHIFTER = "computersimulator/components/BarrelShifter";
+
+    private static final int MASK_WORD = 0xFFFFF;
+    private static final int MASK_INDEX = 0x1FFF;
+
+    // locals of run(): this, R0-R3, X1-X3 (RegisterFile slot + 1), scratch
+    private static final int LOCAL_EA = 8;
+    private static final int LOCAL_CONDITION = 9;
+    private static final int LOCAL_EXCEPTION = 10;
+    private static final int MAX_LOCALS = 11;
+    private static final int MAX_STACK = 12;
+
+    // JVM opcodes used
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ISTORE = 0x36;
+    private static final int ASTORE = 0x3a;
+    private static final int ALOAD = 0x19;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int ATHROW = 0xbf;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private int serial = 0;
+
+    /**
+     * @param opcode
+     * @return true if blocks holding opcode can be translated
+     */
+    public static boolean isTranslatable(int opcode){
+        switch(opcode){
+            case ControlUnit.OPCODE_LDR:
+            case ControlUnit.OPCODE_STR:
+            case ControlUnit.OPCODE_LDA:
+            case ControlUnit.OPCODE_LDX:
+            case ControlUnit.OPCODE_STX:
+            case ControlUnit.OPCODE_INX:
+            case ControlUnit.OPCODE_AMR:
+            case ControlUnit.OPCODE_SMR:
+            case ControlUnit.OPCODE_AIR:
+            case ControlUnit.OPCODE_SIR:
+            case ControlUnit.OPCODE_JZ:
+            case ControlUnit.OPCODE_JNE:
+            case ControlUnit.OPCODE_JCC:
+            case ControlUnit.OPCODE_JMP:
+            case ControlUnit.OPCODE_JSR:
+            case ControlUnit.OPCODE_RFS:
+            case ControlUnit.OPCODE_SOB:
+            case ControlUnit.OPCODE_JGE:
+            case ControlUnit.OPCODE_TRR:
+            case ControlUnit.OPCODE_AND:
+            case ControlUnit.OPCODE_ORR:
+            case ControlUnit.OPCODE_NOT:
+            case ControlUnit.OPCODE_SRC:
+            case ControlUnit.OPCODE_RRC:
+            case ControlUnit.OPCODE_IN:
+            case ControlUnit.OPCODE_OUT:
+            case ControlUnit.OPCODE_CHK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Translates the block starting at start
+     * @param cu
+     * @param mem
+     * @param start Address of the first instruction
+     * @param instructions Contents of the block's addresses
+     * @return translated block, or null if the block can't be translated
+     */
+    public TranslatedBlock translate(ControlUnit cu, MemoryControlUnit mem, int start, Word[] instructions){
+        int[] decoded = new int[instructions.length];
+        for(int i=0;i<instructions.length;i++){
+            decoded[i] = PredecodeCache.decode((int)instructions[i].getBits());
+            int opcode = PredecodeCache.opcode(decoded[i]);
+            if(!BlockTranslator.isTranslatable(opcode)){
+                return null;
+            }
+            if((opcode==ControlUnit.OPCODE_STX || opcode==ControlUnit.OPCODE_INX) && PredecodeCache.rfi(decoded[i])==0){
+                return null;
+            }
+        }
+
+        String name = "computersimulator/cpu/TranslatedBlock_" + start + "_" + (this.serial++);
+        try {
+            byte[] classFile = new ClassWriter(name).write(start, decoded);
+            Class<?> translated = new BlockClassLoader(TranslatedBlock.class.getClassLoader()).define(name.replace('/', '.'), classFile);
+            TranslatedBlock block = (TranslatedBlock)translated.getDeclaredConstructor().newInstance();
+            block.bind(cu, mem, start, instructions, decoded);
+            return block;
+        } catch (IOException | ReflectiveOperationException | LinkageError ex) {
+            Logger.getLogger(BlockTranslator.class.getName()).log(Level.WARNING, "Block at " + start + " not translated", ex);
+            return null;
+        }
+    }
+
+    /**
+     * One loader per translated block
+     */
+    private static class BlockClassLoader extends ClassLoader {
+        BlockClassLoader(ClassLoader parent){
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] classFile){
+            return this.defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+
+    /**
+     * Writes the class file of one translated block
+     */
+    private static class ClassWriter {
+
+        private final String name;
+
+        // constant pool
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream poolOut = new DataOutputStream(pool);
+        private final HashMap<String,Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+
+        // code of run()
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        // branch fixups: {offset of the 2 byte operand, instruction position, label}
+        private final ArrayList<int[]> fixups = new ArrayList<>();
+        private final ArrayList<Integer> labels = new ArrayList<>();
+
+        ClassWriter(String name){
+            this.name = name;
+        }
+
+        byte[] write(int start, int[] decoded) throws IOException {
+            int thisClass = this.classRef(this.name);
+            int superClass = this.classRef(BlockTranslator.BASE);
+            int initName = this.utf8("<init>");
+            int initDesc = this.utf8("()V");
+            int superInit = this.methodRef(BlockTranslator.BASE, "<init>", "()V");
+            int runName = this.utf8("run");
+            int runDesc = this.utf8("()I");
+            int codeName = this.utf8("Code");
+
+            int[] handlerRange = this.writeRun(start, decoded);
+            this.resolveLabels();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(this.poolCount);
+            out.write(this.pool.toByteArray());
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            // public <init>() { super(); }
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initDesc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + 5);
+            out.writeShort(1); // max stack
+            out.writeShort(1); // max locals
+            out.writeInt(5);
+            out.writeByte(BlockTranslator.ALOAD_0);
+            out.writeByte(BlockTranslator.INVOKESPECIAL);
+            out.writeShort(superInit);
+            out.writeByte(BlockTranslator.RETURN);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+
+            // public int run()
+            byte[] run = this.code.toByteArray();
+            out.writeShort(0x0001);
+            out.writeShort(runName);
+            out.writeShort(runDesc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + run.length + 8);
+            out.writeShort(BlockTranslator.MAX_STACK);
+            out.writeShort(BlockTranslator.MAX_LOCALS);
+            out.writeInt(run.length);
+            out.write(run);
+            out.writeShort(1); // exception table: any exception -> write back, rethrow
+            out.writeShort(handlerRange[0]);
+            out.writeShort(handlerRange[1]);
+            out.writeShort(handlerRange[1]);
+            out.writeShort(0);
+            out.writeShort(0); // attributes
+
+            out.writeShort(0); // class attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        /**
+         * @return {start, end} of the code covered by the exception handler
+         */
+        private int[] writeRun(int start, int[] decoded){
+            // load registers into locals
+            for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+                this.op(BlockTranslator.ALOAD_0);
+                this.push(slot);
+                this.invoke("register", "(I)I");
+                this.local(BlockTranslator.ISTORE, slot + 1);
+            }
+
+            int covered = this.code.size();
+            boolean exited = false;
+            for(int i=0;i<decoded.length && !exited;i++){
+                this.op(BlockTranslator.ALOAD_0);
+                this.push(i);
+                this.invoke("fetch", "(I)V");
+                exited = this.writeInstruction(i, start + i, decoded[i], i + 1);
+            }
+            if(!exited){ // fell off the end of the block
+                this.push(start + decoded.length);
+                this.writeExit(decoded.length);
+            }
+
+            // exception handler
+            int handler = this.code.size();
+            this.local(BlockTranslator.ASTORE, BlockTranslator.LOCAL_EXCEPTION);
+            this.op(BlockTranslator.ALOAD_0);
+            for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+                this.local(BlockTranslator.ILOAD, slot + 1);
+            }
+            this.invoke("writeBack", "(IIIIIII)V");
+            this.local(BlockTranslator.ALOAD, BlockTranslator.LOCAL_EXCEPTION);
+            this.op(BlockTranslator.ATHROW);
+
+            return new int[]{covered, handler};
+        }
+
+        /**
+         * @param i Index in the block
+         * @param pc Address of the instruction
+         * @param entry PredecodeCache entry
+         * @param completed Instructions completed once this one is done
+         * @return true if the instruction always leaves the block
+         */
+        private boolean writeInstruction(int i, int pc, int entry, int completed){
+            int opcode = PredecodeCache.opcode(entry);
+            int rfi = PredecodeCache.rfi(entry);
+            int xfi = PredecodeCache.xfi(entry);
+            int addr = PredecodeCache.address(entry);
+            int eaMode = PredecodeCache.eaMode(entry);
+            int raw = PredecodeCache.raw(entry);
+            int r = RegisterFile.gpr(rfi) + 1;
+            int rx = RegisterFile.gpr(xfi) + 1;
+            int devid = raw & 0xF;
+
+            switch(opcode){
+                case ControlUnit.OPCODE_LDR:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.invoke("load", "(I)I");
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_STR:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.invoke("store", "(II)V");
+                    this.writeSelfModificationCheck(pc, completed);
+                    return false;
+                case ControlUnit.OPCODE_LDA:
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_LDX:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.invoke("load", "(I)I");
+                    this.invoke("indexValue", "(I)I");
+                    if(rfi==0){ // range checked, no X0 to write
+                        this.op(BlockTranslator.POP);
+                    } else {
+                        this.local(BlockTranslator.ISTORE, RegisterFile.index(rfi) + 1);
+                    }
+                    return false;
+                case ControlUnit.OPCODE_STX:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.local(BlockTranslator.ILOAD, RegisterFile.index(rfi) + 1);
+                    this.invoke("storeIndex", "(II)V");
+                    this.writeSelfModificationCheck(pc, completed);
+                    return false;
+                case ControlUnit.OPCODE_INX:
+                    this.local(BlockTranslator.ILOAD, RegisterFile.index(rfi) + 1);
+                    this.op(BlockTranslator.ICONST_1);
+                    this.op(BlockTranslator.IADD);
+                    this.push(BlockTranslator.MASK_INDEX);
+                    this.op(BlockTranslator.IAND);
+                    this.local(BlockTranslator.ISTORE, RegisterFile.index(rfi) + 1);
+                    return false;
+                case ControlUnit.OPCODE_AMR:
+                case ControlUnit.OPCODE_SMR:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.push((opcode==ControlUnit.OPCODE_AMR) ? ArithmeticLogicUnit.CONTROL_ADD : ArithmeticLogicUnit.CONTROL_SUBTRACT);
+                    this.invoke("aluMemory", "(III)I");
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_AIR:
+                case ControlUnit.OPCODE_SIR:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.push(addr);
+                    this.push((opcode==ControlUnit.OPCODE_AIR) ? ArithmeticLogicUnit.CONTROL_ADD : ArithmeticLogicUnit.CONTROL_SUBTRACT);
+                    this.invoke("aluImmediate", "(III)I");
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_JMP:
+                    if(eaMode==PredecodeCache.EA_DIRECT && addr!=64){
+                        this.push(addr);
+                    } else {
+                        this.op(BlockTranslator.ALOAD_0);
+                        this.writeEffectiveAddress(eaMode, xfi, addr);
+                        this.invoke("jump", "(I)I");
+                    }
+                    this.writeExit(completed);
+                    return true;
+                case ControlUnit.OPCODE_JZ:
+                case ControlUnit.OPCODE_JNE:
+                case ControlUnit.OPCODE_JGE:
+                case ControlUnit.OPCODE_JCC:
+                case ControlUnit.OPCODE_SOB:
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.local(BlockTranslator.ISTORE, BlockTranslator.LOCAL_EA);
+                    this.writeCondition(opcode, r, rfi);
+                    this.writeBranch(pc, completed);
+                    return true;
+                case ControlUnit.OPCODE_JSR:
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.local(BlockTranslator.ISTORE, BlockTranslator.LOCAL_EA);
+                    this.push(pc + 1);
+                    this.local(BlockTranslator.ISTORE, RegisterFile.gpr(3) + 1);
+                    this.local(BlockTranslator.ILOAD, BlockTranslator.LOCAL_EA);
+                    this.writeExit(completed);
+                    return true;
+                case ControlUnit.OPCODE_RFS:
+                    this.writeEffectiveAddress(eaMode, xfi, addr);
+                    this.op(BlockTranslator.POP);
+                    this.push(addr);
+                    this.local(BlockTranslator.ISTORE, RegisterFile.gpr(0) + 1);
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, RegisterFile.gpr(3) + 1);
+                    this.invoke("address", "(I)I");
+                    this.writeExit(completed);
+                    return true;
+                case ControlUnit.OPCODE_TRR:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, rx);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.invoke("compare", "(II)V");
+                    return false;
+                case ControlUnit.OPCODE_AND:
+                case ControlUnit.OPCODE_ORR:
+                    this.local(BlockTranslator.ILOAD, rx);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.op((opcode==ControlUnit.OPCODE_AND) ? BlockTranslator.IAND : BlockTranslator.IOR);
+                    this.local(BlockTranslator.ISTORE, rx);
+                    return false;
+                case ControlUnit.OPCODE_NOT:
+                    this.local(BlockTranslator.ILOAD, rx);
+                    this.push(BlockTranslator.MASK_WORD);
+                    this.op(BlockTranslator.IXOR);
+                    this.local(BlockTranslator.ISTORE, rx);
+                    return false;
+                case ControlUnit.OPCODE_SRC:
+                case ControlUnit.OPCODE_RRC:
+                    // A/L = bit 10, L/R = bit 11, count = bits 15-19
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.op(BlockTranslator.I2L);
+                    this.push(RegisterFile.getSize(RegisterFile.R0));
+                    this.push((raw >>> 8) & 1);
+                    this.push(raw & 0x1F);
+                    if(opcode==ControlUnit.OPCODE_SRC){
+                        this.push((raw >>> 9) & 1);
+                        this.invokeStatic(BlockTranslator.SHIFTER, "shift", "(JIIII)J");
+                    } else {
+                        this.invokeStatic(BlockTranslator.SHIFTER, "rotate", "(JIII)J");
+                    }
+                    this.op(BlockTranslator.L2I);
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_IN:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.push(devid);
+                    this.invoke("input", "(I)I");
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                case ControlUnit.OPCODE_OUT:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.push(devid);
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.invoke("output", "(II)V");
+                    return false;
+                case ControlUnit.OPCODE_CHK:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.push(devid);
+                    this.invoke("check", "(I)I");
+                    this.local(BlockTranslator.ISTORE, r);
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Opcode " + opcode + " can not be translated");
+            }
+        }
+
+        /**
+         * Leaves the effective address on the stack
+         */
+        private void writeEffectiveAddress(int eaMode, int xfi, int addr){
+            switch(eaMode){
+                case PredecodeCache.EA_DIRECT: // ADDR
+                    this.push(addr);
+                    break;
+                case PredecodeCache.EA_REGISTER_INDIRECT: // c(Xi) + ADDR
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, RegisterFile.index(xfi) + 1);
+                    this.push(addr);
+                    this.op(BlockTranslator.IADD);
+                    this.invoke("address", "(I)I");
+                    break;
+                case PredecodeCache.EA_INDEXED: // c(ADDR)
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.push(addr);
+                    this.invoke("load", "(I)I");
+                    this.invoke("address", "(I)I");
+                    break;
+                case PredecodeCache.EA_INDEXED_OFFSET: // c(c(Xi) + ADDR)
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.local(BlockTranslator.ILOAD, RegisterFile.index(xfi) + 1);
+                    this.push(addr);
+                    this.op(BlockTranslator.IADD);
+                    this.invoke("address", "(I)I");
+                    this.invoke("load", "(I)I");
+                    this.invoke("address", "(I)I");
+                    break;
+                default:
+                    throw new IllegalArgumentException("EA mode " + eaMode);
+            }
+        }
+
+        /**
+         * Stores the branch condition (1/0) in LOCAL_CONDITION
+         */
+        private void writeCondition(int opcode, int r, int rfi){
+            int ifFalse;
+            switch(opcode){
+                case ControlUnit.OPCODE_JZ:
+                    this.local(BlockTranslator.ILOAD, r);
+                    ifFalse = BlockTranslator.IFNE;
+                    break;
+                case ControlUnit.OPCODE_JNE:
+                    this.local(BlockTranslator.ILOAD, r);
+                    ifFalse = BlockTranslator.IFEQ;
+                    break;
+                case ControlUnit.OPCODE_JGE: // sign bit clear
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.push(1 << 19);
+                    ifFalse = BlockTranslator.IF_ICMPGE;
+                    break;
+                case ControlUnit.OPCODE_JCC:
+                    this.op(BlockTranslator.ALOAD_0);
+                    this.push(rfi);
+                    this.invoke("condition", "(I)I");
+                    this.op(BlockTranslator.ICONST_1);
+                    ifFalse = BlockTranslator.IF_ICMPNE;
+                    break;
+                case ControlUnit.OPCODE_SOB: // r <- c(r) - 1, branch if > 0
+                    this.local(BlockTranslator.ILOAD, r);
+                    this.op(BlockTranslator.ICONST_1);
+                    this.op(BlockTranslator.ISUB);
+                    this.push(BlockTranslator.MASK_WORD);
+                    this.op(BlockTranslator.IAND);
+                    this.local(BlockTranslator.ISTORE, r);
+                    this.local(BlockTranslator.ILOAD, r);
+                    ifFalse = BlockTranslator.IFEQ;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opcode " + opcode + " is not a conditional branch");
+            }
+            int notTaken = this.newLabel();
+            int done = this.newLabel();
+            this.jump(ifFalse, notTaken);
+            this.op(BlockTranslator.ICONST_1);
+            this.jump(BlockTranslator.GOTO, done);
+            this.mark(notTaken);
+            this.op(BlockTranslator.ICONST_0);
+            this.mark(done);
+            this.local(BlockTranslator.ISTORE, BlockTranslator.LOCAL_CONDITION);
+        }
+
+        /**
+         * Records the branch and exits to EA (taken) or PC+1
+         */
+        private void writeBranch(int pc, int completed){
+            this.op(BlockTranslator.ALOAD_0);
+            this.push(pc);
+            this.local(BlockTranslator.ILOAD, BlockTranslator.LOCAL_CONDITION);
+            this.invoke("branch", "(IZ)V");
+
+            int notTaken = this.newLabel();
+            int done = this.newLabel();
+            this.local(BlockTranslator.ILOAD, BlockTranslator.LOCAL_CONDITION);
+            this.jump(BlockTranslator.IFEQ, notTaken);
+            this.local(BlockTranslator.ILOAD, BlockTranslator.LOCAL_EA);
+            this.jump(BlockTranslator.GOTO, done);
+            this.mark(notTaken);
+            this.push(pc + 1);
+            this.mark(done);
+            this.writeExit(completed);
+        }
+
+        /**
+         * Leaves the block after a store that hit the block's own memory
+         */
+        private void writeSelfModificationCheck(int pc, int completed){
+            int stillValid = this.newLabel();
+            this.op(BlockTranslator.ALOAD_0);
+            this.invoke("isValid", "()Z");
+            this.jump(BlockTranslator.IFNE, stillValid);
+            this.push(pc + 1);
+            this.writeExit(completed);
+            this.mark(stillValid);
+        }
+
+        /**
+         * Next PC on the stack: write back registers, set PC, return completed
+         */
+        private void writeExit(int completed){
+            this.local(BlockTranslator.ISTORE, BlockTranslator.LOCAL_EA);
+            this.op(BlockTranslator.ALOAD_0);
+            this.local(BlockTranslator.ILOAD, BlockTranslator.LOCAL_EA);
+            for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+                this.local(BlockTranslator.ILOAD, slot + 1);
+            }
+            this.invoke("exit", "(IIIIIIII)V");
+            this.push(completed);
+            this.op(BlockTranslator.IRETURN);
+        }
+
+        /***************** CODE ******************/
+
+        private void op(int opcode){
+            this.code.write(opcode);
+        }
+
+        private void u2(int value){
+            this.code.write((value >>> 8) & 0xFF);
+            this.code.write(value & 0xFF);
+        }
+
+        private void local(int opcode, int index){
+            this.op(opcode);
+            this.code.write(index);
+        }
+
+        private void push(int value){
+            if(value>=-1 && value<=5){
+                this.op(BlockTranslator.ICONST_0 + value);
+            } else if(value>=Byte.MIN_VALUE && value<=Byte.MAX_VALUE){
+                this.op(BlockTranslator.BIPUSH);
+                this.code.write(value);
+            } else if(value>=Short.MIN_VALUE && value<=Short.MAX_VALUE){
+                this.op(BlockTranslator.SIPUSH);
+                this.u2(value);
+            } else {
+                this.op(BlockTranslator.LDC_W);
+                this.u2(this.integer(value));
+            }
+        }
+
+        private void invoke(String method, String descriptor){
+            this.op(BlockTranslator.INVOKEVIRTUAL);
+            this.u2(this.methodRef(BlockTranslator.BASE, method, descriptor));
+        }
+
+        private void invokeStatic(String owner, String method, String descriptor){
+            this.op(BlockTranslator.INVOKESTATIC);
+            this.u2(this.methodRef(owner, method, descriptor));
+        }
+
+        private int newLabel(){
+            this.labels.add(-1);
+            return this.labels.size() - 1;
+        }
+
+        private void mark(int label){
+            this.labels.set(label, this.code.size());
+        }
+
+        private void jump(int opcode, int label){
+            int position = this.code.size();
+            this.op(opcode);
+            this.fixups.add(new int[]{this.code.size(), position, label});
+            this.u2(0);
+        }
+
+        private void resolveLabels(){
+            byte[] bytes = this.code.toByteArray();
+            for(int[] fixup : this.fixups){
+                int offset = this.labels.get(fixup[2]) - fixup[1];
+                bytes[fixup[0]] = (byte)(offset >>> 8);
+                bytes[fixup[0] + 1] = (byte)offset;
+            }
+            this.code.reset();
+            this.code.write(bytes, 0, bytes.length);
+        }
+
+        /***************** CONSTANT POOL ******************/
+
+        private int constant(String key, int tag, Object... values) {
+            Integer index = this.poolIndex.get(key);
+            if(index!=null){
+                return index;
+            }
+            try {
+                this.poolOut.writeByte(tag);
+                for(Object value : values){
+                    if(value instanceof String){
+                        this.poolOut.writeUTF((String)value);
+                    } else if(tag==3){
+                        this.poolOut.writeInt((Integer)value);
+                    } else {
+                        this.poolOut.writeShort((Integer)value);
+                    }
+                }
+                this.poolOut.flush();
+            } catch (IOException ex) { // not thrown by a ByteArrayOutputStream
+                throw new IllegalStateException(ex);
+            }
+            index = this.poolCount++;
+            this.poolIndex.put(key, index);
+            return index;
+        }
+
+        private int utf8(String value){
+            return this.constant("U" + value, 1, value);
+        }
+
+        private int integer(int value){
+            return this.constant("I" + value, 3, value);
+        }
+
+        private int classRef(String internalName){
+            return this.constant("C" + internalName, 7, this.utf8(internalName));
+        }
+
+        private int methodRef(String owner, String method, String descriptor){
+            int ownerIndex = this.classRef(owner);
+            int nameAndType = this.constant("N" + method + descriptor, 12, this.utf8(method), this.utf8(descriptor));
+            return this.constant("M" + owner + "." + method + descriptor, 10, ownerIndex, nameAndType);
+        }
+    }
+}
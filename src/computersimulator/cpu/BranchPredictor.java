@@ -1,8 +1,6 @@
 package computersimulator.cpu;
 
 import computersimulator.components.MachineFaultException;
-import computersimulator.components.Unit;
-import computersimulator.components.Word;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -125,13 +123,8 @@ public class BranchPredictor {
      */
     public void scanMemory() throws MachineFaultException {
         
-        for(int m=0;m<MemoryControlUnit.getMemoryMaxSize();m++){
-            Word cell = memory.engineerFetchByMemoryLocation(new Word(m));
-            
-            HashMap<String,Unit> decodedInstruction = controlUnit.decodeInstructionRegister(cell);
-            
-            Unit opcodeUnit = decodedInstruction.get("opcode");
-            int opcode = opcodeUnit.getUnsignedValue();           
+        for(int m=0;m<MemoryControlUnit.getAddressableSize();m++){
+            int opcode = PredecodeCache.opcode(memory.getPredecodeCache().get(m));           
             
             switch(opcode){
                 case ControlUnit.OPCODE_JCC:
@@ -12,10 +12,11 @@ import java.util.HashMap;
  */
 public class Cache implements IClockCycle {
     
-    private final static int BLOCK_SIZE = 32;
+    final static int BLOCK_SIZE = 32;
     private final static int CACHE_SIZE = 8;
         
-    private final Word[][] cache;
+    // cached blocks of raw 20-bit words
+    private final int[][] cache;
     
     private String[] tags;    
     private boolean[] dirty;
@@ -27,7 +28,7 @@ public class Cache implements IClockCycle {
     
     
     public Cache(MemoryControlUnit mem){
-        cache = new Word[Cache.CACHE_SIZE][Cache.BLOCK_SIZE];            
+        cache = new int[Cache.CACHE_SIZE][];            
         
         tags = new String[Cache.CACHE_SIZE];
         dirty = new boolean[Cache.CACHE_SIZE];
@@ -63,9 +64,11 @@ public class Cache implements IClockCycle {
     public Word fetchWord(Unit address) throws MachineFaultException{        
         Integer[] block = calculateBlockFromAddress(address);
         String tag = this.calculateTagFromBlockID(block);
-        System.out.println("[Cache]: Read requested for M("+address.getUnsignedValue()+") -> Block: "+tag);
-        if(this.isBlockAvailable(tag)){  // CACHE HIT!
-            System.out.println("[Cache]: HIT during fetch ("+tag+")");
+        boolean hit = this.isBlockAvailable(tag);
+        if(Trace.ENABLED){
+            Trace.record(Trace.CACHE_FETCH, address.getUnsignedValue(), hit ? 1 : 0);
+        }
+        if(hit){  // CACHE HIT!
             int blockID = this.getBlockLocation(tag);            
             
             
@@ -74,10 +77,9 @@ public class Cache implements IClockCycle {
             
             lastUsed[blockID] = System.currentTimeMillis();
             
-            return new Word(this.cache[blockID][cacheAddress]);
+            return Word.valueOfBits(this.cache[blockID][cacheAddress]);
             
         } else { // CACHE miss, do fetch for next cycle
-            System.out.println("[Cache]: MISS during fetch ("+tag+")");            
             
             this.fetchBlock(block);            
             
@@ -105,7 +107,7 @@ public class Cache implements IClockCycle {
         int[] rawMemoryAddress = memory.calculateActualMemoryLocation(address);           
         int cacheAddress = rawMemoryAddress[1] % Cache.BLOCK_SIZE; 
 
-        return new Word(this.cache[blockID][cacheAddress]);
+        return Word.valueOfBits(this.cache[blockID][cacheAddress]);
 
     }
 
@@ -119,9 +121,11 @@ public class Cache implements IClockCycle {
     public Boolean storeWord(Unit address, Word value) throws MachineFaultException{        
       Integer[] block = calculateBlockFromAddress(address);
       String tag = this.calculateTagFromBlockID(block);
-      System.out.println("[Cache]: Store requested for M("+address.getUnsignedValue()+") -> Block: "+tag);
-        if(this.isBlockAvailable(tag)){  // CACHE HIT!
-            System.out.println("[Cache]: HIT during store ("+tag+")");
+      boolean hit = this.isBlockAvailable(tag);
+        if(Trace.ENABLED){
+            Trace.record(Trace.CACHE_STORE, address.getUnsignedValue(), hit ? 1 : 0);
+        }
+        if(hit){  // CACHE HIT!
             int blockID = this.getBlockLocation(tag);            
             
             int[] rawMemoryAddress = memory.calculateActualMemoryLocation(address);           
@@ -130,13 +134,12 @@ public class Cache implements IClockCycle {
             lastUsed[blockID] = System.currentTimeMillis();
             dirty[blockID] = true;
             
-            this.cache[blockID][cacheAddress]=new Word(value);
+            this.cache[blockID][cacheAddress]=(int)(value.getBits() & Unit.maskForSize(20));
             
             
             return true;
             
         } else { // CACHE miss, do fetch for next cycle
-            System.out.println("[Cache]: MISS during store ("+tag+")");            
             
             this.fetchBlock(block);            
             
@@ -153,7 +156,6 @@ public class Cache implements IClockCycle {
     public void engineerStoreWord(Unit address, Word value) throws MachineFaultException{        
       Integer[] block = calculateBlockFromAddress(address);
       String tag = this.calculateTagFromBlockID(block);
-      System.out.println("[Cache]: Store requested for M("+address.getUnsignedValue()+") -> Block: "+tag);
         if(!this.isBlockAvailable(tag)){             
             this.fetchBlock(block);            
         }
@@ -165,7 +167,7 @@ public class Cache implements IClockCycle {
         lastUsed[blockID] = System.currentTimeMillis();
         dirty[blockID] = true;
 
-        this.cache[blockID][cacheAddress]=new Word(value);
+        this.cache[blockID][cacheAddress]=(int)(value.getBits() & Unit.maskForSize(20));
             
     }    
     
@@ -177,7 +179,7 @@ public class Cache implements IClockCycle {
     private void fetchBlock(Integer[] blockLocation){
         int freeBlockID = this.getFreeBlock();
         
-        Word[] newBlock = memory.getCacheBlock(blockLocation, Cache.BLOCK_SIZE);
+        int[] newBlock = memory.getCacheBlock(blockLocation, Cache.BLOCK_SIZE);
         
         cache[freeBlockID] = newBlock;
         lastUsed[freeBlockID] = System.currentTimeMillis();
@@ -185,7 +187,9 @@ public class Cache implements IClockCycle {
         tags[freeBlockID] = calculateTagFromBlockID(blockLocation);
         location.put(tags[freeBlockID], blockLocation);        
         
-        System.out.println("[Cache]: Fetched Block "+tags[freeBlockID]+" into location: "+freeBlockID);
+        if(Trace.ENABLED){
+            Trace.record(Trace.CACHE_FILL, freeBlockID, blockLocation[0], blockLocation[1]);
+        }
         
     }
     
@@ -218,10 +222,11 @@ public class Cache implements IClockCycle {
      * @param blockID 
      */
     private void cleanBlock(Integer blockID){
-        System.out.println("[Cache]: Freeing Cache Block "+blockID);
+        if(Trace.ENABLED){
+            Trace.record(Trace.CACHE_EVICT, blockID, dirty[blockID] ? 1 : 0);
+        }
         if(dirty[blockID]){
             memory.writeCacheBlock(cache[blockID], location.get(tags[blockID]));                        
-            System.out.println("[Cache]: Wrote back to memory because it was dirty.");
         } 
         this.cache[blockID]=null;
         dirty[blockID]=false;
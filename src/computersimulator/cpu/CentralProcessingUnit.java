@@ -12,8 +12,11 @@ public class CentralProcessingUnit implements IClockCycle {
     private ArithmeticLogicUnit alu;
     private MemoryControlUnit memory;
     private BranchPredictor bp;
+    private BlockEngine blockEngine;
     
     private Boolean running = false;
+    // true once HLT stopped the CPU, until it is started again
+    private boolean halted = false;
     
 
     public CentralProcessingUnit(MemoryControlUnit mem, InputOutputController io) {        
@@ -27,6 +30,8 @@ public class CentralProcessingUnit implements IClockCycle {
         
         controlUnit.setBranchPredictor(bp);// pass reference through
         controlUnit.setIOController(io); // pass reference through 
+        
+        this.blockEngine = new BlockEngine(this.controlUnit, this.memory);
     }
     
     /**
@@ -41,9 +46,55 @@ public class CentralProcessingUnit implements IClockCycle {
             this.controlUnit.clockCycle();
             this.alu.clockCycle();
         } catch(HaltSystemException hse){
-            this.running=false;
+            this.halt();
         }
     }           
+    
+    /**
+     * Functional execution (Computer.RUNMODE_FAST) of one whole instruction.
+     * @return estimated number of clock cycles used
+     * @throws java.lang.Exception
+     */
+    public int executeInstruction() throws Exception{
+        try {
+            return this.controlUnit.executeInstruction();
+        } catch(HaltSystemException hse){
+            this.halt();
+            return ControlUnit.estimateCycles(ControlUnit.OPCODE_HLT, PredecodeCache.EA_NONE);
+        }
+    }
+
+    /**
+     * Basic block execution (Computer.RUNMODE_BLOCK) from PC to the next 
+     * control transfer.
+     * @throws java.lang.Exception
+     */
+    public void executeBlock() throws Exception{
+        try {
+            this.blockEngine.execute();
+        } catch(HaltSystemException hse){
+            this.halt();
+        }
+    }
+
+    /**
+     * Runs one block of a program compiled ahead of time (RUNMODE_BLOCK after
+     * Computer.load())
+     * @param program
+     * @throws java.lang.Exception
+     */
+    public void executeCompiled(CompiledProgram program) throws Exception{
+        try {
+            program.run();
+        } catch(HaltSystemException hse){
+            this.halt();
+        }
+    }
+
+    private void halt(){
+        this.running=false;
+        this.halted=true;
+    }
 
     public ControlUnit getControlUnit() {
         return controlUnit;
@@ -57,6 +108,10 @@ public class CentralProcessingUnit implements IClockCycle {
         return bp;
     }    
     
+    public BlockEngine getBlockEngine() {
+        return blockEngine;
+    }
+    
     
     public Boolean isRunning() {
         return running;
@@ -64,6 +119,16 @@ public class CentralProcessingUnit implements IClockCycle {
 
     public void setRunning(Boolean running) {
         this.running = running;
+        if(running){
+            this.halted = false;
+        }
+    }
+    
+    /**
+     * @return true if HLT stopped the CPU (rather than setRunning(false))
+     */
+    public boolean isHalted() {
+        return halted;
     }
     
     
@@ -0,0 +1,261 @@
+package computersimulator.cpu;
+
+import computersimulator.components.HaltSystemException;
+import computersimulator.components.MachineFaultException;
+import computersimulator.components.Unit;
+import computersimulator.components.Word;
+import computersimulator.io.ConsoleKeyboard;
+import computersimulator.io.ConsolePrinter;
+import java.util.Arrays;
+import javax.swing.JTextArea;
+
+/**
+ * Base class of the Java classes written by DeckCompiler. A subclass holds
+ * the memory image and registers a card deck leaves behind once the IPL ROM
+ * has loaded it, plus one method per basic block of the program.
+ *
+ * Computer.load() installs the image in place of IPL. In RUNMODE_BLOCK each
+ * clock cycle then runs one compiled block, or interprets one instruction
+ * (functionally, as RUNMODE_FAST) when PC is not at the start of a compiled
+ * block - indirect jump targets, TRAP, HLT, MLT/DVD and anything the
+ * translator did not reach. A block that is written to (self-modifying code)
+ * is interpreted from then on. Other run modes interpret the whole image.
+ *
+ * The branch predictor starts from a fresh scanMemory(), so it has no history
+ * for the ROM loader's branches, and the card reader is not read.
+ */
+public abstract class CompiledProgram extends GeneratedCode implements IMemoryWriteListener {
+
+    // Where the ROM loader transfers control to
+    public static final int ENTRY = 64;
+    // Clock cycles a batch run gets unless told otherwise
+    private static final long BATCH_CYCLE_LIMIT = 10000000;
+
+    // {address, raw word, ...} after loading
+    private final int[] image;
+    // R0-R3, X1-X3 (raw bits) after loading
+    private final int[] initialRegisters;
+    // CC after loading, bit i = condition code i
+    private final int initialConditions;
+    // {first address, end address (exclusive), ...} of every compiled block
+    private final int[] blocks;
+
+    // by address: first address of the compiled block covering it, or -1
+    private int[] leaderOf;
+    // by address: true at the start of a compiled block not written to since
+    private boolean[] runnable;
+    // by address: estimated cycles from the start of its block through it
+    private int[] cyclesThrough;
+    // by address: fetch address, contents, predecoded entry
+    private Unit[] fetchAddresses;
+    private Word[] instructions;
+    private int[] decoded;
+
+    // address of the instruction currently executing
+    private int current;
+
+    // Clock cycles (estimated) of every instruction completed
+    private long retiredCycles = 0;
+
+    /**
+     * @param image {address, raw word, ...} after loading
+     * @param registers R0-R3, X1-X3 after loading
+     * @param conditions CC after loading
+     * @param blocks {first address, end address, ...} of the compiled blocks
+     */
+    protected CompiledProgram(int[] image, int[] registers, int conditions, int[] blocks) {
+        this.image = image;
+        this.initialRegisters = registers;
+        this.initialConditions = conditions;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Runs the compiled block starting at pc. Only called for runnable blocks.
+     * @param pc
+     * @throws Exception Machine faults and anything else raised by an
+     *   instruction; registers are written back first
+     */
+    protected abstract void execute(int pc) throws Exception;
+
+    /**
+     * Loads the image, registers and CC, sets PC to ENTRY
+     * @param cu
+     * @param mem
+     * @throws MachineFaultException
+     */
+    void install(ControlUnit cu, MemoryControlUnit mem) throws MachineFaultException {
+        if(this.memory!=null){
+            this.memory.removeWriteListener(this);
+        }
+        this.bindMachine(cu, mem);
+
+        mem.resetMemory();
+        for(int i=0;i<this.image.length;i+=2){
+            mem.storeBits(this.image[i], this.image[i+1]);
+        }
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            this.registers.setBits(slot, this.initialRegisters[slot]);
+        }
+        for(int i=0;i<RegisterFile.getSize(RegisterFile.CC);i++){
+            if(((this.initialConditions >>> i) & 1)==1){
+                cu.setCondition(i);
+            } else {
+                cu.unsetCondition(i);
+            }
+        }
+        cu.getBranchPredictor().scanMemory();
+        cu.setProgramCounter(Unit.valueOf(13, CompiledProgram.ENTRY));
+
+        int size = MemoryControlUnit.getAddressableSize();
+        this.leaderOf = new int[size];
+        this.runnable = new boolean[size];
+        this.cyclesThrough = new int[size];
+        this.fetchAddresses = new Unit[size];
+        this.instructions = new Word[size];
+        this.decoded = new int[size];
+        Arrays.fill(this.leaderOf, -1);
+        for(int i=0;i<this.blocks.length;i+=2){
+            int start = this.blocks[i];
+            int cycles = 0;
+            for(int address=start;address<this.blocks[i+1];address++){
+                this.fetchAddresses[address] = Unit.valueOf(13, address);
+                this.instructions[address] = mem.engineerFetchByMemoryLocation(this.fetchAddresses[address]);
+                this.decoded[address] = PredecodeCache.decode((int)this.instructions[address].getBits());
+                cycles += ControlUnit.estimateCycles(PredecodeCache.opcode(this.decoded[address]), PredecodeCache.eaMode(this.decoded[address]));
+                this.cyclesThrough[address] = cycles;
+                this.leaderOf[address] = start;
+            }
+            this.runnable[start] = true;
+        }
+        mem.addWriteListener(this);
+    }
+
+    /**
+     * Detaches from memory (another program or IPL replaces this one)
+     */
+    void uninstall(){
+        if(this.memory!=null){
+            this.memory.removeWriteListener(this);
+        }
+    }
+
+    /**
+     * Runs the compiled block at PC, or interprets one instruction. Must only
+     * be called at an instruction boundary.
+     * @throws Exception Machine faults/halt, as raised by the instruction
+     */
+    void run() throws Exception {
+        int pc = this.registers.get(RegisterFile.PC);
+        if(pc >= this.runnable.length || !this.runnable[pc]){
+            this.interpret();
+            return;
+        }
+        this.current = pc;
+        try {
+            this.execute(pc);
+        } catch(Exception e){
+            this.retiredCycles += (this.current==pc) ? 0 : this.cyclesThrough[this.current - 1];
+            throw e;
+        }
+    }
+
+    private void interpret() throws Exception {
+        try {
+            this.retiredCycles += this.controlUnit.executeInstruction();
+        } catch(HaltSystemException hse){
+            this.retiredCycles += ControlUnit.estimateCycles(ControlUnit.OPCODE_HLT, PredecodeCache.EA_NONE);
+            throw hse;
+        }
+    }
+
+    /**
+     * @return Clock cycles (estimated) of every instruction run
+     */
+    public long getRetiredCycles() {
+        return retiredCycles;
+    }
+
+    /**
+     * Stops running the block covering address
+     * @param address
+     */
+    @Override
+    public void memoryWritten(int address) {
+        if(address >= 0 && address < this.leaderOf.length && this.leaderOf[address] >= 0){
+            this.runnable[this.leaderOf[address]] = false;
+        }
+    }
+
+    @Override
+    public void memoryReset() {
+        Arrays.fill(this.runnable, false);
+    }
+
+    /***************** CALLED FROM GENERATED CODE ******************/
+
+    /**
+     * MAR <- PC, MBR <- M(PC), IR <- MBR; PC holds address
+     * @param address
+     */
+    protected final void fetch(int address){
+        this.current = address;
+        this.registers.setBits(RegisterFile.PC, address);
+        this.controlUnit.latchInstruction(this.fetchAddresses[address], this.instructions[address], this.decoded[address]);
+    }
+
+    /**
+     * Block exit after the current instruction: PC <- nextPC
+     */
+    protected final void exit(int nextProgramCounter){
+        this.retiredCycles += this.cyclesThrough[this.current];
+        this.controlUnit.completeInstruction(nextProgramCounter);
+    }
+
+    /**
+     * @return false once the running block's own memory was written
+     */
+    protected final boolean isIntact(){
+        return this.runnable[this.leaderOf[this.current]];
+    }
+
+    /**
+     * Batch run, for the main() of generated classes: loads the program in
+     * place of IPL, runs it in RUNMODE_BLOCK and prints what it wrote to the
+     * console printer. A newline in the input is typed as Enter (13).
+     * @param program
+     * @param args [keyboard input] [clock cycle limit]
+     * @throws Exception
+     */
+    protected static void runBatch(CompiledProgram program, String[] args) throws Exception {
+        String input = (args.length > 0) ? args[0] : "";
+        long limit = (args.length > 1) ? Long.parseLong(args[1]) : CompiledProgram.BATCH_CYCLE_LIMIT;
+
+        Computer computer = new Computer();
+        JTextArea display = new JTextArea();
+        ((ConsolePrinter)computer.getIO().getDevice(InputOutputController.DEVICE_CONSOLEPRINTER)).setDisplay(display);
+        final ConsoleKeyboard keyboard = (ConsoleKeyboard)computer.getIO().getDevice(InputOutputController.DEVICE_CONSOLEKEYBOARD);
+        IRunCondition keyboardEmpty = new IRunCondition() {
+            @Override
+            public boolean isMet(Computer computer) {
+                return keyboard.checkStatus()==InputOutputController.STATUS_BUSY;
+            }
+        };
+
+        computer.setRunmode(Computer.RUNMODE_BLOCK);
+        computer.load(program);
+        int typed = 0;
+        while(typed < input.length()){
+            RunSummary summary = computer.runUntil(keyboardEmpty, limit - computer.getCycleCount());
+            if(summary.getStopReason()!=RunSummary.STOP_CONDITION){
+                break;
+            }
+            char key = input.charAt(typed++);
+            keyboard.buttonPress((key=='\n') ? 13 : key);
+        }
+        if(computer.getCpu().isRunning()){
+            computer.run(limit - computer.getCycleCount());
+        }
+        System.out.print(display.getText());
+    }
+}
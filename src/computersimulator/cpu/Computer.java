@@ -2,6 +2,8 @@
 package computersimulator.cpu;
 
 import computersimulator.components.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -28,12 +30,33 @@ public class Computer implements IClockCycle {
     public static final int RUNMODE_MICROSTEP=0;
     public static final int RUNMODE_STEP=1;
     public static final int RUNMODE_RUN=2;    
+    // Functional: each clockCycle() call runs one whole instruction
+    public static final int RUNMODE_FAST=3;
+    // Basic blocks: each clockCycle() call runs instructions up to the next control transfer
+    public static final int RUNMODE_BLOCK=4;
+    
+    // Clock cycles run so far (estimated for RUNMODE_FAST)
+    private long cycleCount = 0;
+    
+    // Ahead-of-time compiled deck loaded in place of IPL, if any
+    private CompiledProgram program = null;
+    
+    // Longest the simulation thread parks in a poll loop before checking again
+    private static final long IDLE_PARK_MILLIS = 50;
+    // Clock rate credited while parked
+    private static final long IDLE_CYCLES_PER_MILLISECOND = 1000;
+    
+    private final IdleLoopDetector idleLoop;
+    private boolean parkWhenIdle = false;
+    // Clock cycles credited while parked (included in cycleCount)
+    private long idleCycles = 0;
     
 
     public Computer() {        
         memory = new MemoryControlUnit();  
         io = new InputOutputController();
         cpu = new CentralProcessingUnit(memory, io); // contains ALU,  ControlUnit      
+        idleLoop = new IdleLoopDetector(cpu.getControlUnit(), memory, io);
     }   
     
     /**
@@ -43,13 +66,226 @@ public class Computer implements IClockCycle {
     @Override
     public final void clockCycle() throws Exception {
         try {
-            this.cpu.clockCycle();
-            this.memory.clockCycle();                        
+            this.step();
         } catch(MachineFaultException e){
             this.cpu.getControlUnit().signalMachineFault(e.getFaultID());
         }
     }
     
+    /**
+     * One clock cycle (instruction in RUNMODE_FAST, block in RUNMODE_BLOCK)
+     * @throws Exception Machine faults are left to the caller
+     */
+    private void step() throws Exception {
+        if(this.runmode==Computer.RUNMODE_FAST){
+            this.executeInstruction();
+            if(this.parkWhenIdle){
+                this.parkIfIdle();
+            }
+        } else if(this.runmode==Computer.RUNMODE_BLOCK){
+            this.executeBlock();
+            if(this.parkWhenIdle){
+                this.parkIfIdle();
+            }
+        } else {
+            this.cpu.clockCycle();
+            this.memory.clockCycle();                        
+            this.cycleCount++;
+        }
+    }
+    
+    /**
+     * Runs clock cycles in the current run mode until the CPU stops or at 
+     * least maxCycles have run (RUNMODE_FAST/RUNMODE_BLOCK stop at the first
+     * instruction/block boundary past the limit). Machine faults are handed
+     * to the fault handler as in clockCycle() and counted in the summary.
+     * @param maxCycles
+     * @return summary
+     * @throws Exception 
+     */
+    public RunSummary run(long maxCycles) throws Exception {
+        return this.runUntil(null, maxCycles);
+    }
+    
+    /**
+     * Runs clock cycles until the CPU stops or condition is met
+     * @param condition
+     * @return summary
+     * @throws Exception 
+     */
+    public RunSummary runUntil(IRunCondition condition) throws Exception {
+        return this.runUntil(condition, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Runs clock cycles until the CPU stops, condition (may be null) is met or
+     * maxCycles have run, see run()
+     * @param condition
+     * @param maxCycles
+     * @return summary
+     * @throws Exception 
+     */
+    public RunSummary runUntil(IRunCondition condition, long maxCycles) throws Exception {
+        long startCycles = this.cycleCount;
+        long startInstructions = this.cpu.getControlUnit().getInstructionCount();
+        BankTimingModel timing = this.memory.getBankTimingModel();
+        long startRequests = 0;
+        long startRowHits = 0;
+        long startConflicts = 0;
+        long startLatency = 0;
+        if(timing!=null){
+            startRequests = timing.getRequests();
+            startRowHits = timing.getRowHits();
+            startConflicts = timing.getConflictCycles();
+            startLatency = timing.getTotalLatency();
+        }
+        long limit = (maxCycles > Long.MAX_VALUE - startCycles) ? Long.MAX_VALUE : startCycles + maxCycles;
+        int faults = 0;
+        int lastFault = -1;
+        int stopReason;
+        while(true){
+            // faults end the inner loop, so the cycles in between pay for no handler
+            try {
+                stopReason = this.runCycles(condition, limit);
+                break;
+            } catch(MachineFaultException e){
+                this.cpu.getControlUnit().signalMachineFault(e.getFaultID());
+                faults++;
+                lastFault = e.getFaultID();
+            }
+        }
+        if(timing==null){
+            return new RunSummary(this.cycleCount - startCycles, 
+                    this.cpu.getControlUnit().getInstructionCount() - startInstructions,
+                    stopReason, faults, lastFault);
+        }
+        return new RunSummary(this.cycleCount - startCycles, 
+                this.cpu.getControlUnit().getInstructionCount() - startInstructions,
+                stopReason, faults, lastFault, timing.getRequests() - startRequests, 
+                timing.getRowHits() - startRowHits, timing.getConflictCycles() - startConflicts,
+                timing.getTotalLatency() - startLatency);
+    }
+    
+    /**
+     * @return RunSummary.STOP_XXX
+     */
+    private int runCycles(IRunCondition condition, long limit) throws Exception {
+        while(this.cpu.isRunning()){
+            if(this.cycleCount >= limit){
+                return RunSummary.STOP_CYCLE_LIMIT;
+            }
+            if(condition!=null && condition.isMet(this)){
+                return RunSummary.STOP_CONDITION;
+            }
+            this.step();
+        }
+        return this.cpu.isHalted() ? RunSummary.STOP_HALT : RunSummary.STOP_STOPPED;
+    }
+    
+    /**
+     * Functional execution of one instruction. An instruction (or fault 
+     * handler) that was started micro-stepped is finished micro-stepped first.
+     * @throws Exception 
+     */
+    private void executeInstruction() throws Exception {
+        if(!this.cpu.getControlUnit().isAtInstructionBoundary()){
+            this.completeInstruction();
+        } else {
+            this.cycleCount += this.cpu.executeInstruction();
+        }
+    }
+    
+    /**
+     * Basic block execution, up to the next control transfer (compiled blocks
+     * when a CompiledProgram was loaded). Like executeInstruction(), anything
+     * in progress is micro-stepped to the end first.
+     * @throws Exception 
+     */
+    private void executeBlock() throws Exception {
+        if(!this.cpu.getControlUnit().isAtInstructionBoundary()){
+            this.completeInstruction();
+        } else if(this.program!=null){
+            long retired = this.program.getRetiredCycles();
+            try {
+                this.cpu.executeCompiled(this.program);
+            } finally {
+                this.cycleCount += this.program.getRetiredCycles() - retired;
+            }
+        } else {
+            BlockEngine blockEngine = this.cpu.getBlockEngine();
+            long retired = blockEngine.getRetiredCycles();
+            try {
+                this.cpu.executeBlock();
+            } finally {
+                this.cycleCount += blockEngine.getRetiredCycles() - retired;
+            }
+        }
+    }
+    
+    /**
+     * Micro-steps to the next instruction boundary
+     * @throws Exception 
+     */
+    private void completeInstruction() throws Exception {
+        ControlUnit controlUnit = this.cpu.getControlUnit();
+        do {
+            this.cpu.clockCycle();
+            this.memory.clockCycle();
+            this.cycleCount++;
+        } while(!controlUnit.isAtInstructionBoundary() && this.cpu.isRunning());
+    }
+    
+    /**
+     * Parks the calling thread while the program spins in a poll loop waiting
+     * for a device (see IdleLoopDetector), until a device signals a status
+     * change or IDLE_PARK_MILLIS pass. The time parked is credited to the 
+     * cycle count in whole loop iterations.
+     * @throws Exception 
+     */
+    private void parkIfIdle() throws Exception {
+        if(!this.cpu.isRunning() || !this.cpu.getControlUnit().isAtInstructionBoundary()){
+            return;
+        }
+        long iteration = this.idleLoop.observe(this.cycleCount - this.idleCycles);
+        if(iteration==0){
+            return;
+        }
+        long parked = System.nanoTime();
+        this.io.awaitStatusChange(this.idleLoop.getStatusChanges(), Computer.IDLE_PARK_MILLIS);
+        parked = (System.nanoTime() - parked) / 1000000;
+        long skipped = (parked * Computer.IDLE_CYCLES_PER_MILLISECOND) / iteration * iteration;
+        this.cycleCount += skipped;
+        this.idleCycles += skipped;
+    }
+    
+    /**
+     * @return Clock cycles run since IPL (RUNMODE_FAST and RUNMODE_BLOCK add an estimate per instruction)
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+    
+    /**
+     * @return Clock cycles of getCycleCount() skipped while parked in a poll loop
+     */
+    public long getIdleCycles() {
+        return idleCycles;
+    }
+    
+    /**
+     * Only for callers that change device status from another thread (the
+     * GUI): a thread that both runs the computer and presses keys would wait
+     * out the park timeout on every poll.
+     * @param parkWhenIdle true to park in poll loops (RUNMODE_FAST/RUNMODE_BLOCK)
+     */
+    public void setParkWhenIdle(boolean parkWhenIdle) {
+        this.parkWhenIdle = parkWhenIdle;
+    }
+
+    public boolean isParkWhenIdle() {
+        return parkWhenIdle;
+    }
+    
     /** 
      * IPL - You will need a ROM that contains the simple loader. When you press 
      * the IPL button on the console, the ROM contents are read into memory and 
@@ -62,8 +298,14 @@ public class Computer implements IClockCycle {
      */
     public void IPL(){     
         
+        if(this.program!=null){
+            this.program.uninstall();
+            this.program = null;
+        }
         this.io.resetIOController();
         this.memory.resetMemory();
+        this.cycleCount = 0;
+        this.idleCycles = 0;
         
         /*** Pseudocode for ROM bootloader 
          * Reads a file to memory starting at M(64) to EOF
@@ -144,6 +386,112 @@ public class Computer implements IClockCycle {
     }
     
 
+    /**
+     * Loads a deck compiled ahead of time by DeckCompiler in place of IPL:
+     * memory and registers are set to what the ROM loader leaves behind and
+     * control is at 64. In RUNMODE_BLOCK the compiled code runs; other modes
+     * interpret the loaded image as usual.
+     * @param program
+     */
+    public void load(CompiledProgram program){
+        if(this.program!=null){
+            this.program.uninstall();
+        }
+        this.program = program;
+        this.cycleCount = 0;
+        this.idleCycles = 0;
+        try {
+            program.install(this.cpu.getControlUnit(), this.memory);
+        } catch (MachineFaultException ex) {
+            Logger.getLogger(Computer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        this.cpu.setRunning(true);
+    }
+
+    /**
+     * Attaches memory to a memory image file (see MappedMemoryStore) in 
+     * place of IPL and restores the registers saved with it. From then on
+     * memory lives in the file. Not available while paging.
+     * @param file
+     * @throws IOException Not an image, or one made for a different memory size
+     */
+    public void loadImage(File file) throws IOException {
+        if(this.memory.getPagingUnit()!=null){
+            throw new IOException("Memory images cannot be loaded while paging");
+        }
+        MappedMemoryStore image = MappedMemoryStore.open(file);
+        if(image.getBanks()!=MemoryControlUnit.getBanks() || image.getBankCells()!=MemoryControlUnit.getBankCells()){
+            throw new IOException(file + " holds " + image.getBanks() + " banks of " + image.getBankCells() 
+                    + " words, memory is " + MemoryControlUnit.getBanks() + " banks of " + MemoryControlUnit.getBankCells());
+        }
+        if(this.program!=null){
+            this.program.uninstall();
+            this.program = null;
+        }
+        this.memory.attach(image);
+        this.cycleCount = 0;
+        this.idleCycles = 0;
+        
+        int[] state = new int[MappedMemoryStore.STATE_WORDS];
+        image.readState(state);
+        ControlUnit cu = this.cpu.getControlUnit();
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            cu.getRegisterFile().setBits(slot, state[slot - RegisterFile.R0]);
+        }
+        int conditions = state[MappedMemoryStore.STATE_WORDS - 2];
+        for(int i=0;i<RegisterFile.getSize(RegisterFile.CC);i++){
+            if(((conditions >>> i) & 1)==1){
+                cu.setCondition(i);
+            } else {
+                cu.unsetCondition(i);
+            }
+        }
+        try {
+            this.cpu.getBranchPredictor().scanMemory();
+        } catch (MachineFaultException ex) {
+            Logger.getLogger(Computer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        cu.setProgramCounter(Unit.valueOf(13, state[MappedMemoryStore.STATE_WORDS - 1]));
+        this.cpu.setRunning(true);
+    }
+    
+    /**
+     * Saves memory and registers to a memory image file. If memory is 
+     * already attached to that file only the registers are written before 
+     * flushing it; otherwise the image is created and memory is attached to
+     * it, so later saves are flushes too. Not available while paging.
+     * @param file
+     * @throws IOException 
+     */
+    public void saveImage(File file) throws IOException {
+        MappedMemoryStore image;
+        IMemoryStore store = this.memory.getStore();
+        if(store instanceof MappedMemoryStore && ((MappedMemoryStore)store).getFile().getCanonicalFile().equals(file.getCanonicalFile())){
+            image = (MappedMemoryStore)store;
+        } else {
+            if(this.memory.getPagingUnit()!=null){
+                throw new IOException("Memory images cannot be saved while paging");
+            }
+            image = MappedMemoryStore.create(file, MemoryControlUnit.getBanks(), MemoryControlUnit.getBankCells());
+            int[] words = new int[store.size()];
+            store.read(0, words, words.length);
+            image.write(0, words, words.length);
+            this.memory.attach(image);
+        }
+        
+        int[] state = new int[MappedMemoryStore.STATE_WORDS];
+        ControlUnit cu = this.cpu.getControlUnit();
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            state[slot - RegisterFile.R0] = cu.getRegisterFile().get(slot);
+        }
+        for(int i=0;i<RegisterFile.getSize(RegisterFile.CC);i++){
+            state[MappedMemoryStore.STATE_WORDS - 2] |= cu.getConditionCode(i) << i;
+        }
+        state[MappedMemoryStore.STATE_WORDS - 1] = cu.getRegisterFile().get(RegisterFile.PC);
+        image.writeState(state);
+        image.force();
+    }
+
     public void setRunmode(int runmode) {
         this.runmode = runmode;
     }    
@@ -179,8 +527,8 @@ public class Computer implements IClockCycle {
     }
 
     /**
-     * Since each Register contains a reference to a particular unit/word, 
-     * we can't maintain that reference and instead must look it up every time.
+     * Registers are kept as primitives in the register file, so a Unit/Word
+     * view is built on every lookup.
      * @param name Name of Register/Variable
      * @return Unit value
      */
@@ -217,8 +565,8 @@ public class Computer implements IClockCycle {
     }
     
     /**
-     * Since each Register contains a reference to a particular unit/word, 
-     * we can't maintain that reference and instead must look it up every time.
+     * Registers are kept as primitives in the register file, so deposits go
+     * through the register setters.
      * @param name Name of Register/Variable
      * @param deposit Unit to Deposit
      */
@@ -226,44 +574,53 @@ public class Computer implements IClockCycle {
         
         switch(name){
             case "R0":
-                this.getCpu().getControlUnit().getGeneralPurposeRegisters()[0].setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setGeneralPurposeRegister(0, Word.valueOf(deposit));
                 break;
             case "R1":
-                this.getCpu().getControlUnit().getGeneralPurposeRegisters()[1].setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setGeneralPurposeRegister(1, Word.valueOf(deposit));
                 break;
             case "R2":
-                this.getCpu().getControlUnit().getGeneralPurposeRegisters()[2].setValueBinary(deposit.getBinaryString());               
+                this.getCpu().getControlUnit().setGeneralPurposeRegister(2, Word.valueOf(deposit));               
                 break;
             case "R3":
-                this.getCpu().getControlUnit().getGeneralPurposeRegisters()[3].setValueBinary(deposit.getBinaryString());                
+                this.getCpu().getControlUnit().setGeneralPurposeRegister(3, Word.valueOf(deposit));                
                 break;
             case "X1":
-                this.getCpu().getControlUnit().getIndexRegisters()[0].setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setIndexRegister(1, this.resizeDeposit(13, deposit));
                 break;
             case "X2":
-                this.getCpu().getControlUnit().getIndexRegisters()[1].setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setIndexRegister(2, this.resizeDeposit(13, deposit));
                 break;
             case "X3":
-                this.getCpu().getControlUnit().getIndexRegisters()[2].setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setIndexRegister(3, this.resizeDeposit(13, deposit));
                 break;
             case "MAR":                
-                Unit depositUnit = new Unit(13);
-                depositUnit.setValueBinary(deposit.getBinaryString());
-                this.getMemory().setMAR(depositUnit);
+                this.getMemory().setMAR(this.resizeDeposit(13, deposit));
                 break;
             case "MBR":
-                Word depositWord = new Word(deposit);
-                this.getMemory().setMBR(depositWord);
+                this.getMemory().setMBR(Word.valueOf(deposit));
                 break;
             case "PC":
-                this.getCpu().getControlUnit().getProgramCounter().setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setProgramCounter(this.resizeDeposit(13, deposit));
                 break;
             case "CC":
                 // This doesn't accept deposits
                 break;
             case "IR":                
-                this.getCpu().getControlUnit().getInstructionRegister().setValueBinary(deposit.getBinaryString());
+                this.getCpu().getControlUnit().setIR(Word.valueOf(deposit));
                 break;
         }                  
     }             
+    
+    /**
+     * Resizes a deposit the same way loading its binary string would
+     * @param size Size of the destination register
+     * @param deposit Unit to Deposit
+     * @return Unit(size)
+     */
+    private Unit resizeDeposit(int size, Unit deposit){
+        Unit resized = new Unit(size);
+        resized.setValueBinary(deposit.getBinaryString());
+        return resized;
+    }
 }
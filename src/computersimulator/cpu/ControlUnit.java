@@ -14,30 +14,29 @@ import java.util.logging.Logger;
  */
 public class ControlUnit implements IClockCycle {
 
-    // PC	13 bits	Program Counter: address of next instruction to be executed
-    private Unit programCounter;
-    
-    //IR	20 bits	Instruction Register: holds the instruction to be executed
-    private Word instructionRegister;
-    
-    private HashMap<String,Unit> instructionRegisterDecoded;
-    
-    //MSR	20 bits	Machine Status Register: certain bits record the status of the health of the machine
-    private Word machineStatusRegister;
-
-    //MFR	4 bits	Machine Fault Register: contains the ID code if a machine fault after it occurs
-    private Unit machineFaultRegister;
+    // PC, IR, MSR, MFR, X1…X3, R0…R3 and CC live in one primitive register file.
+    //  PC	13 bits	Program Counter: address of next instruction to be executed
+    //  IR	20 bits	Instruction Register: holds the instruction to be executed
+    //  MSR	20 bits	Machine Status Register: certain bits record the status of the health of the machine
+    //  MFR	4 bits	Machine Fault Register: contains the ID code if a machine fault after it occurs
+    //  X1…X3	13 bits	Index Register: contains a 13-bit base address that supports base register addressing of memory.
+    //  R0…R3	20 bits General Purpose Registers (GPRs) – each 20 bits in length
+    //  CC	4 bits	Condition Code: set when arithmetic/logical operations are executed; 
+    //          it has four 1-bit elements: overflow, underflow, division by zero, equal-or-not. 
+    //          OVERFLOW[0], UNDERFLOW[1], DIVZERO[2], EQUALORNOT[3]
+    private final RegisterFile registers = new RegisterFile();
     
-    //X1…X3	13 bits	Index Register: contains a 13-bit base address that supports base register addressing of memory.
-    private Unit[] indexRegisters = new Unit[3];
+    // IR fields, extracted once per instruction during decode
+    private int irOpcode;
+    private int irXfi;
+    private int irRfi;
+    private int irAddress;
     
-    //R1…R3	20 bits General Purpose Registers (GPRs) – each 20 bits in length
-    private Word[] gpRegisters = new Word[4];    
+    // Memory address IR was fetched from (-1 when IR was deposited directly)
+    private int irFetchedFrom = -1;
     
-    //CC	4 bits	Condition Code: set when arithmetic/logical operations are executed; 
-    //          it has four 1-bit elements: overflow, underflow, division by zero, equal-or-not. 
-    //          OVERFLOW[0], UNDERFLOW[1], DIVZERO[2], EQUALORNOT[3]
-    private Unit conditionCode;    
+    // Instructions fetched so far, by any run mode
+    private long instructionCount = 0;
     
     
     /**************************************
@@ -47,15 +46,33 @@ public class ControlUnit implements IClockCycle {
     // Effective Address   ENGINEER Console: Used to hold EA temporarily in microcycles
     private Unit effectiveAddress;
     
-    // Engineer: Internal flag to signal that a blocking operation occurred (memory read) forcing a clock cycle
-    private boolean blocked = false;
+    // A fetch/store signalled on MAR/MBR has not ended yet. Memory clears it
+    // through memoryDone, so the control unit never polls memory.
+    private boolean memoryPending = false;
+    
+    private final IMemoryRequestListener memoryDone = new IMemoryRequestListener() {
+        @Override
+        public void memoryRequestCompleted(int tag, int bits) {
+            memoryPending = false;
+        }
+
+        @Override
+        public void memoryRequestFaulted(int tag, int faultId) {
+            memoryPending = false;
+        }
+
+        @Override
+        public void memoryRequestCancelled(int tag) {
+            memoryPending = false;
+        }
+    };
     
     // used to control state of EA
     private int eaState;
-    private static final int EA_DIRECT=0;
-    private static final int EA_REGISTER_INDIRECT=1;
-    private static final int EA_INDEXED=2;
-    private static final int EA_INDEXED_OFFSET=3;
+    private static final int EA_DIRECT=PredecodeCache.EA_DIRECT;
+    private static final int EA_REGISTER_INDIRECT=PredecodeCache.EA_REGISTER_INDIRECT;
+    private static final int EA_INDEXED=PredecodeCache.EA_INDEXED;
+    private static final int EA_INDEXED_OFFSET=PredecodeCache.EA_INDEXED_OFFSET;
      
     // used to control the instruction cycle
     private int state;
@@ -72,8 +89,6 @@ public class ControlUnit implements IClockCycle {
     public final static int CONDITION_REGISTER_EQUALORNOT = 3;
 
     
-    private static final int MICROSTATE_EXECUTE_COMPLETE=999;
-    
     public static final int OPCODE_HLT=0;
     public static final int OPCODE_LDR=1;
     public static final int OPCODE_STR=2;
@@ -108,6 +123,9 @@ public class ControlUnit implements IClockCycle {
     
     // Engineer: used to control micro step, defined per state
     private Integer microState = null;
+    
+    // Microcode ROM address of the next micro-op (execute state)
+    private int microPC;
         
     // memory reference
     private MemoryControlUnit memory;
@@ -123,24 +141,29 @@ public class ControlUnit implements IClockCycle {
     // nextPC	13 bits	Next Program Counter: Interal Register Used to signal program counter was adjusted by instruction
     private Unit nextProgramCounter;
     
+    // Dispatch table, bound once in the constructor.
+    //  functionalHandlers  (opcode << 3 | EA mode) -> whole instruction, EA included
+    // Micro-stepped execution runs the Microcode ROM instead.
+    static final int OPCODE_COUNT=64;
+    private final IInstructionHandler[] functionalHandlers = new IInstructionHandler[ControlUnit.OPCODE_COUNT << 3];
+    
+    // Superinstructions: sequences BlockEngine runs as one fused handler
+    public static final int FUSION_TRR_JCC=0;
+    public static final int FUSION_CHK_TRR_JCC=1;
+    public static final int FUSION_SIR_JNE=2;
+    public static final int FUSION_LDR_AMR_STR=3;
+    private static final String[] FUSION_NAMES = {"TRR/JCC", "CHK/TRR/JCC", "SIR/JNE", "LDR/AMR/STR"};
+    private static final int[] FUSION_LENGTHS = {2, 3, 2, 3};
+    // times each superinstruction ran
+    private final long[] fusionCounts = new long[ControlUnit.FUSION_LENGTHS.length];
+    
     public ControlUnit(MemoryControlUnit mem, ArithmeticLogicUnit aluRef) {
-        this.instructionRegister = new Word();
-        this.programCounter = new Unit(13);
-        this.machineStatusRegister = new Word();
-        this.machineFaultRegister = new Unit(4);
+        this.registers.reset();
         this.state = ControlUnit.STATE_NONE;
         this.memory = mem;        
         this.alu=aluRef;
-        this.conditionCode = new Unit(4);  
         this.clearConditions();        
-        
-        for(int x=0;x<3;x++){
-            this.indexRegisters[x] = new Unit(13);
-        }        
-        
-        for(int x=0;x<4;x++){
-            this.gpRegisters[x] = new Word();
-        }                         
+        this.buildFunctionalHandlers();
     }
     
     public InputOutputController getIOController() {
@@ -164,14 +187,22 @@ public class ControlUnit implements IClockCycle {
         return state;
     }
    
+    /**
+     * Primitive access to the registers, used by the execute paths
+     * @return RegisterFile
+     */
+    public RegisterFile getRegisterFile() {
+        return registers;
+    }
+   
     /**
      *
      * @param ConditionRegister
      * @return Condition Code for Register ID
      */
     public int getConditionCode(int ConditionRegister) {
-        Integer[] raw = this.conditionCode.getBinaryArray();        
-        return raw[ConditionRegister];
+        this.materializeConditions();
+        return this.registers.bit(RegisterFile.CC, ConditionRegister);
     }
 
     /**
@@ -179,7 +210,8 @@ public class ControlUnit implements IClockCycle {
      * @return ConditionCodeRegister Unit(4) - 
      */
     public Unit getConditionCodeRegister() {
-        return conditionCode;
+        this.materializeConditions();
+        return this.registers.getUnit(RegisterFile.CC);
     }    
     
     /**
@@ -188,14 +220,8 @@ public class ControlUnit implements IClockCycle {
      * @param ConditionRegister (see static variables)
      */
     public void setCondition(int ConditionRegister){
-        Integer[] raw = this.conditionCode.getBinaryArray();
-        raw[ConditionRegister] = 1;
-        
-        StringBuilder ret = new StringBuilder();
-        for (Integer el : raw) {
-            ret.append(el);
-        }
-        this.conditionCode.setValueBinary(ret.toString());        
+        this.materializeConditions();
+        this.registers.setBit(RegisterFile.CC, ConditionRegister, 1);        
     }
     
 
@@ -206,42 +232,44 @@ public class ControlUnit implements IClockCycle {
      * @param ConditionRegister (see static variables)
      */
     public void unsetCondition(int ConditionRegister){
-        Integer[] raw = this.conditionCode.getBinaryArray();
-        raw[ConditionRegister] = 0;
-        
-        StringBuilder ret = new StringBuilder();
-        for (Integer el : raw) {
-            ret.append(el);
-        }
-        this.conditionCode.setValueBinary(ret.toString());         
+        this.materializeConditions();
+        this.registers.setBit(RegisterFile.CC, ConditionRegister, 0);         
     }
     
     /**
      * Clear any previously set condition codes
      */
     public final void clearConditions(){
-        this.conditionCode.setValueBinary("0000");
+        this.materializeConditions();
+        this.registers.setBits(RegisterFile.CC, 0);
     }    
     
+    /**
+     * The ALU computes its flags lazily. Bring the condition code register up
+     * to date before it is read or changed.
+     */
+    private void materializeConditions(){
+        if(this.alu!=null){
+            this.alu.materializeConditions();
+        }
+    }
+    
     public Unit getProgramCounter() {
-        return programCounter;
+        return this.registers.getUnit(RegisterFile.PC);
     }
 
     public Word getInstructionRegister() {
-        return instructionRegister;
+        return this.registers.getWord(RegisterFile.IR);
     }
 
     public Word getMachineStatusRegister() {
-        return machineStatusRegister;
+        return this.registers.getWord(RegisterFile.MSR);
     }
 
     public Unit getMachineFaultRegister() {
-        return machineFaultRegister;
+        return this.registers.getUnit(RegisterFile.MFR);
     }
 
-    public Unit[] getIndexRegisters() {
-        return indexRegisters;
-    }
      /**
      *Use to set Index Register IX
      * @param ixid IndexRegisters Id(1~3)
@@ -249,62 +277,81 @@ public class ControlUnit implements IClockCycle {
      */
     public void setIndexRegister(int ixid,Unit IndexRegister)
     {
-        if(ixid<4&&ixid>0){ // IX1-3, stored internally at 0-2
-            this.indexRegisters[ixid-1] = Unit.cloneUnit(IndexRegister);
+        this.setIndexRegister(ixid, IndexRegister.getUnsignedValue());
+    }
+    
+    /**
+     * Range checked set of an Index Register. Ids outside 1-3 are ignored.
+     * @param ixid IndexRegisters Id(1~3)
+     * @param value
+     */
+    public void setIndexRegister(int ixid,int value)
+    {
+        Unit.checkRange(RegisterFile.getSize(RegisterFile.X1), value);
+        if(ixid<4&&ixid>0){ // IX1-3
+            this.registers.set(RegisterFile.index(ixid), value);
         }
     }
     
     /**
-     * Returns a translated index register value (1-3) becomes (0-2)
+     * Returns a view of an index register (1-3)
      * @param ixid IndexRegisters Id(1~3)
      * @return Unit value
      */
     public Unit getIndexRegister(int ixid){
-        if(ixid<4&&ixid>0){ // IX1-3, stored internally at 0-2
-            return Unit.cloneUnit(this.indexRegisters[ixid-1]);
+        if(ixid<4&&ixid>0){ // IX1-3
+            return this.registers.getUnit(RegisterFile.index(ixid));
         } else {
             return null;
         }
     }
 
-    public Word[] getGeneralPurposeRegisters() {
-        return gpRegisters;
-    }  
      /**
      *Use to set General Purpose Register
      * @param RFI GeneralPurposeRegisterValuesId(0~3)
      * @param GeneralPurposeRegisterValue initial data
      */
     public void setGeneralPurposeRegister(int RFI,Word GeneralPurposeRegisterValue){
+        this.setGeneralPurposeRegisterBits(RFI, GeneralPurposeRegisterValue.getBits());
+    }
+    
+    /**
+     * Raw set of a General Purpose Register. Ids outside 0-3 are ignored
+     * (MLT/DVD on R3 have no R4 to write).
+     * @param RFI GeneralPurposeRegisterValuesId(0~3)
+     * @param bits
+     */
+    public void setGeneralPurposeRegisterBits(int RFI,long bits){
         if(RFI<4&&RFI>=0) // GPR 0-3
         {
-            this.gpRegisters[RFI]=Word.cloneWord(GeneralPurposeRegisterValue);
+            this.registers.setBits(RegisterFile.gpr(RFI), bits);
         }
     }
     
     /**
      * 
      * @param RFI
-     * @return Word R(RFI)
+     * @return Word view of R(RFI)
      */
     public Word getGeneralPurposeRegister(int RFI){
-        return this.gpRegisters[RFI];
+        return this.registers.getWord(RegisterFile.gpr(RFI));
     }
 
     public void setProgramCounter(Unit programCounter) {
-        this.programCounter = new Unit(13,programCounter.getUnsignedValue());
+        this.registers.set(RegisterFile.PC, programCounter.getUnsignedValue());
     }
 
     public Word getIR() {
-        return instructionRegister;
+        return this.registers.getWord(RegisterFile.IR);
     }
 
     public void setIR(Word instructionRegister) {
-        this.instructionRegister = instructionRegister;
+        this.registers.setBits(RegisterFile.IR, instructionRegister.getBits());
+        this.irFetchedFrom = -1;
     }
     
     public void setMFR(Unit id) {
-        this.machineFaultRegister = id;
+        this.registers.set(RegisterFile.MFR, id.getUnsignedValue());
     }
     
     /**
@@ -318,11 +365,20 @@ public class ControlUnit implements IClockCycle {
     }  
     
     /**
-     * Used internally to signal that a micro-cycle needs a full clock cycle
+     * MBR <- M(MAR), memoryPending until memory is done
      */
-    private void signalBlockingMicroFunction(){
-        this.blocked=true;
-    }    
+    private void signalMemoryFetch(){
+        this.memoryPending = true;
+        this.memory.signalFetch(this.memoryDone);
+    }
+    
+    /**
+     * M(MAR) <- MBR, memoryPending until memory is done
+     */
+    private void signalMemoryStore(){
+        this.memoryPending = true;
+        this.memory.signalStore(this.memoryDone);
+    }
     
     /**       
     * These fundamental steps are repeated over and over until we reach the 
@@ -332,7 +388,6 @@ public class ControlUnit implements IClockCycle {
         if(microState==null){
             microState=0;
         }
-        this.blocked=false;             
         
         switch(this.state){
             case ControlUnit.STATE_FETCH_INSTRUCTION: // takes 2 cycles
@@ -362,67 +417,76 @@ public class ControlUnit implements IClockCycle {
      * handles the trap or machine fault. 
      */
     void handleMachineFault() {
-        this.blocked=false; 
         switch(this.microState){            
             case 0: // save pc                
                 Unit pc = this.getProgramCounter();
-                Unit pcPlusOne = new Unit(13, pc.getUnsignedValue()+1);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-0: 4->MAR, PC({0}) -> MBR", pcPlusOne.getUnsignedValue());                
-                this.memory.setMAR(new Unit(13,4));     
+                Unit pcPlusOne = Unit.valueOf(13, pc.getUnsignedValue()+1);
+                if(Trace.ENABLED){
+                    Trace.record(Trace.MACHINE_FAULT_STEP, 0, pcPlusOne.getUnsignedValue());
+                }
+                this.memory.setMAR(Unit.valueOf(13, 4));     
                 this.memory.setMBR(pcPlusOne);
-                this.memory.signalStore();               
+                this.signalMemoryStore();               
                 this.microState++; // no break in case it was cached                                
             case 1: // wait for save pc
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-1: PC -> M(4)");
+                if(!this.memoryPending){ // block until memory read is ready
+                    if(Trace.ENABLED){
+                        Trace.record(Trace.MACHINE_FAULT_STEP, 1, 4);
+                    }
                     this.microState++; 
                     // bleed through to case 2
                 } else {
-                    this.signalBlockingMicroFunction();
-                    break;
+                    break; // wait for memory
                 }                
             case 2: // save msr
                 Word msr = this.getMachineStatusRegister();
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-2: 5->MAR, MSR({0}) -> MBR", msr);                
-                this.memory.setMAR(new Unit(13,5));     
+                if(Trace.ENABLED){
+                    Trace.record(Trace.MACHINE_FAULT_STEP, 2, msr.getBits());
+                }
+                this.memory.setMAR(Unit.valueOf(13, 5));     
                 this.memory.setMBR(msr);
-                this.memory.signalStore();               
+                this.signalMemoryStore();               
                 this.microState++; // no break in case it was cached                    
                 break;
             case 3: // wait for save msr
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-3: MSR -> M(5)");
+                if(!this.memoryPending){ // block until memory read is ready
+                    if(Trace.ENABLED){
+                        Trace.record(Trace.MACHINE_FAULT_STEP, 3, 5);
+                    }
                     this.microState++; 
                     // bleed through to case 4
                 } else {
-                    this.signalBlockingMicroFunction();
-                    break;
+                    break; // wait for memory
                 }                       
                 break;
             case 4: // fetch machine fault address
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-4: 1->MAR (Fetch)");
-                this.memory.setMAR(new Unit(13,1));                     
-                this.memory.signalFetch();               
+                if(Trace.ENABLED){
+                    Trace.record(Trace.MACHINE_FAULT_STEP, 4, 1);
+                }
+                this.memory.setMAR(Unit.valueOf(13, 1));                     
+                this.signalMemoryFetch();               
                 this.microState++; // no break in case it was cached                     
                 break;
             case 5: // transfer execution to machine fault addr
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT] Micro-5: M(1) -> PC [{0}]", this.memory.getMBR().getUnsignedValue());
+                if(!this.memoryPending){ // block until memory read is ready
+                    if(Trace.ENABLED){
+                        Trace.record(Trace.MACHINE_FAULT_STEP, 5, this.memory.getMBR().getUnsignedValue());
+                    }
                     this.setProgramCounter(this.memory.getMBR());                                  
                     // Set up for next major state
                     this.microState=null;
                     this.state=ControlUnit.STATE_FETCH_INSTRUCTION;
                     break;
-                } else {
-                    this.signalBlockingMicroFunction();
                 }
 
         }        
     }
     
     public void signalMachineFault(int faultID){
-        this.setMFR(new Unit(4,faultID));
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "[FAULT]: Machine Fault Occurred! [{0}]", faultID);
+        this.setMFR(Unit.valueOf(4, faultID));
+        if(Trace.ENABLED){
+            Trace.record(Trace.MACHINE_FAULT, faultID);
+        }
         
         this.state=ControlUnit.STATE_MACHINE_FAULT;
         this.microState=0;
@@ -436,28 +500,30 @@ public class ControlUnit implements IClockCycle {
         switch(this.microState){            
             case 0:
                 this.nextProgramCounter=null;
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-0: PC -> MAR");
                 // Micro-0: PC -> MAR
                 Unit pc = this.getProgramCounter();
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "-- PC: {0}", pc);
+                if(Trace.ENABLED){
+                    Trace.record(Trace.FETCH, pc.getUnsignedValue());
+                }
                 this.memory.setMAR(pc);               
-                this.memory.signalFetch();               
+                this.signalMemoryFetch();               
                 this.microState++; // no break in case it was cached
                 
             case 1:
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-1: MDR -> IR");
+                if(!this.memoryPending){ // block until memory read is ready
                     // Micro-1: MDR -> IR                
                     this.setIR(this.memory.getMBR());              
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "-- IR: {0}", this.memory.getMBR());
+                    this.irFetchedFrom = this.memory.getMAR().getUnsignedValue();
+                    this.instructionCount++;
+                    if(Trace.ENABLED){
+                        Trace.record(Trace.INSTRUCTION_REGISTER, this.registers.get(RegisterFile.IR));
+                    }
                     this.microState=2;              
 
                     // Set up for next major state
                     this.microState=null;
                     this.state=ControlUnit.STATE_DECODE_INSTRUCTION;
                     break;
-                } else {
-                    this.signalBlockingMicroFunction();
                 }
         }
     }
@@ -487,80 +553,52 @@ public class ControlUnit implements IClockCycle {
     private void decodeInstructionRegister(){        
         if(this.microState == 0){// Micro-4: Decode IR
             this.effectiveAddress=null;
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-4: Decode IR");
-            this.instructionRegisterDecoded = this.decodeInstructionRegister(this.getIR());     
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "-- IR Decoded: {0}", this.instructionRegisterDecoded);
+            int decoded = this.predecodeInstructionRegister();
+            this.irOpcode  = PredecodeCache.opcode(decoded);
+            this.irXfi     = PredecodeCache.xfi(decoded);
+            this.irRfi     = PredecodeCache.rfi(decoded);
+            this.irAddress = PredecodeCache.address(decoded);
+            if(Trace.ENABLED){
+                Trace.record(Trace.DECODE, this.registers.get(RegisterFile.IR));
+            }
                         
-            int opcode = this.instructionRegisterDecoded.get("opcode").getUnsignedValue();
-            
-            
-            switch(opcode){
-                case ControlUnit.OPCODE_INX:
-                case ControlUnit.OPCODE_AIR:
-                case ControlUnit.OPCODE_SIR:
-                case ControlUnit.OPCODE_MLT:
-                case ControlUnit.OPCODE_DVD:
-                case ControlUnit.OPCODE_TRR:
-                case ControlUnit.OPCODE_AND:
-                case ControlUnit.OPCODE_ORR:
-                case ControlUnit.OPCODE_NOT:                     
-                case ControlUnit.OPCODE_SRC:
-                case ControlUnit.OPCODE_RRC:
-                case ControlUnit.OPCODE_IN:
-                case ControlUnit.OPCODE_OUT:
-                case ControlUnit.OPCODE_CHK:
-                case ControlUnit.OPCODE_HLT:
-                case ControlUnit.OPCODE_TRAP:
-                    // These instructions don't require EA calculation. Skip ahead.
-                    this.microState=null;
-                    this.state=ControlUnit.STATE_EXECUTE_INSTRUCTION;                                
-                    this.effectiveAddress=null;
-                    break;
-                default:// Every other instruction does. We'll progress through eaState and microState now.
-                    if(this.instructionRegisterDecoded.get("index").getUnsignedValue()==0 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()==0){                        
-                        this.eaState = ControlUnit.EA_DIRECT;
-                    } else if(this.instructionRegisterDecoded.get("index").getUnsignedValue()==0 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()>=1 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()<=3){
-                        this.eaState = ControlUnit.EA_REGISTER_INDIRECT;                    
-                    } else if(this.instructionRegisterDecoded.get("index").getUnsignedValue()==1 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()==0){
-                        this.eaState = ControlUnit.EA_INDEXED;
-                    } else if(this.instructionRegisterDecoded.get("index").getUnsignedValue()==1 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()>=1 && this.instructionRegisterDecoded.get("xfi").getUnsignedValue()<=3){
-                        this.eaState = ControlUnit.EA_INDEXED_OFFSET;
-                    }                                
-                    this.microState++;    
-                    
-                    break;
+            if(PredecodeCache.eaMode(decoded)==PredecodeCache.EA_NONE){
+                // These instructions don't require EA calculation. Skip ahead.
+                this.microState=null;
+                this.state=ControlUnit.STATE_EXECUTE_INSTRUCTION;                                
+                this.microPC=Microcode.entry(this.irOpcode);
+                this.effectiveAddress=null;
+            } else { // Every other instruction does. We'll progress through eaState and microState now.
+                this.eaState = PredecodeCache.eaMode(decoded);
+                this.microState++;    
             }      
         } else { //microState >= 1 & we're computing EA
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-5.{0}: Compute Effective Address (Type: {1})", new Object[]{this.microState, this.eaState});            
+            if(Trace.ENABLED){
+                Trace.record(Trace.EFFECTIVE_ADDRESS, this.eaState, this.microState);
+            }
             switch(this.eaState){
                 case ControlUnit.EA_DIRECT: //EA <- ADDR                    
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Absolute/Direct:{0}", this.instructionRegisterDecoded.get("address"));
-                    this.effectiveAddress = new Unit(13,this.instructionRegisterDecoded.get("address").getUnsignedValue());                    
+                    this.effectiveAddress = Unit.valueOf(13, this.irAddress);                    
                     break;
                 case ControlUnit.EA_REGISTER_INDIRECT: //EA <- c(Xi) + ADDR
                     switch(this.microState){
                         case 1:
-                            Unit addr = this.instructionRegisterDecoded.get("address");  
-                            int contentsOfX = this.getIndexRegister(this.instructionRegisterDecoded.get("xfi").getUnsignedValue()).getUnsignedValue(); //read Xi here  
-                            this.effectiveAddress = new Unit(13, (contentsOfX + addr.getUnsignedValue()));
-                            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Register Indirect + Offset ({0} + {1}): {2}", new Object[]{contentsOfX, addr.getUnsignedValue(), this.effectiveAddress});
+                            int contentsOfX = this.registers.get(RegisterFile.index(this.irXfi)); //read Xi here  
+                            this.effectiveAddress = Unit.valueOf(13, (contentsOfX + this.irAddress));
                             break;                            
                     }                           
                     break;
                 case ControlUnit.EA_INDEXED: //EA <- c(ADDR)                         
                     switch(this.microState){
                         case 1: // Set ADDR onto MAR
-                            Unit addr = new Unit(13,this.instructionRegisterDecoded.get("address").getUnsignedValue());
+                            Unit addr = Unit.valueOf(13, this.irAddress);
                             this.memory.setMAR(addr);  
-                            this.memory.signalFetch();
+                            this.signalMemoryFetch();
                             this.microState++; // no break in case it was cached
                         case 2: // c(ADDR) from MBR, set to MAR
-                            if(!this.memory.isBusy()){ // block until memory read is ready
+                            if(!this.memoryPending){ // block until memory read is ready
                                 Word contentsOfAddr = this.memory.getMBR();
-                                this.effectiveAddress =  new Unit(13, (contentsOfAddr.getUnsignedValue()));
-                                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Indexed - c(ADDR) =  c({0}) = {1}", new Object[]{this.instructionRegisterDecoded.get("address").getUnsignedValue(), this.effectiveAddress});                            
-                            } else {
-                                this.signalBlockingMicroFunction();
+                                this.effectiveAddress =  Unit.valueOf(13, (contentsOfAddr.getUnsignedValue()));
                             }
                             break;
                     }                           
@@ -568,19 +606,15 @@ public class ControlUnit implements IClockCycle {
                 case ControlUnit.EA_INDEXED_OFFSET: //EA <- c(c(Xi) + ADDR)
                     switch(this.microState){
                         case 1:
-                            Unit addr = this.instructionRegisterDecoded.get("address");
-                            int contentsOfX = this.getIndexRegister(this.instructionRegisterDecoded.get("xfi").getUnsignedValue()).getUnsignedValue();    //read Xi here                        
-                            Unit location = new Unit(13, (contentsOfX + addr.getUnsignedValue()));
+                            int contentsOfX = this.registers.get(RegisterFile.index(this.irXfi));    //read Xi here                        
+                            Unit location = Unit.valueOf(13, (contentsOfX + this.irAddress));
                             this.memory.setMAR(location);
-                            this.memory.signalFetch();
+                            this.signalMemoryFetch();
                             this.microState++; // no break in case it was cached
                         case 2:
-                            if(!this.memory.isBusy()){ // block until memory read is ready
+                            if(!this.memoryPending){ // block until memory read is ready
                                 Word contentsOfLocation = this.memory.getMBR();
-                                this.effectiveAddress = new Unit(13, contentsOfLocation.getUnsignedValue());
-                                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Indexed + Offset --> {0}", this.effectiveAddress);                                
-                            } else {
-                                this.signalBlockingMicroFunction();
+                                this.effectiveAddress = Unit.valueOf(13, contentsOfLocation.getUnsignedValue());
                             }
                             break;
                     }                      
@@ -589,1224 +623,924 @@ public class ControlUnit implements IClockCycle {
                     // Unhandled address mode
             }            
             if(this.effectiveAddress != null){ // EA Calculated. Completed!
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "-- Effective Address Calculated: {0}", this.effectiveAddress);                     
+                if(Trace.ENABLED){
+                    Trace.record(Trace.EFFECTIVE_ADDRESS_DONE, this.eaState, this.effectiveAddress.getUnsignedValue());
+                }
                 this.microState=null;
                 this.state=ControlUnit.STATE_EXECUTE_INSTRUCTION;                    
+                this.microPC=Microcode.entry(this.irOpcode);
             }
         }
     }
     
+    /**
+     * Predecoded IR. Instructions fetched from memory go through the 
+     * predecode cache, so a loop body is only decoded on its first pass.
+     * @return PredecodeCache entry
+     */
+    private int predecodeInstructionRegister(){
+        int raw = this.registers.get(RegisterFile.IR);
+        if(this.irFetchedFrom < 0){
+            return PredecodeCache.decode(raw);
+        }
+        PredecodeCache predecode = this.memory.getPredecodeCache();
+        int entry = predecode.lookup(this.irFetchedFrom);
+        if(entry==PredecodeCache.INVALID || PredecodeCache.raw(entry)!=raw){
+            entry = predecode.fill(this.irFetchedFrom, raw);
+        }
+        return entry;
+    }
+    
+    /**
+     * Skips the rest of the microprogram: the next execute cycle is the PC update
+     */
     private void signalMicroStateExecutionComplete(){
-        this.microState=ControlUnit.MICROSTATE_EXECUTE_COMPLETE;
+        this.microPC=Microcode.completion(this.irOpcode);
     }
     
     /**
      * execute instruction by issuing the appropriate command to the ALU, memory, and the I/O controllers
-     * Each instruction will receive the microstate at 0 and is responsible for taking action.
-     * When the instruction completes, it sets the microState to MICROSTATE_EXECUTE_COMPLETE
+     * Runs the opcode's microprogram (see Microcode) from microPC up to the 
+     * end of this clock cycle. The last cycle of every microprogram is the
+     * PC update, which ends the instruction.
      */
     private void executeInstructionRegister() throws Exception {
-        if(microState==null){
-            microState=0;
-        }
-        /* This delegates the microstate to the instruction, but does handle a special
-            microstate (999) to signal completion. */
-        if(this.microState < ControlUnit.MICROSTATE_EXECUTE_COMPLETE){
-            int opcode = this.instructionRegisterDecoded.get("opcode").getUnsignedValue();
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "--EXECUTING OPCODE: {0}, MicroState: {1}", new Object[]{opcode, microState});
-            switch(opcode){
-                case ControlUnit.OPCODE_HLT:
-                    this.executeOpcodeHLT();                    
-                    break;                    
-                case ControlUnit.OPCODE_LDR:
-                    this.executeOpcodeLDR();
+        int[] rom = Microcode.ROM;
+        while(true){
+            int word = rom[this.microPC];
+            if(Trace.ENABLED){
+                Trace.record(Trace.MICRO_OP, this.microPC, word);
+            }
+            switch(word & Microcode.OP_MASK){
+                case Microcode.MAR_EA:
+                    this.memory.setMAR(this.effectiveAddress);
                     break;
-                case ControlUnit.OPCODE_STR:
-                    this.executeOpcodeSTR();
+                case Microcode.MAR_CONST:
+                    this.memory.setMAR(Unit.valueOf(13, Microcode.operand(word)));
                     break;
-                case ControlUnit.OPCODE_LDA:
-                    this.executeOpcodeLDA();
-                    break;    
-                case ControlUnit.OPCODE_LDX:
-                    this.executeOpcodeLDX();
+                case Microcode.FETCH:
+                    this.signalMemoryFetch();
                     break;
-                case ControlUnit.OPCODE_STX:
-                    this.executeOpcodeSTX();
+                case Microcode.STORE:
+                    this.signalMemoryStore();
                     break;
-                case ControlUnit.OPCODE_INX:
-                    this.executeOpcodeINX();
+                case Microcode.WAIT:
+                    if(this.memoryPending){ // stall, try again next cycle
+                        return;
+                    }
                     break;
-                case ControlUnit.OPCODE_AMR:
-                    this.executeOpcodeAMR();
+                case Microcode.MBR_R:
+                    this.memory.setMBR(this.getGeneralPurposeRegister(this.irRfi));
                     break;
-                case ControlUnit.OPCODE_SMR:
-                    this.executeOpcodeSMR();
+                case Microcode.MBR_X:
+                    this.memory.setMBR(Word.valueOf(this.getIndexRegister(this.irRfi).getSignedValue()));
                     break;
-                case ControlUnit.OPCODE_AIR:
-                    this.executeOpcodeAIR();
+                case Microcode.MBR_PC:
+                    this.memory.setMBR(Unit.valueOf(13, this.registers.get(RegisterFile.PC) + 1));
                     break;
-                case ControlUnit.OPCODE_SIR:
-                    this.executeOpcodeSIR();
+                case Microcode.MBR_MSR:
+                    this.memory.setMBR(this.getMachineStatusRegister());
                     break;
-                case ControlUnit.OPCODE_JMP:  
-                    this.executeOpcodeJMP();
+                case Microcode.R_MBR:
+                    this.setGeneralPurposeRegister(this.irRfi, this.memory.getMBR());
                     break;
-                case ControlUnit.OPCODE_JZ:  
-                    this.executeOpcodeJZ();
+                case Microcode.X_MBR:
+                    this.setIndexRegister(this.irRfi, this.memory.getMBR().getSignedValue());
                     break;
-                case ControlUnit.OPCODE_JNE: 
-                    this.executeOpcodeJNE();
+                case Microcode.R_EA:
+                    this.registers.set(RegisterFile.gpr(this.irRfi), this.effectiveAddress.getUnsignedValue());
                     break;
-                case ControlUnit.OPCODE_JGE:  
-                    this.executeOpcodeJGE();
-                    break;                    
-                case ControlUnit.OPCODE_SOB: 
-                    this.executeOpcodeSOB();
+                case Microcode.X_INC:
+                    this.setIndexRegister(this.irRfi, this.getIndexRegister(this.irRfi).getSignedValue() + 1);
                     break;
-                case ControlUnit.OPCODE_JCC:
-                    this.executeOpcodeJCC();
+                case Microcode.R_DEC:
+                    this.registers.set(RegisterFile.gpr(this.irRfi), this.registers.get(RegisterFile.gpr(this.irRfi)) - 1);
                     break;
-                case ControlUnit.OPCODE_RFS:
-                    this.executeOpcodeRFS();
+                case Microcode.R0_IMMED:
+                    this.registers.set(RegisterFile.gpr(0), this.irAddress);
                     break;
-                case ControlUnit.OPCODE_JSR:
-                    this.executeOpcodeJSR();
+                case Microcode.R3_PC:
+                    this.registers.set(RegisterFile.gpr(3), this.registers.get(RegisterFile.PC) + 1);
                     break;
-                case ControlUnit.OPCODE_SRC:
-                    this.executeOpcodeSRC();
+                case Microcode.OP1_R:
+                    this.alu.setOperand1(this.registers.get(RegisterFile.gpr(this.irRfi)), RegisterFile.getSize(RegisterFile.gpr(this.irRfi)));
                     break;
-                case ControlUnit.OPCODE_RRC:
-                    this.executeOpcodeRRC();
-                    break;     
-                case ControlUnit.OPCODE_ORR:
-                    this.executeOpcodeORR();
+                case Microcode.OP1_RX: {
+                    int rx = this.registers.bits(RegisterFile.IR, 6, 7);
+                    this.alu.setOperand1(this.registers.get(RegisterFile.gpr(rx)), RegisterFile.getSize(RegisterFile.gpr(rx)));
                     break;
-                case ControlUnit.OPCODE_NOT:
-                    this.executeOpcodeNOT();
+                }
+                case Microcode.OP2_MBR:
+                    this.alu.setOperand2(this.memory.getMBR());
                     break;
-                 case ControlUnit.OPCODE_TRR:
-                    this.executeOpcodeTRR();
+                case Microcode.OP2_IMMED:
+                    this.alu.setOperand2(this.irAddress, 8);
                     break;
-                case ControlUnit.OPCODE_AND:
-                    this.executeOpcodeAND();
-                    break; 
-                case ControlUnit.OPCODE_MLT:
-                    this.executeOpcodeMLT();
+                case Microcode.OP2_RY: {
+                    int ry = this.registers.bits(RegisterFile.IR, 8, 9);
+                    this.alu.setOperand2(this.registers.get(RegisterFile.gpr(ry)), RegisterFile.getSize(RegisterFile.gpr(ry)));
                     break;
-                case ControlUnit.OPCODE_DVD:
-                    this.executeOpcodeDVD();
+                }
+                case Microcode.ALU_GO:
+                    this.alu.setControl(Microcode.operand(word));
+                    this.alu.signalReadyToStartComputation();
                     break;
-                case ControlUnit.OPCODE_TRAP:
-                    this.executeOpcodeTRAP();
+                case Microcode.R_RES:
+                    this.setGeneralPurposeRegisterBits(this.irRfi, this.alu.getResultBits(RegisterFile.getSize(RegisterFile.gpr(this.irRfi))));
                     break;
-                case ControlUnit.OPCODE_IN:
-                    this.executeOpcodeIN();
+                case Microcode.RX_RES: {
+                    int rx = this.registers.bits(RegisterFile.IR, 6, 7);
+                    this.setGeneralPurposeRegisterBits(rx, this.alu.getResultHigh());
+                    this.setGeneralPurposeRegisterBits(rx + 1, this.alu.getResultLow());
                     break;
-                case ControlUnit.OPCODE_OUT:
-                    this.executeOpcodeOUT();
+                }
+                case Microcode.SHIFT: {
+                    int slot = RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 8, 9));
+                    this.registers.setBits(slot, BarrelShifter.shift(this.registers.get(slot), RegisterFile.getSize(slot), 
+                            this.registers.bit(RegisterFile.IR, 11), this.registers.bits(RegisterFile.IR, 15, 19), this.registers.bit(RegisterFile.IR, 10)));
                     break;
-                case ControlUnit.OPCODE_CHK:
-                    this.executeOpcodeCHK();
+                }
+                case Microcode.ROTATE: {
+                    int slot = RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 8, 9));
+                    this.registers.setBits(slot, BarrelShifter.rotate(this.registers.get(slot), RegisterFile.getSize(slot), 
+                            this.registers.bit(RegisterFile.IR, 11), this.registers.bits(RegisterFile.IR, 15, 19)));
                     break;
-                default: // Illegal opcode. Crash!
-                    throw new MachineFaultException(MachineFaultException.ILLEGAL_OPCODE);
-            }            
-            if(!this.blocked){ // if not blocked, move ahead
-                if(opcode!=ControlUnit.OPCODE_TRAP){ // trap increments its own state
-                    this.microState++; 
                 }
-            }
-        } else { // MICROSTATE_EXECUTE_COMPLETE            
-            if(this.nextProgramCounter==null){
-                // Micro-N: c(PC) + 1 -> PC  --- Increment PC
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-Final: c(PC) + 1 -> PC (Increment PC)");
-                this.getProgramCounter().setValue(this.getProgramCounter().getUnsignedValue() + 1);                 
-            } else { 
-                // Micro-N PC <- tempPC (internal to our simulator)
-                this.getProgramCounter().setValue(this.nextProgramCounter.getUnsignedValue());
-            }
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "-- PC: {0}", this.getProgramCounter());
-            this.state = ControlUnit.STATE_NONE;     
-            this.microState = null;
-            this.signalBlockingMicroFunction();            
-
-        }        
-    }        
-      
-    /***************** OPCODE IMPLEMENTATIONS BELOW ******************/
-    
-    /**
-     * Execute Load Data Into Register
-     */
-    private void executeOpcodeLDR(){
-        switch(this.microState){            
-
-            case 0:
-                // Micro-6: MAR <- EA
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR <- EA");
-                memory.setMAR(this.effectiveAddress);  
-                memory.signalFetch();
-                this.microState++; // no break in case it was cached
-                
-            default:
-                // Micro-7: MBR <- M(MAR)
-                // Micro-8: RF(RFI) <- MBR   
-                if(!this.memory.isBusy()){                
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: MBR <- M(MAR)");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: RF(RFI) <- MBR");
-                    int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-                    this.setGeneralPurposeRegister(RFI, this.memory.getMBR());
-
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": LDR - rfi[{0}] is now: {1}", new Object[]{RFI, this.memory.getMBR()});
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-                    this.signalMicroStateExecutionComplete();
-                } else {
-                    this.signalBlockingMicroFunction();
+                case Microcode.TEST_RR:
+                    if(this.registers.get(RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 6, 7))) 
+                            == this.registers.get(RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 8, 9)))){
+                        this.setCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                    } else {
+                        this.unsetCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                    }
+                    break;
+                case Microcode.AND:
+                case Microcode.ORR:
+                case Microcode.NOT: {
+                    int slot = RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 6, 7));
+                    int other = this.registers.get(RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 8, 9)));
+                    int size = RegisterFile.getSize(slot);
+                    int op = word & Microcode.OP_MASK;
+                    this.registers.setBits(slot, (op==Microcode.AND) ? BarrelShifter.and(this.registers.get(slot), other, size) :
+                            (op==Microcode.ORR) ? BarrelShifter.or(this.registers.get(slot), other, size) : BarrelShifter.not(this.registers.get(slot), size));
+                    break;
                 }
-                
-                break;            
-            
-        }
-            
-                                
-    }
-    
-    /**
-     * Execute Store Register to Memory
-     */
-    private void executeOpcodeSTR() {
-        switch(this.microState){    
-            
-            case 0:
-              // Micro-6: MAR <- EA
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR <- EA");
-              memory.setMAR(this.effectiveAddress);         
-              
-              // Micro-7: MBR <- RF(RFI)
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: MBR <- RF(RFI)");
-              int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-           
-              memory.setMBR(this.getGeneralPurposeRegister(RFI));
-              memory.signalStore();
-              this.microState++; // no break in case it was cached
-                
-            default:
-                if(!memory.isBusy()){
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: M(MAR) <- MBR");
-                    // do nothing, done by memory in this clock cycle   
-           
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    try {
-                        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": STR - M({0}) is now {1}", new Object[]{this.effectiveAddress.getUnsignedValue(), this.memory.engineerFetchByMemoryLocation(this.effectiveAddress)});
-                    } catch (MachineFaultException ex) {
-                        Logger.getLogger(ControlUnit.class.getName()).log(Level.SEVERE, null, ex);
+                case Microcode.PC_EA:
+                    this.nextProgramCounter = Unit.valueOf(13, this.effectiveAddress.getUnsignedValue());
+                    break;
+                case Microcode.JUMP:
+                    if(this.effectiveAddress.getUnsignedValue()==64){
+                        try {
+                            this.bp.scanMemory();  // This designates the ROM loaded the program to memory. Setup branch prediction table
+                        } catch (MachineFaultException ex) {
+                            Logger.getLogger(ControlUnit.class.getName()).log(Level.SEVERE, null, ex);
+                        }
                     }
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-                    this.signalMicroStateExecutionComplete();
-                } else {
-                    this.signalBlockingMicroFunction();
+                    this.nextProgramCounter = Unit.valueOf(13, this.effectiveAddress.getUnsignedValue());
+                    break;
+                case Microcode.PC_R3:
+                    this.nextProgramCounter = Unit.valueOf(13, this.registers.get(RegisterFile.gpr(3)));
+                    break;
+                case Microcode.BRANCH: {
+                    // ends the execute phase: the outcome stands even if the predictor faults
+                    this.microPC++;
+                    int pc = this.registers.get(RegisterFile.PC);
+                    if(this.isBranchTaken(Microcode.operand(word))){
+                        this.nextProgramCounter = Unit.valueOf(13, this.effectiveAddress.getUnsignedValue());
+                        this.bp.branchTaken(pc);
+                    } else {
+                        this.bp.branchNotTaken(pc);
+                    }
+                    return;
                 }
-            break;
-        }
-    }
-    
-    /**
-     * Execute Load Register with Address
-     * Load Register with Address, r = 0..3
-     * r <− EA or r <− c(EA), if I bit set
-     */
-    private void executeOpcodeLDA() {
-       
-                // Micro-6: RF(RFI) <- EA
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: RF(RFI) <- EA");
-                int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-                this.setGeneralPurposeRegister(RFI, new Word(this.effectiveAddress.getUnsignedValue()));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": LDA - rfi[{0}] is now: {1}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI)});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                this.signalMicroStateExecutionComplete();             
-
-    }
-    
-    /**
-     * Execute Load Index Register from Memory
-     * LDX x, X’ address[,I]
-     * Load Index Register from Memory, X’ = 1..3 
-     * X(X') <- c(EA)
-     */
-    private void executeOpcodeLDX() {
-        switch(this.microState){            
-            case 0:
-              // Micro-6: MAR <- EA
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR<-EA");
-              memory.setMAR(this.effectiveAddress);
-              memory.signalFetch();  
-              this.microState++; // no break in case it was cached
-                
-            default:
-                if(!memory.isBusy()){
-                    // Micro-7: MBR <- M(MAR)
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: MBR <- M(MAR)");
-                    // Micro 8: c(XFI) <- MBR                                  
-                    int XFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-                    this.setIndexRegister(XFI, new Unit(13,this.memory.getMBR().getSignedValue()));
-
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": LDX - X({0}) is now {1}", new Object[]{XFI, this.getIndexRegister(XFI)});
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-                    this.signalMicroStateExecutionComplete();
-                } else {
-                    this.signalBlockingMicroFunction();
+                case Microcode.TRAP_CHECK:
+                    if(this.registers.bits(RegisterFile.IR, 12, 19) >= 16){   // TRAP codes range from 0 - 15.
+                        throw new MachineFaultException(MachineFaultException.ILLEGAL_TRAP_CODE);
+                    }
+                    break;
+                case Microcode.PC_TRAP:
+                    this.nextProgramCounter = Unit.valueOf(13, this.memory.getMBR().getUnsignedValue() + this.registers.bits(RegisterFile.IR, 12, 19));
+                    break;
+                case Microcode.HALT:
+                    this.microPC++; // resumes with the PC update
+                    throw new HaltSystemException();
+                case Microcode.ILLEGAL:
+                    throw new MachineFaultException(MachineFaultException.ILLEGAL_OPCODE);
+                case Microcode.IN: {
+                    Word received = this.ioController.input(this.registers.bits(RegisterFile.IR, 16, 19));
+                    this.setGeneralPurposeRegister(this.registers.bits(RegisterFile.IR, 8, 9), (received==null) ? Word.valueOf(0) : received);
+                    break;
                 }
-            break;
+                case Microcode.OUT:
+                    this.ioController.output(this.registers.bits(RegisterFile.IR, 16, 19), 
+                            this.getGeneralPurposeRegister(this.registers.bits(RegisterFile.IR, 8, 9)));
+                    break;
+                case Microcode.CHK:
+                    this.registers.set(RegisterFile.gpr(this.registers.bits(RegisterFile.IR, 8, 9)), 
+                            this.ioController.checkStatus(this.registers.bits(RegisterFile.IR, 16, 19)));
+                    break;
+                case Microcode.NOP:
+                    break;
+                case Microcode.COMPLETE:
+                    if(Trace.ENABLED){
+                        Trace.record(Trace.INSTRUCTION, this.registers.get(RegisterFile.PC), this.registers.get(RegisterFile.IR), 
+                                (this.nextProgramCounter==null) ? -1 : this.nextProgramCounter.getUnsignedValue());
+                    }
+                    if(this.nextProgramCounter==null){
+                        // Micro-N: c(PC) + 1 -> PC  --- Increment PC
+                        this.registers.set(RegisterFile.PC, this.registers.get(RegisterFile.PC) + 1);
+                    } else {
+                        // Micro-N PC <- tempPC (internal to our simulator)
+                        this.registers.set(RegisterFile.PC, this.nextProgramCounter.getUnsignedValue());
+                    }
+                    this.state = ControlUnit.STATE_NONE;
+                    this.microState = null;
+                    return;
+                default:
+                    throw new IllegalStateException("Bad micro-op " + word + " at " + this.microPC);
+            }
+            this.microPC++;
+            if((word & Microcode.END)!=0){
+                return;
+            }
         }
     }
     
     /**
-     * Execute Store Index Register to Memory
-     * STX x, X’, address[,I]
-     * X’ = 1..3,  EA <- c(X’), C(EA) <- c(X’), if I-bit set
+     * @param condition Microcode BRANCH condition
+     * @return true if the branch is taken
      */
-    private void executeOpcodeSTX() {
-        switch(this.microState){
-            case 0:
-              // Micro-6: MAR <- EA
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR <- EA");
-              memory.setMAR(this.effectiveAddress);              
-            break;
-                
-            case 1:
-              // Micro 7: MBR <- c(XFI)
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro 7: MBR <- c(XFI)");
-              int XFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-            
-              memory.setMBR(new Word(this.getIndexRegister(XFI).getSignedValue()));
-              memory.signalStore(); 
-              this.microState++; // no break in case it was cached
-                
-            default:
-              if(!memory.isBusy()){
-                    // Micro 8: M(MAR) <- MBR
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro 8: M(MAR) <- MBR");
-                    // do nothing, done by memory
-
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    try {
-                        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": STX - M({0}): {1}", new Object[]{this.effectiveAddress.getUnsignedValue(), this.memory.engineerFetchByMemoryLocation(this.effectiveAddress)});
-                    } catch (MachineFaultException ex) {
-                        Logger.getLogger(ControlUnit.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-                    this.signalMicroStateExecutionComplete();
-              } else {
-                  this.signalBlockingMicroFunction();
-              }
-            break;
+    private boolean isBranchTaken(int condition){
+        int slot = RegisterFile.gpr(this.irRfi);
+        switch(condition){
+            case Microcode.IF_ZERO:
+                return this.registers.get(slot)==0;
+            case Microcode.IF_NOT_ZERO:
+                return this.registers.get(slot)!=0;
+            case Microcode.IF_NOT_NEGATIVE:
+                return this.registers.getSigned(slot)>=0;
+            case Microcode.IF_POSITIVE:
+                return this.registers.get(slot)>0;
+            default: // IF_CONDITION_CODE, CC replaces RFI
+                return this.getConditionCode(this.irRfi)==1;
         }
     }
     
-    /**
-     * Increment Index Register 
-     */
-    private void executeOpcodeINX() {
-        // Micro 6: c(XFI) = c(XFI) + 1
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro 6: c(XFI) = c(XFI) + 1");
-        int XFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-
-        this.setIndexRegister(XFI, new Unit(13,this.getIndexRegister(XFI).getSignedValue() + 1));
-
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": INX - X({0}) is now: {1}", new Object[]{XFI, this.getIndexRegister(XFI).getSignedValue()});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-
-        this.signalMicroStateExecutionComplete();
-    }    
+    /***************** FUNCTIONAL EXECUTION (Computer.RUNMODE_FAST) ******************/
     
     /**
-     * Execute Add Memory to Register
+     * True between instructions, when a whole instruction can be executed
+     * functionally (not in the middle of micro-steps or a fault handler).
+     * @return true/false
      */
-    private void executeOpcodeAMR() {
-        switch(this.microState){
-            
-            case 0:
-              // Micro-6: MAR <- EA
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR <- EA");
-              memory.setMAR(this.effectiveAddress);
-              memory.signalFetch();  
-              this.microState++; // no break in case it was cached
-                
-            case 1:              
-                if(!memory.isBusy()){
-                    // Micro-7: MBR <- M(MAR)
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: MBR <- M(MAR)");
-                    // Micro-8: OP1 <- MBR
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: OP2 <- MBR");
-                    alu.setOperand2(this.memory.getMBR());  // This might be possible to run in cycle 1                    
-                } else {
-                    this.signalBlockingMicroFunction();
-                }                
-            break;
-                
-            case 2:
-              // Micro-9: OP1 <- RF(RFI)
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: OP2 <- RF(RFI)");
-              int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-              alu.setOperand1(this.getGeneralPurposeRegister(RFI));
-            break;
-                
-            case 3:
-              // Micro-10: CTRL <- OPCODE
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10: CTRL <- OPCODE");  
-              alu.setControl(ArithmeticLogicUnit.CONTROL_ADD);
-              alu.signalReadyToStartComputation();
-            break;
-                
-            case 4:
-              // Micro-11: RES <- c(OP1) + c(OP2)
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-11: RES <- c(OP1) + c(OP2)");
-              // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 5:
-              // Micro-12: RF(RFI) <- RES
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-12: RF(RFI) <- RES");
-              RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue(); 
-              this.setGeneralPurposeRegister(RFI, new Word(alu.getResult()));
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": AMR - RF({0}): {1}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI)});
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                
-              this.signalMicroStateExecutionComplete();
-            break;          
-        }
+    public boolean isAtInstructionBoundary(){
+        return this.state==ControlUnit.STATE_NONE || 
+               (this.state==ControlUnit.STATE_FETCH_INSTRUCTION && this.microState==null);
     }
     
     /**
-     * Execute Subtract Memory from Register
+     * Functional execution: fetch, decode, EA and execute of one instruction 
+     * in a single call. Memory is read/written directly and the ALU is run 
+     * synchronously, so no micro-step polling is needed. Architectural results
+     * (registers, CC, memory, MAR/MBR, branch history) are the same as the 
+     * micro-stepped path; the per micro-step log output is not produced.
+     * Must only be called at an instruction boundary.
+     * @return estimated number of clock cycles the micro-stepped path takes
+     * @throws Exception 
      */
-    private void executeOpcodeSMR() {
-        switch(this.microState){
-            
-            case 0:
-              // Micro-6: MAR <- EA
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: MAR <- EA");
-              memory.setMAR(this.effectiveAddress);
-              memory.signalFetch();
-              this.microState++; // no break in case it was cached
-                
-            case 1:
-                if(!memory.isBusy()){
-                    // Micro-7: MBR <- M(MAR)
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: MBR <- M(MAR)");
-                    // Micro-8: OP1 <- MBR
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: OP2 <- MBR");
-                    alu.setOperand2(this.memory.getMBR());                  
-                } else {
-                    this.signalBlockingMicroFunction();
-                } 
-                break;
-            case 2:                                     
-            
-              // Micro-9: OP2 <- RF(RFI)
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: OP1 <- RF(RFI)");
-              int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-              alu.setOperand1(this.getGeneralPurposeRegister(RFI));
-            break;
-                
-            case 3:
-              // Micro-10: CTRL <- OPCODE
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10: CTRL <- OPCODE");  
-              alu.setControl(ArithmeticLogicUnit.CONTROL_SUBTRACT);
-              alu.signalReadyToStartComputation();
-            break;
-                
-            case 4:
-              // Micro-11: RES <- c(OP1) - c(OP2)
-              // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 5:
-              // Micro-12: RF(RFI) <- RES
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-12: RF(RFI) <- RES");
-              RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-              
-              this.setGeneralPurposeRegister(RFI, new Word(alu.getResult()));
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": SMR - RF({0}): {1}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI)});
-              Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-                
-              this.signalMicroStateExecutionComplete();
-            break;          
+    public int executeInstruction() throws Exception {
+        // Fetch: MAR <- PC, MBR <- M(MAR), IR <- MBR
+        this.state = ControlUnit.STATE_FETCH_INSTRUCTION;
+        this.microState = null;
+        this.nextProgramCounter = null;
+        int pc = this.registers.get(RegisterFile.PC);
+        this.setIR(this.memory.fetchImmediately(Unit.valueOf(13, pc)));
+        this.irFetchedFrom = pc;
+        this.instructionCount++;
+        
+        // Decode
+        this.state = ControlUnit.STATE_DECODE_INSTRUCTION;
+        int decoded = this.predecodeInstructionRegister();
+        this.irOpcode  = PredecodeCache.opcode(decoded);
+        this.irXfi     = PredecodeCache.xfi(decoded);
+        this.irRfi     = PredecodeCache.rfi(decoded);
+        this.irAddress = PredecodeCache.address(decoded);
+        
+        int eaMode = PredecodeCache.eaMode(decoded);
+        this.effectiveAddress = null;
+        
+        // EA + Execute, specialized per opcode and EA mode
+        this.state = ControlUnit.STATE_EXECUTE_INSTRUCTION;
+        this.microState = 0;
+        this.microPC = Microcode.entry(this.irOpcode);
+        this.functionalHandlers[(this.irOpcode << 3) | eaMode].execute();
+        
+        // Micro-N: PC <- c(PC) + 1 or PC <- tempPC
+        if(this.nextProgramCounter==null){
+            this.registers.set(RegisterFile.PC, pc + 1);
+        } else {
+            this.registers.set(RegisterFile.PC, this.nextProgramCounter.getUnsignedValue());
         }
+        this.state = ControlUnit.STATE_NONE;
+        this.microState = null;
+        
+        return ControlUnit.estimateCycles(this.irOpcode, eaMode);
     }
     
     /**
-     * Execute Add Immediate to Register
+     * OP1 <- RF(RFI), RES <- OP1 (control) OP2, RF(RFI) <- RES
+     * OP2 must already be latched.
      */
-    private void executeOpcodeAIR() {
-        switch(this.microState){
-            case 0:
-                // Micro-6: OP1 <- RF(RFI)                
-                int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();                
-                alu.setOperand1(this.getGeneralPurposeRegister(RFI));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: OP1 <- RF(RFI) - {0}", alu.getOperand1());
-            break;
-                        
-            case 1:
-                // Micro-7: OP2 <- Immed   (Immed is stored in ADDR)                
-                alu.setOperand2(this.instructionRegisterDecoded.get("address"));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: OP2 <- Immed - {0}", alu.getOperand2());
-            break;
-                
-            case 2:
-                // Micro-8: CTRL <- OPCODE
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: CTRL <- OPCODE");  
-                alu.setControl(ArithmeticLogicUnit.CONTROL_ADD);
-                alu.signalReadyToStartComputation();
-            break;
-                
-            case 3:
-                // Micro-9: RES <- c(OP1) + c(OP2)
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: RES <- c(OP1) + c(OP2)");
-                // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 4:
-                // Micro-10: RF(RFI) <- RES
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10: RF(RFI) <- RES - {0}", alu.getResult());
-                RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-               
-                this.setGeneralPurposeRegister(RFI, new Word(alu.getResult()));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": AIR - RF({0}): {1}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI)});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-                
-                this.signalMicroStateExecutionComplete();
-            break;          
-        }
+    private void executeFunctionalALU(int RFI, int control) throws Exception {
+        alu.setOperand1(this.registers.get(RegisterFile.gpr(RFI)), RegisterFile.getSize(RegisterFile.gpr(RFI)));
+        alu.setControl(control);
+        alu.signalReadyToStartComputation();
+        alu.clockCycle();
+        this.setGeneralPurposeRegisterBits(RFI, alu.getResultBits(RegisterFile.getSize(RegisterFile.gpr(RFI))));
     }
     
     /**
-     * Execute Subtract Immediate from Register
+     * Conditional jump to EA, recorded by the branch predictor
      */
-    private void executeOpcodeSIR() {
-        switch(this.microState){
-            case 0:
-                // Micro-6: OP1 <- RF(RFI)                
-                int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-                alu.setOperand1(this.getGeneralPurposeRegister(RFI));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: OP1 <- RF(RFI) - {0}", alu.getOperand1());
-            break;
-                        
-            case 1:
-                // Micro-7: OP2 <- Immed  (Immed is stored in ADDR)                
-                alu.setOperand2(this.instructionRegisterDecoded.get("address"));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: OP2 <- Immed - {0}", alu.getOperand2());
-            break;
-                
-            case 2:
-                // Micro-8: CTRL <- OPCODE
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: CTRL <- OPCODE");  
-                alu.setControl(ArithmeticLogicUnit.CONTROL_SUBTRACT);
-                alu.signalReadyToStartComputation();
-            break;
-                
-            case 3:
-                // Micro-9: RES <- c(OP1) - c(OP2)
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: RES <- c(OP1) - c(OP2)");
-                // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 4:
-                // Micro-10: RF(RFI) <- RES
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10: RF(RFI) <- RES - {0}", alu.getResult());
-                RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-               
-                this.setGeneralPurposeRegister(RFI, new Word(alu.getResult()));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": SIR - RF({0}): {1}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI)});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-                
-                this.signalMicroStateExecutionComplete();
-            break;          
+    private void executeFunctionalBranch(boolean taken){
+        if(taken){
+            this.nextProgramCounter = this.effectiveAddress;
+            bp.branchTaken(this.registers.get(RegisterFile.PC));
+        } else {
+            bp.branchNotTaken(this.registers.get(RegisterFile.PC));
         }
-        
     }
-
+    
     /**
-     * Execute Unconditional Jump to Address
-     * PC <- EA, if I bit not set; PC <− c(EA), if I bit set
-     * Note: r is ignored in this instruction
-     * Test pased by Fan based on 001101 00 01 1 0 01111011
-     * 
+     * Unconditional jump to EA. A jump to 64 means the ROM finished loading
+     * the program, so the branch prediction table is set up.
      */
-    private void executeOpcodeJMP(){
-        
+    private void executeFunctionalJump(){
         if(this.effectiveAddress.getUnsignedValue()==64){
             try {
-                this.bp.scanMemory();  // This designates the ROM loaded the program to memory. Setup branch prediction table
+                this.bp.scanMemory();
             } catch (MachineFaultException ex) {
                 Logger.getLogger(ControlUnit.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        
-        this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: PC <- EA - {0}", this.nextProgramCounter);
-            this.signalMicroStateExecutionComplete();
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JMP - IND={0}: {1}", new Object[]{this.instructionRegisterDecoded.get("index").getUnsignedValue(), this.nextProgramCounter});
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-     
+        this.nextProgramCounter = this.effectiveAddress;
     }
     
     /**
-     * Jump If Zero:
-     *  If c(r) = 0, then PC <− EA or c(EA), if I bit set;
-     *  Else PC <- PC+1
-     * Test pased by Fan based on 001010  00  01  1  0  01111011(given by professor)
+     * rx, rx+1 <- c(rx) (control) c(ry)
      */
-    private void  executeOpcodeJZ(){        
-        int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-        if(this.getGeneralPurposeRegister(RFI).getUnsignedValue()==0)
-        { // c(r)==0, jump
-         this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: PC <- EA - {0}", this.nextProgramCounter);              
-         this.signalMicroStateExecutionComplete();         
-         
-         bp.branchTaken(this.getProgramCounter().getUnsignedValue());
-         
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JZ - R({0}) was Zero -- JUMPING: {1}", new Object[]{RFI, this.nextProgramCounter});
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!"); 
-           
-        }
-        else
-        {
-             // not zero->PC++
-            this.signalMicroStateExecutionComplete();            
-            
-            bp.branchNotTaken(this.getProgramCounter().getUnsignedValue());
-            
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JZ - R({0}) was NOT Zero -- Continuing.", RFI);
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-            
-        }
+    private void executeFunctionalMultiplyDivide(int control) throws Exception {
+        int rx = this.irXfi;
+        int ry = this.irRfi;
+        alu.setOperand1(this.registers.get(RegisterFile.gpr(rx)), RegisterFile.getSize(RegisterFile.gpr(rx)));
+        alu.setOperand2(this.registers.get(RegisterFile.gpr(ry)), RegisterFile.getSize(RegisterFile.gpr(ry)));
+        alu.setControl(control);
+        alu.signalReadyToStartComputation();
+        alu.clockCycle();
+        this.setGeneralPurposeRegisterBits(rx, alu.getResultHigh());
+        this.setGeneralPurposeRegisterBits(rx+1, alu.getResultLow());
     }
-        
-
-  
     
     /**
-     * Jump If Not Equal (to Zero) -- really JNZ.
-     * If c(r) != 0, then PC <−- EA or c(EA) , if I bit set;
-     * Else PC <- PC + 1
-     * Test pased by Fan based on 001011 00 01 1 0 01111011(R(0)==0 AND R(0)=1)
+     * Number of clock cycles an instruction takes when micro-stepped:
+     * 1 (start) + 2 (fetch) + decode/EA + the opcode's microprogram, PC
+     * update included (Microcode.cycles()).
+     * Cache misses, faults and HLT resumption are not included.
+     * @param opcode
+     * @param eaMode PredecodeCache EA mode
+     * @return estimated clock cycles
      */
-    private void executeOpcodeJNE(){
-            int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-        if(this.getGeneralPurposeRegister(RFI).getUnsignedValue()!=0)
-        { // c(r)!=0, jump
-         this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: PC <- EA - {0}", this.nextProgramCounter);              
-         this.signalMicroStateExecutionComplete();        
-                  
-         bp.branchTaken(this.getProgramCounter().getUnsignedValue());
-         
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JNE - R({0}) was NOT Zero -- JUMPING: {1}", new Object[]{RFI, this.nextProgramCounter});
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!"); 
-           
-        }
-        else
-        {
-             // not zero->PC++
-            this.signalMicroStateExecutionComplete();            
-           
-            bp.branchNotTaken(this.getProgramCounter().getUnsignedValue());
-            
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JNE - R({0}) was  Zero -- Continuing.", RFI);
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-            
+    public static int estimateCycles(int opcode, int eaMode){
+        int cycles = 1 + 2 + 1;
+        switch(eaMode){
+            case PredecodeCache.EA_DIRECT:
+            case PredecodeCache.EA_REGISTER_INDIRECT:
+                cycles += 1;
+                break;
+            case PredecodeCache.EA_INDEXED:
+            case PredecodeCache.EA_INDEXED_OFFSET:
+                cycles += 2;
+                break;
         }
+        return cycles + Microcode.cycles(opcode);
     }
-    
+      
+    /***************** DISPATCH TABLES ******************/
     
     /**
-     * Subtract One And Branch. SOB allows you to support simple loops. 
-     * R = 0..3
-     * r <− c(r) – 1
-     * If c(r) > 0,  PC <- EA; but PC <− c(EA), if I bit set;
-     * Else PC <- PC + 1
-     * Test pased by Fan based on 010000 00 01 1 0 01111011 (R0=1 or r0=2)
+     * Handler for opcodes that are not part of the instruction set
      */
-     private void executeOpcodeSOB(){        
-        int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-        
-        switch(this.microState){
-            case 0: // case 0, we decrement c(r)
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6:RF({0})=c({1})-1", new Object[]{RFI, RFI});  
-                Word rCurrent = this.getGeneralPurposeRegister(RFI);
-                Word rNew = new Word(rCurrent.getUnsignedValue()-1);
-                this.setGeneralPurposeRegister(RFI, rNew);
-                break;
-            case 2:
-                if(this.getGeneralPurposeRegister(RFI).getUnsignedValue()>0){ // c(r)>0, jump back
-                    
-                    bp.branchTaken(this.getProgramCounter().getUnsignedValue());
-                    
-                    this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: PC <- EA - {0}", this.nextProgramCounter);                                  
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": SOB - R({0}) was {1}, GREATER than Zero after minus 1 -- JUMPING: {2}", new Object[]{RFI, this.getGeneralPurposeRegister(RFI).getUnsignedValue(), this.nextProgramCounter});
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!"); 
-                    this.signalMicroStateExecutionComplete();
-                } else {
-                    // equal to zero->PC++                    
-                    
-                    bp.branchNotTaken(this.getProgramCounter().getUnsignedValue());
-                    
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": SOB - R({0}) was {1}, NOT GREATER than Zero after minus 1  -- Continuing.", new Object[]{RFI, this.getGeneralPurposeRegister(RFI).getUnsignedValue()});
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");              
-                    this.signalMicroStateExecutionComplete();
-                }
-                
+    private final IInstructionHandler illegalOpcode = new IInstructionHandler() {
+        @Override
+        public void execute() throws Exception {
+            throw new MachineFaultException(MachineFaultException.ILLEGAL_OPCODE);
         }
-     }
-   
-    /**
-     * 
-     * Jump Greater Than or Equal To:
-     * If c(r) >= 0, then PC <- EA or c(EA) , if I bit set;
-     * Else PC <- PC + 1
-     * Test pased by Fan based on 010001 00 01 1 0 01111011
-    */
-   private void executeOpcodeJGE()
-   {
-        int RFI = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();
-        if(this.getGeneralPurposeRegister(RFI).getSignedValue()>=0)
-        { // c(r)>=0, jump
-         this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: PC <- EA - {0}", this.nextProgramCounter);              
-         this.signalMicroStateExecutionComplete();
-         
-         bp.branchTaken(this.getProgramCounter().getUnsignedValue());
-         
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JGE - R({0}) was NOT LESS than Zero -- JUMPING: {1}", new Object[]{RFI, this.nextProgramCounter});
-         Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!"); 
-           
-        }
-        else
-        {
-             // not zero->PC++
-            this.signalMicroStateExecutionComplete();
-            
-            bp.branchNotTaken(this.getProgramCounter().getUnsignedValue());
-                        
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JGE - R({0}) was LESS Zero -- Continuing.", RFI);
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-            
-        }
-    } 
-   
+    };
     
     /**
-     * 
-     * Jump If Condition Code:
-     * If CC = 1, then PC <- EA or c(EA) , if I bit set;
-     * Else PC <- PC + 1
-    */
-  private void executeOpcodeJCC(){
-        int CC = this.instructionRegisterDecoded.get("rfi").getUnsignedValue();         //CC replaces RFI for the JCC instruction.
-        if(this.getConditionCode(CC)==1){
-            this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: PC <- EA - {0}", this.nextProgramCounter);              
-            this.signalMicroStateExecutionComplete();
-            
-            bp.branchTaken(this.getProgramCounter().getUnsignedValue());
-            
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JCC({0}) - Jumping: {1}", new Object[]{CC, this.nextProgramCounter});
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");              
-        } else { // not zero->PC++             CC != 1
-            this.signalMicroStateExecutionComplete();
-            
-            bp.branchNotTaken(this.getProgramCounter().getUnsignedValue());
-            
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JCC({0}) - Not Jumping. Value was: {1}", new Object[]{CC, this.getConditionCode(CC)});
-            Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
+     * Functional handlers. Every opcode that uses an effective address gets
+     * one handler per EA mode (EA computed, then the operation), the others a
+     * single EA_NONE entry. Direct mode LDR/STR/JMP, the bulk of most
+     * programs, are written out in full so they run without a mode step.
+     */
+    private void buildFunctionalHandlers(){
+        IInstructionHandler[] operations = new IInstructionHandler[ControlUnit.OPCODE_COUNT];
+        for(int i=0;i<operations.length;i++){
+            operations[i] = this.illegalOpcode;
         }
-            
-    }
- 
-    /**
-     * 
-     * Return From Subroutine w/ return code as Immediate portion (optional) 
-     * stored in R0’s address field. 
-     * R0 <− Immed; PC <− c(R3)
-     * IX, I fields are ignored.
-     * 
-    */    
-    private void executeOpcodeRFS(){
-      switch(this.microState){
-            case 0:
-                // R0 <- Immed (Immed is stored in ADDR)        
-                this.setGeneralPurposeRegister(0, new Word(this.instructionRegisterDecoded.get("address").getUnsignedValue()));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: R0 <- Immediate");
-            break;
-                
-            case 1:
-                // PC <- c(R3)
-                this.nextProgramCounter = new Unit(13, this.getGeneralPurposeRegister(3).getUnsignedValue());
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: PC <- c(R3)");
-            
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": RFS - Ret: {0} - Jump: {1}", new Object[]{this.getGeneralPurposeRegister(0), this.nextProgramCounter});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-                
-                this.signalMicroStateExecutionComplete();
-            break;          
+        
+        operations[ControlUnit.OPCODE_HLT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                signalMicroStateExecutionComplete(); // PC moves on when resumed
+                throw new HaltSystemException();
+            }
+        };
+        operations[ControlUnit.OPCODE_LDR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                setGeneralPurposeRegister(irRfi, memory.fetchImmediately(effectiveAddress));
+            }
+        };
+        operations[ControlUnit.OPCODE_STR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                memory.storeImmediately(effectiveAddress, getGeneralPurposeRegister(irRfi));
+            }
+        };
+        operations[ControlUnit.OPCODE_LDA] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                registers.set(RegisterFile.gpr(irRfi), effectiveAddress.getUnsignedValue());
+            }
+        };
+        operations[ControlUnit.OPCODE_LDX] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                setIndexRegister(irRfi, memory.fetchImmediately(effectiveAddress).getSignedValue());
+            }
+        };
+        operations[ControlUnit.OPCODE_STX] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                memory.setMAR(effectiveAddress);
+                memory.storeImmediately(effectiveAddress, Word.valueOf(getIndexRegister(irRfi).getSignedValue()));
+            }
+        };
+        operations[ControlUnit.OPCODE_INX] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                setIndexRegister(irRfi, getIndexRegister(irRfi).getSignedValue() + 1);
+            }
+        };
+        operations[ControlUnit.OPCODE_AMR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                alu.setOperand2(memory.fetchImmediately(effectiveAddress));
+                executeFunctionalALU(irRfi, ArithmeticLogicUnit.CONTROL_ADD);
+            }
+        };
+        operations[ControlUnit.OPCODE_SMR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                alu.setOperand2(memory.fetchImmediately(effectiveAddress));
+                executeFunctionalALU(irRfi, ArithmeticLogicUnit.CONTROL_SUBTRACT);
+            }
+        };
+        operations[ControlUnit.OPCODE_AIR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                alu.setOperand2(irAddress, 8);
+                executeFunctionalALU(irRfi, ArithmeticLogicUnit.CONTROL_ADD);
+            }
+        };
+        operations[ControlUnit.OPCODE_SIR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                alu.setOperand2(irAddress, 8);
+                executeFunctionalALU(irRfi, ArithmeticLogicUnit.CONTROL_SUBTRACT);
+            }
+        };
+        operations[ControlUnit.OPCODE_JMP] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalJump();
+            }
+        };
+        operations[ControlUnit.OPCODE_JZ] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalBranch(registers.get(RegisterFile.gpr(irRfi))==0);
+            }
+        };
+        operations[ControlUnit.OPCODE_JNE] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalBranch(registers.get(RegisterFile.gpr(irRfi))!=0);
+            }
+        };
+        operations[ControlUnit.OPCODE_JGE] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalBranch(registers.getSigned(RegisterFile.gpr(irRfi))>=0);
+            }
+        };
+        operations[ControlUnit.OPCODE_JCC] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalBranch(getConditionCode(irRfi)==1);
+            }
+        };
+        operations[ControlUnit.OPCODE_SOB] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int r = RegisterFile.gpr(irRfi);
+                registers.set(r, registers.get(r)-1);
+                executeFunctionalBranch(registers.get(r)>0);
+            }
+        };
+        operations[ControlUnit.OPCODE_RFS] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                registers.set(RegisterFile.gpr(0), irAddress);
+                nextProgramCounter = Unit.valueOf(13, registers.get(RegisterFile.gpr(3)));
+            }
+        };
+        operations[ControlUnit.OPCODE_JSR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                registers.set(RegisterFile.gpr(3), registers.get(RegisterFile.PC)+1);
+                nextProgramCounter = effectiveAddress;
+            }
+        };
+        operations[ControlUnit.OPCODE_SRC] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int r = RegisterFile.gpr(irRfi);
+                registers.setBits(r, BarrelShifter.shift(registers.get(r), RegisterFile.getSize(r), 
+                        registers.bit(RegisterFile.IR, 11), registers.bits(RegisterFile.IR, 15, 19), registers.bit(RegisterFile.IR, 10)));
+            }
+        };
+        operations[ControlUnit.OPCODE_RRC] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int r = RegisterFile.gpr(irRfi);
+                registers.setBits(r, BarrelShifter.rotate(registers.get(r), RegisterFile.getSize(r), 
+                        registers.bit(RegisterFile.IR, 11), registers.bits(RegisterFile.IR, 15, 19)));
+            }
+        };
+        operations[ControlUnit.OPCODE_TRR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                if(registers.get(RegisterFile.gpr(irXfi)) == registers.get(RegisterFile.gpr(irRfi))){
+                    setCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                } else {
+                    unsetCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                }
+            }
+        };
+        operations[ControlUnit.OPCODE_AND] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int rx = RegisterFile.gpr(irXfi);
+                registers.setBits(rx, BarrelShifter.and(registers.get(rx), registers.get(RegisterFile.gpr(irRfi)), RegisterFile.getSize(rx)));
+            }
+        };
+        operations[ControlUnit.OPCODE_ORR] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int rx = RegisterFile.gpr(irXfi);
+                registers.setBits(rx, BarrelShifter.or(registers.get(rx), registers.get(RegisterFile.gpr(irRfi)), RegisterFile.getSize(rx)));
+            }
+        };
+        operations[ControlUnit.OPCODE_NOT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int rx = RegisterFile.gpr(irXfi);
+                registers.setBits(rx, BarrelShifter.not(registers.get(rx), RegisterFile.getSize(rx)));
+            }
+        };
+        operations[ControlUnit.OPCODE_MLT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalMultiplyDivide(ArithmeticLogicUnit.CONTROL_MULTIPLY);
+            }
+        };
+        operations[ControlUnit.OPCODE_DVD] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                executeFunctionalMultiplyDivide(ArithmeticLogicUnit.CONTROL_DIVIDE);
+            }
+        };
+        operations[ControlUnit.OPCODE_TRAP] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                int trapCode = irAddress;
+                if (trapCode >= 16){   // TRAP codes range from 0 - 15.
+                    throw new MachineFaultException(MachineFaultException.ILLEGAL_TRAP_CODE);
+                }
+                memory.storeImmediately(Unit.valueOf(13, 2), Word.valueOf(Unit.valueOf(13, registers.get(RegisterFile.PC)+1)));
+                memory.storeImmediately(Unit.valueOf(13, 3), getMachineStatusRegister());
+                int newLoc = memory.fetchImmediately(Unit.valueOf(13, 0)).getUnsignedValue() + trapCode;
+                nextProgramCounter = Unit.valueOf(13, newLoc);
+            }
+        };
+        operations[ControlUnit.OPCODE_IN] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                Word received = ioController.input(registers.bits(RegisterFile.IR, 16, 19));
+                if(received==null){
+                    received = Word.valueOf(0);
+                }
+                setGeneralPurposeRegister(irRfi, received);
+            }
+        };
+        operations[ControlUnit.OPCODE_OUT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                ioController.output(registers.bits(RegisterFile.IR, 16, 19), getGeneralPurposeRegister(irRfi));
+            }
+        };
+        operations[ControlUnit.OPCODE_CHK] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                registers.set(RegisterFile.gpr(irRfi), ioController.checkStatus(registers.bits(RegisterFile.IR, 16, 19)));
+            }
+        };
+        
+        // bind EA modes
+        for(int opcode=0;opcode<ControlUnit.OPCODE_COUNT;opcode++){
+            if(PredecodeCache.needsEffectiveAddress(opcode)){
+                for(int eaMode=PredecodeCache.EA_DIRECT;eaMode<=PredecodeCache.EA_INDEXED_OFFSET;eaMode++){
+                    this.functionalHandlers[(opcode << 3) | eaMode] = this.bindEffectiveAddress(eaMode, operations[opcode]);
+                }
+            } else {
+                this.functionalHandlers[(opcode << 3) | PredecodeCache.EA_NONE] = operations[opcode];
+            }
         }
-                
+        
+        // direct mode fast paths: EA <- ADDR
+        this.functionalHandlers[(ControlUnit.OPCODE_LDR << 3) | PredecodeCache.EA_DIRECT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                effectiveAddress = Unit.valueOf(13, irAddress);
+                setGeneralPurposeRegister(irRfi, memory.fetchImmediately(effectiveAddress));
+            }
+        };
+        this.functionalHandlers[(ControlUnit.OPCODE_STR << 3) | PredecodeCache.EA_DIRECT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                effectiveAddress = Unit.valueOf(13, irAddress);
+                memory.storeImmediately(effectiveAddress, getGeneralPurposeRegister(irRfi));
+            }
+        };
+        this.functionalHandlers[(ControlUnit.OPCODE_JMP << 3) | PredecodeCache.EA_DIRECT] = new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                effectiveAddress = Unit.valueOf(13, irAddress);
+                executeFunctionalJump();
+            }
+        };
     }
     
     /**
-     * 
-     * Jump and Save Return Address:
-     * R3 <- PC + 1, PC <- EA or c(EA) , if I bit set;
-     * R0 should contain pointer to arguments. Argument list should end with -17777 value.
-    */
-    private void executeOpcodeJSR(){
-        switch(this.microState){
-            case 0:
-                //RF(RFI1) <- PC + 1
-                this.setGeneralPurposeRegister(3, new Word(this.getProgramCounter().getUnsignedValue()+1));
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: RF(I) <- PC + 1");
-            break;
-                
-            case 1:
-                //PC <- EA
-                this.nextProgramCounter=new Unit(13,this.effectiveAddress.getUnsignedValue());
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: PC <- EA - {0}", this.nextProgramCounter);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": JSR - Next: {0}, RET: {1}", new Object[]{this.nextProgramCounter, this.getGeneralPurposeRegister(3)});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                                 
-                this.signalMicroStateExecutionComplete(); 
-                break;                
-              
+     * Wraps an operation with the effective address computation for one mode
+     * @param eaMode PredecodeCache EA mode
+     * @param operation runs once EA is set
+     * @return handler
+     */
+    private IInstructionHandler bindEffectiveAddress(int eaMode, final IInstructionHandler operation){
+        switch(eaMode){
+            case PredecodeCache.EA_DIRECT: //EA <- ADDR
+                return new IInstructionHandler() {
+                    @Override
+                    public void execute() throws Exception {
+                        effectiveAddress = Unit.valueOf(13, irAddress);
+                        operation.execute();
+                    }
+                };
+            case PredecodeCache.EA_REGISTER_INDIRECT: //EA <- c(Xi) + ADDR
+                return new IInstructionHandler() {
+                    @Override
+                    public void execute() throws Exception {
+                        effectiveAddress = Unit.valueOf(13, registers.get(RegisterFile.index(irXfi)) + irAddress);
+                        operation.execute();
+                    }
+                };
+            case PredecodeCache.EA_INDEXED: //EA <- c(ADDR)
+                return new IInstructionHandler() {
+                    @Override
+                    public void execute() throws Exception {
+                        effectiveAddress = Unit.valueOf(13, memory.fetchImmediately(Unit.valueOf(13, irAddress)).getUnsignedValue());
+                        operation.execute();
+                    }
+                };
+            case PredecodeCache.EA_INDEXED_OFFSET: //EA <- c(c(Xi) + ADDR)
+                return new IInstructionHandler() {
+                    @Override
+                    public void execute() throws Exception {
+                        Unit location = Unit.valueOf(13, registers.get(RegisterFile.index(irXfi)) + irAddress);
+                        effectiveAddress = Unit.valueOf(13, memory.fetchImmediately(location).getUnsignedValue());
+                        operation.execute();
+                    }
+                };
+            default:
+                return operation;
         }
     }
     
     /**
-     * Shift Register by Count
-     * c(r) is shifted left (L/R =1) or right (L/R = 0) either logically (A/L = 1) or arithmetically (A/L = 0)
-     * XX, XXX are ignored
-     * Count = 0…20
-     * If Count = 0, no shift occurs
+     * Fetch and decode of an instruction known ahead of time (compiled and
+     * translated blocks): MAR <- PC, MBR <- instruction, IR <- MBR, IR fields
+     * decoded, ready to execute.
+     * @param fetchAddress PC
+     * @param instruction Contents of PC
+     * @param decoded PredecodeCache entry for instruction
      */
-    private void executeOpcodeSRC(){
-        int RFI = this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        
-        int algorithmicLogical = this.getIR().decomposeByIndex(10).getUnsignedValue();
-        int leftRight = this.getIR().decomposeByIndex(11).getUnsignedValue();
-        int count = this.getIR().decomposeByOffset(15, 19).getUnsignedValue();
-        
-        // Shift functionality is implemented in Unit
-        this.getGeneralPurposeRegister(RFI).shiftByCount(leftRight, count, algorithmicLogical);
-        
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": SRC - Shift Register {0} {1} {2} by {3}: {4}", new Object[]{RFI, (leftRight==1) ? "Left" : "Right", (algorithmicLogical==1) ? "Logical" : "Algorithmic", count, this.getGeneralPurposeRegister(RFI)});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                                 
-        this.signalMicroStateExecutionComplete();
+    void latchInstruction(Unit fetchAddress, Word instruction, int decoded){
+        this.memory.latchFetch(fetchAddress, instruction);
+        this.registers.setBits(RegisterFile.IR, PredecodeCache.raw(decoded));
+        this.irFetchedFrom = fetchAddress.getUnsignedValue();
+        this.instructionCount++;
+        this.irOpcode  = PredecodeCache.opcode(decoded);
+        this.irXfi     = PredecodeCache.xfi(decoded);
+        this.irRfi     = PredecodeCache.rfi(decoded);
+        this.irAddress = PredecodeCache.address(decoded);
+        this.nextProgramCounter = null;
+        this.effectiveAddress = null;
+        this.state = ControlUnit.STATE_EXECUTE_INSTRUCTION;
+        this.microState = 0;
+        this.microPC = Microcode.entry(this.irOpcode);
     }
     
     /**
-     * Rotate Register by Count
-     * c(r) is rotated left (L/R = 1) or right (L/R =0) either logically (A/L =1)
-     * XX, XXX is ignored
-     * Count = 0…20
-     * If Count = 0, no rotate occurs
+     * PC <- nextPC, instruction done (translated blocks)
+     * @param nextProgramCounter
      */
-    private void executeOpcodeRRC(){
-        int RFI = this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        
-        int leftRight = this.getIR().decomposeByIndex(11).getUnsignedValue();
-        int count = this.getIR().decomposeByOffset(15, 19).getUnsignedValue();
-        
-        // Rotate functionality is implemented in Unit
-        this.getGeneralPurposeRegister(RFI).rotateByCount(leftRight, count);
-        
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": RRC - Rotate Register {0} {1} by {2}: {3}", new Object[]{RFI, (leftRight==1) ? "Left" : "Right", count, this.getGeneralPurposeRegister(RFI)});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");    
-        this.signalMicroStateExecutionComplete();
-    }
-    /*
-    Test the Equality of Register and Register
-
-If c(rx) = c(ry), set cc(4) <- 1; else, cc(4) <- 0
-
-
-    */
-    private void executeOpcodeTRR(){
-        int rx=this.getIR().decomposeByOffset(6, 7).getUnsignedValue();
-        int ry=this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        if(this.getGeneralPurposeRegister(rx).getBinaryString().equals(this.getGeneralPurposeRegister(ry).getBinaryString())){
-            this.setCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
-        } else {
-            this.unsetCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
-        }
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "COMPLETED INSTRUCTION:TRR RF({0}/{1}) and RF({2}/{3}) are {4}", new Object[]{rx, this.getGeneralPurposeRegister(rx), ry, this.getGeneralPurposeRegister(ry), (this.getConditionCode(ControlUnit.CONDITION_REGISTER_EQUALORNOT)==1)?"equal":"not equal"});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-        this.signalMicroStateExecutionComplete();     
-    }
-    
-    /*
-    Logical And of Register and Register
-    c(rx) <- c(rx) AND c(ry)
-    */
-    private void executeOpcodeAND(){
-        Integer rx = this.getIR().decomposeByOffset(6, 7).getUnsignedValue(); // rx
-        Integer ry = this.getIR().decomposeByOffset(8, 9).getUnsignedValue(); // ry
-        
-        Unit contentsOfRx = this.getGeneralPurposeRegister(rx);
-        Unit contentsOfRy = this.getGeneralPurposeRegister(ry);
-        
-        Unit result = contentsOfRx.logicalAND(contentsOfRy);
-        
-        this.setGeneralPurposeRegister(rx, new Word(result));
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": AND rx({0}), ry({1}) = {2}", new Object[]{contentsOfRx.getBinaryString(), contentsOfRy.getBinaryString(), result});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-        this.signalMicroStateExecutionComplete();      
- 
+    void completeInstruction(int nextProgramCounter){
+        this.registers.set(RegisterFile.PC, nextProgramCounter);
+        this.state = ControlUnit.STATE_NONE;
+        this.microState = null;
     }
     
     /**
-     * Logical OR of Register and Register
-     * c(rx) <- c(rx) OR c(ry)
+     * @return Instructions fetched so far (micro-stepped, functional, block, 
+     *   translated or compiled), including ones that faulted
      */
-    private void executeOpcodeORR(){
-        Integer rx = this.getIR().decomposeByOffset(6, 7).getUnsignedValue(); // rx
-        Integer ry = this.getIR().decomposeByOffset(8, 9).getUnsignedValue(); // ry
-        
-        Unit contentsOfRx = this.getGeneralPurposeRegister(rx);
-        Unit contentsOfRy = this.getGeneralPurposeRegister(ry);
-        
-        Unit result = contentsOfRx.logicalOR(contentsOfRy);
-        
-        this.setGeneralPurposeRegister(rx, new Word(result));
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": ORR rx({0}), ry({1}) = {2}", new Object[]{contentsOfRx.getBinaryString(), contentsOfRy.getBinaryString(), result});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-        this.signalMicroStateExecutionComplete();
+    public long getInstructionCount(){
+        return this.instructionCount;
     }
     
-    /**
-
-     * Logical Not of Register To Register
-     * C(rx) <- NOT c(rx)
-     */
-    private void executeOpcodeNOT(){
-        
-        Integer rx = this.getIR().decomposeByOffset(6, 7).getUnsignedValue();
-        Unit contentsOfRx = this.getGeneralPurposeRegister(rx);
-        Unit InvertedContentsOfRx = contentsOfRx.logicalNOT();
-       
-        this.setGeneralPurposeRegister(rx, new Word(InvertedContentsOfRx));
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": NOT rx({0}) = {1}", new Object[]{contentsOfRx.getBinaryString(), InvertedContentsOfRx});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-        this.signalMicroStateExecutionComplete();
-        
+    ArithmeticLogicUnit getALU(){
+        return this.alu;
     }
     
-    /**
-     * Multiply Register by Register
-     * rx, rx+1 <- c(rx) * c(ry)
-     */
-    private void executeOpcodeMLT() {
-        Integer rx,ry;
-        switch(this.microState){
-            case 0:
-                // Micro-6: OP1 <- RF(RFI1)                
-                rx=this.getIR().decomposeByOffset(6, 7).getUnsignedValue();
-                Unit contentsOfRx=this.getGeneralPurposeRegister(rx);
-                alu.setOperand1(contentsOfRx);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: OP1 <- c(rx) - {0}", alu.getOperand1());
-            break;
-                        
-            case 1:
-                // Micro-7: OP2 <- RF(RFI2)   
-                ry=this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-                Unit contentsOfRy=this.getGeneralPurposeRegister(ry);
-                alu.setOperand2(contentsOfRy);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: OP2 <- c(ry) - {0}", alu.getOperand2());
-            break;
-                
-            case 2:
-                // Micro-8: CTRL <- OPCODE
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: CTRL <- OPCODE");
-                alu.setControl(ArithmeticLogicUnit.CONTROL_MULTIPLY);
-                alu.signalReadyToStartComputation();
-            break;
-                
-            case 3:
-                // Micro-9: RES <- c(OP1) * c(OP2)      
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: RES <- c(OP1) * c(OP2)");
-                // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 4:
-                // Micro-10: c(RX) <- RES(HI), c(RX+1) <- RES(LOW)
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10:  c(RX) <- RES(HI), c(RX+1) <- RES(LOW)");
-                
-                rx=this.getIR().decomposeByOffset(6, 7).getUnsignedValue();              
-                Integer rxPlusOne = rx+1;
-                if(rx>2){
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "MLT: Invalid Value for RX (0-2).");
-                }
-                
-                Unit result40Bit = alu.getResult();
-                String result40String = result40Bit.getBinaryString();
-                
-                Word highBits = Word.WordFromBinaryString(result40String.substring(0,20));
-                Word lowBits = Word.WordFromBinaryString(result40String.substring(20));                               
-                
-                this.setGeneralPurposeRegister(rx, highBits);
-                this.setGeneralPurposeRegister(rxPlusOne, lowBits);
-                                
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "COMPLETED INSTRUCTION:MLT = {0} {1} ({2})", new Object[]{highBits.getBinaryString(), lowBits.getBinaryString(), result40Bit});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-                this.signalMicroStateExecutionComplete();
-            break;          
-        }  
+    BranchPredictor getBranchPredictor(){
+        return this.bp;
     }
     
     /**
-     * Divide Register by Register
-     * rx, rx+1 <- c(rx) / c(ry)
+     * Binds one instruction of a basic block (BlockEngine). The instruction
+     * fetch and decode are done here, once; the returned handler latches 
+     * MAR/MBR/IR, runs the functional handler and updates PC exactly like
+     * executeInstruction() does.
+     * @param address Address the instruction is stored at
+     * @param instruction Contents of address
+     * @return handler for the whole instruction
      */
-    private void executeOpcodeDVD() {
-        Integer rx,ry;
-        switch(this.microState){
-            case 0:
-                // Micro-6: OP1 <- RF(RFI1)                
-                rx=this.getIR().decomposeByOffset(6, 7).getUnsignedValue();
-                Unit contentsOfRx=this.getGeneralPurposeRegister(rx);
-                alu.setOperand1(contentsOfRx);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-6: OP1 <- c(rx) - {0}", alu.getOperand1());
-            break;
-                        
-            case 1:
-                // Micro-7: OP2 <- RF(RFI2)   
-                ry=this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-                Unit contentsOfRy=this.getGeneralPurposeRegister(ry);
-                alu.setOperand2(contentsOfRy);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-7: OP2 <- c(ry) - {0}", alu.getOperand2());
-            break;
-                
-            case 2:
-                // Micro-8: CTRL <- OPCODE
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-8: CTRL <- OPCODE");
-                alu.setControl(ArithmeticLogicUnit.CONTROL_DIVIDE);
-                alu.signalReadyToStartComputation();
-            break;
-                
-            case 3:
-                // Micro-9: RES <- c(OP1) / c(OP2)      
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-9: RES <- c(OP1) / c(OP2)");
-                // Do nothing. (occurs automatically one clock cycle after signaled ready to compute)
-            break;
-                
-            case 4:
-                // Micro-10: c(RX) <- RES(quotient), c(RX+1) <- RES(remainder)
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-10:  c(RX) <- RES(QUOTIENT), c(RX+1) <- RES(REMAINDER)");
-                
-                rx=this.getIR().decomposeByOffset(6, 7).getUnsignedValue();              
-                Integer rxPlusOne = rx+1;
-                if(rx>2){
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "DVD: Invalid Value for RX (0-2).");
-                }
-                
-                Unit result40Bit = alu.getResult();
-                String result40String = result40Bit.getBinaryString();
+    IInstructionHandler compileInstruction(final int address, final Word instruction){
+        final Unit fetchAddress = Unit.valueOf(13, address);
+        final int decoded = this.memory.getPredecodeCache().fill(address, (int)instruction.getBits());
+        final IInstructionHandler operation = this.functionalHandlers[(PredecodeCache.opcode(decoded) << 3) | PredecodeCache.eaMode(decoded)];
+        
+        return new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                // Fetch + Decode
+                latchInstruction(fetchAddress, instruction, decoded);
                 
-                Word quotient = Word.WordFromBinaryString(result40String.substring(0,20));
-                Word remainder = Word.WordFromBinaryString(result40String.substring(20));                               
+                // EA + Execute
+                operation.execute();
                 
-                this.setGeneralPurposeRegister(rx, quotient);
-                this.setGeneralPurposeRegister(rxPlusOne, remainder);
-                                
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "COMPLETED INSTRUCTION:DVD = {0} r{1}", new Object[]{quotient.getSignedValue(), remainder.getSignedValue()});
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");  
-                this.signalMicroStateExecutionComplete();
-        }
+                // PC <- c(PC) + 1 or PC <- tempPC
+                completeInstruction(nextProgramCounter==null ? address + 1 : nextProgramCounter.getUnsignedValue());
+            }
+        };
     }
-    
+      
     /**
-     * Execute TRAP.
-     * Traps to memory address 0, which contains the address of a table in 
-     * memory. The table can have a maximum of 16 entries representing 16 
-     * routines for user-specified instructions stored elsewhere in memory. Trap
-     * code (in Address field) contains an index into the table, e.g. it takes 
-     * values 0 – 15. When a TRAP instruction is executed, it goes to the 
-     * routine, executes those instructions, and returns to the instruction 
-     * after the TRAP instruction. If the value of code is greater than 15, 
-     * a machine fault occurs.
+     * Finds the superinstruction starting at decoded[offset]
+     * @param decoded PredecodeCache entries of a basic block
+     * @param offset
+     * @return FUSION_XXX, or -1 if none starts there
      */
-    private void executeOpcodeTRAP() throws MachineFaultException {
-        
-        // Get the TRAP code from the address bits.
-        int trapCode = this.getIR().decomposeByOffset(12, 19).getUnsignedValue();        
+    static int matchFusion(int[] decoded, int offset){
+        int remaining = decoded.length - offset;
+        int first = PredecodeCache.opcode(decoded[offset]);
+        int second = (remaining > 1) ? PredecodeCache.opcode(decoded[offset + 1]) : -1;
+        int third = (remaining > 2) ? PredecodeCache.opcode(decoded[offset + 2]) : -1;
         
-        if (trapCode >= 16){   // TRAP codes range from 0 - 15.
-            throw new MachineFaultException(MachineFaultException.ILLEGAL_TRAP_CODE);
+        if(first==ControlUnit.OPCODE_CHK && second==ControlUnit.OPCODE_TRR && third==ControlUnit.OPCODE_JCC){
+            return ControlUnit.FUSION_CHK_TRR_JCC;
         }
-        
-        switch(this.microState){            
-            case 0: // save pc                
-                Unit pc = this.getProgramCounter();
-                Unit pcPlusOne = new Unit(13, pc.getUnsignedValue()+1);
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-0: 2->MAR, PC({0}) -> MBR", pc.getUnsignedValue());                
-                this.memory.setMAR(new Unit(13,2));     
-                this.memory.setMBR(pcPlusOne);
-                this.memory.signalStore();               
-                this.microState++; // no break in case it was cached                                
-            case 1: // wait for save pc
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-1: PC -> M(2)");
-                    this.microState++; 
-                    // bleed through to case 2
-                } else {
-                    this.signalBlockingMicroFunction();
-                    break;
-                }                
-            case 2: // save msr
-                Word msr = this.getMachineStatusRegister();
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-2: 3->MAR, MSR({0}) -> MBR", msr);                
-                this.memory.setMAR(new Unit(13,3));     
-                this.memory.setMBR(msr);
-                this.memory.signalStore();               
-                this.microState++; // no break in case it was cached                    
-                break;
-            case 3: // wait for save msr
-                if(!this.memory.isBusy()){ // block until memory read is ready
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-3: MSR -> M(3)");
-                    this.microState++; 
-                    // bleed through to case 4
-                } else {
-                    this.signalBlockingMicroFunction();
-                    break;
-                }                       
-                break;
-            case 4: // fetch machine fault address
-                Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-4: 0->MAR (Fetch)");
-                this.memory.setMAR(new Unit(13,0));                     
-                this.memory.signalFetch();               
-                this.microState++; // no break in case it was cached                     
-                break;
-            case 5: // transfer execution to machine fault addr
-                if(!this.memory.isBusy()){ // block until memory read is ready                    
-                    Word offset = this.memory.getMBR();
-                    int newLoc = offset.getUnsignedValue() + trapCode;
-                    this.nextProgramCounter = new Unit(13, newLoc);
-                    
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "Micro-5: M(0) [{0}] +TC [{1}] -> PC [{2}]", new Object[]{this.memory.getMBR().getUnsignedValue(), trapCode, newLoc});
-                    
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": TRAP {0}", trapCode);
-                    Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");                                         
-                    this.signalMicroStateExecutionComplete();
-                    break;
-                } else {
-                    this.signalBlockingMicroFunction();
-                }
-
-        }            
-        
-        
-        
+        if(first==ControlUnit.OPCODE_TRR && second==ControlUnit.OPCODE_JCC){
+            return ControlUnit.FUSION_TRR_JCC;
+        }
+        if(first==ControlUnit.OPCODE_SIR && second==ControlUnit.OPCODE_JNE){
+            return ControlUnit.FUSION_SIR_JNE;
+        }
+        if(first==ControlUnit.OPCODE_LDR && second==ControlUnit.OPCODE_AMR && third==ControlUnit.OPCODE_STR
+                && PredecodeCache.rfi(decoded[offset])==PredecodeCache.rfi(decoded[offset + 1])
+                && PredecodeCache.rfi(decoded[offset])==PredecodeCache.rfi(decoded[offset + 2])){
+            return ControlUnit.FUSION_LDR_AMR_STR;
+        }
+        return -1;
     }
-        
+    
     /**
-     * Stop the machine
+     * @param fusion FUSION_XXX
+     * @return number of instructions fused
      */
-    private void executeOpcodeHLT() throws HaltSystemException {                
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": HLT");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        this.signalMicroStateExecutionComplete();
-        throw new HaltSystemException();
-    }   
+    static int getFusionLength(int fusion){
+        return ControlUnit.FUSION_LENGTHS[fusion];
+    }
     
     /**
-     * Input Character To Register from Device, r = 0..3
+     * Binds a superinstruction of a basic block (BlockEngine). The handler 
+     * runs every instruction of the sequence with PC, MAR/MBR and IR latched 
+     * as they would be one instruction at a time, so a fault part way leaves
+     * PC at the instruction that raised it; PC is only moved on past the 
+     * sequence at the end. TRR (registers only, can't fault) is run inline,
+     * as the JCC fetch that follows replaces anything it would latch.
+     * @param fusion FUSION_XXX
+     * @param address Address of the first instruction
+     * @param instructions Contents of the block
+     * @param offset Index of the first instruction in instructions
+     * @return handler for the whole sequence
      */
-    private void executeOpcodeIN(){                
-        
-        int r = this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        int DEVID = this.getIR().decomposeByOffset(16, 19).getUnsignedValue();
-                
-        Word received = ioController.input(DEVID);
-        if(received==null){
-            received = new Word(0);
+    IInstructionHandler compileFused(final int fusion, final int address, Word[] instructions, int offset){
+        final int length = ControlUnit.FUSION_LENGTHS[fusion];
+        final Unit[] fetchAddresses = new Unit[length];
+        final Word[] parts = new Word[length];
+        final int[] decoded = new int[length];
+        final IInstructionHandler[] operations = new IInstructionHandler[length];
+        int compare = -1;
+        for(int i=0;i<length;i++){
+            fetchAddresses[i] = Unit.valueOf(13, address + i);
+            parts[i] = instructions[offset + i];
+            decoded[i] = this.memory.getPredecodeCache().fill(address + i, (int)parts[i].getBits());
+            operations[i] = this.functionalHandlers[(PredecodeCache.opcode(decoded[i]) << 3) | PredecodeCache.eaMode(decoded[i])];
+            if(PredecodeCache.opcode(decoded[i])==ControlUnit.OPCODE_TRR){
+                compare = i;
+            }
         }
-        this.setGeneralPurposeRegister(r, received);    
+        final int inlineCompare = compare;
+        final int rx = (compare < 0) ? 0 : RegisterFile.gpr(PredecodeCache.xfi(decoded[compare]));
+        final int ry = (compare < 0) ? 0 : RegisterFile.gpr(PredecodeCache.rfi(decoded[compare]));
         
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": IN - Set R{0} to {1} from device {2}", new Object[]{r, received, DEVID});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        this.signalMicroStateExecutionComplete();
-    }  
+        return new IInstructionHandler() {
+            @Override
+            public void execute() throws Exception {
+                fusionCounts[fusion]++;
+                for(int i=0;i<length;i++){
+                    registers.setBits(RegisterFile.PC, address + i);
+                    if(i==inlineCompare){
+                        // TRR: CC(4) <- c(rx) == c(ry)
+                        if(registers.get(rx) == registers.get(ry)){
+                            setCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                        } else {
+                            unsetCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+                        }
+                        instructionCount++;
+                        continue;
+                    }
+                    latchInstruction(fetchAddresses[i], parts[i], decoded[i]);
+                    operations[i].execute();
+                }
+                
+                // only the last instruction can transfer control
+                completeInstruction(nextProgramCounter==null ? address + length : nextProgramCounter.getUnsignedValue());
+            }
+        };
+    }
     
     /**
-     * Output Character to Device from Register, r = 0..3
+     * @param fusion FUSION_XXX
+     * @return times the superinstruction ran
      */
-    private void executeOpcodeOUT(){                
-        
-        int r = this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        int DEVID = this.getIR().decomposeByOffset(16, 19).getUnsignedValue();
-        
-        Word contentsOfR=this.getGeneralPurposeRegister(r);
-        
-        ioController.output(DEVID, contentsOfR);
-        
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": OUT - Pushed {0} to Device: {1}", new Object[]{contentsOfR, DEVID});
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        this.signalMicroStateExecutionComplete();
-    }   
+    public long getFusionCount(int fusion){
+        return this.fusionCounts[fusion];
+    }
     
     /**
-     * Check Device Status to Register, r = 0..3
-     * c(r) <- device status
+     * Get the superinstruction table
+     * @return one line per superinstruction with the times it ran
      */
-    private void executeOpcodeCHK(){                
-        
-        int r = this.getIR().decomposeByOffset(8, 9).getUnsignedValue();
-        int DEVID = this.getIR().decomposeByOffset(16, 19).getUnsignedValue();
-        
-        int status = ioController.checkStatus(DEVID);
-        this.setGeneralPurposeRegister(r, new Word(status));        
-        
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.INFO, this.getProgramCounter().getUnsignedValue()+": CHK  - Status: {0}", status);
-        Logger.getLogger(ControlUnit.class.getName()).log(Level.CONFIG, "!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-        this.signalMicroStateExecutionComplete();
-    }       
-    
+    public String getFusionReport(){
+        String results="";
+        for(int i=0;i<this.fusionCounts.length;i++){
+            results += String.format("%-12s", ControlUnit.FUSION_NAMES[i]) + this.fusionCounts[i] + "\n";
+        }
+        return results;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,522 @@
+package computersimulator.cpu;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * DeckCompiler - ahead-of-time translation of a card deck (CardReader format)
+ * into a Java class. The deck is loaded by the real IPL ROM, then the memory
+ * image and registers it leaves behind are written out together with Java
+ * code for every basic block reachable from 64 through direct control
+ * transfers. The generated class extends CompiledProgram: Computer.load() runs
+ * it in place of IPL, and its main() runs it as a batch job.
+ *
+ * Code only reachable through an indirect jump (computed or c(EA) targets),
+ * TRAP, HLT, MLT/DVD and illegal opcodes are left to the interpreter, as are
+ * blocks the program writes to at run time.
+ *
+ * Usage: DeckCompiler deck className [outputDirectory]
+ */
+public class DeckCompiler {
+
+    // Clock cycles the ROM loader gets to load a deck
+    private static final long LOAD_CYCLE_LIMIT = 10000000;
+    // Longest block compiled into one method (instructions)
+    private static final int MAX_BLOCK_LENGTH = 64;
+
+    private static final String[] REGISTER_NAMES = {"r0", "r1", "r2", "r3", "x1", "x2", "x3"};
+    private static final String[] REGISTER_SLOTS = {"R0", "R1", "R2", "R3", "X1", "X2", "X3"};
+
+    private final String deck;
+
+    // machine after the ROM loader ran: raw memory words, R0-X3, CC bits
+    private final int[] memory = new int[MemoryControlUnit.getAddressableSize()];
+    private final int[] registers = new int[RegisterFile.X3 + 1];
+    private int conditions = 0;
+
+    // {first address, end address (exclusive)} of each block
+    private final ArrayList<int[]> blocks = new ArrayList<>();
+
+    // per block: registers read or written, registers written
+    private final boolean[] used = new boolean[RegisterFile.X3 + 1];
+    private final boolean[] written = new boolean[RegisterFile.X3 + 1];
+    private boolean usesShifter = false;
+    private boolean usesALU = false;
+
+    /**
+     * @param deck Card deck file
+     */
+    public DeckCompiler(String deck) {
+        this.deck = deck;
+    }
+
+    /**
+     * Loads the deck and writes the source of its compiled class
+     * @param className Class to generate (may include a package)
+     * @return Java source
+     * @throws IOException The deck is missing or did not load
+     */
+    public String compile(String className) throws IOException {
+        this.load();
+        this.findBlocks();
+        return this.writeClass(className);
+    }
+
+    /**
+     * Runs the IPL ROM on the deck until it transfers control to 64, and keeps
+     * the memory and registers it leaves behind
+     * @throws IOException
+     */
+    private void load() throws IOException {
+        if(!new File(this.deck).isFile()){
+            throw new FileNotFoundException(this.deck);
+        }
+
+        Computer computer = new Computer();
+        computer.getIO().setFilename(this.deck);
+        computer.IPL();
+        computer.setRunmode(Computer.RUNMODE_FAST);
+        ControlUnit cu = computer.getCpu().getControlUnit();
+        RegisterFile file = cu.getRegisterFile();
+        try {
+            computer.runUntil(new IRunCondition() {
+                @Override
+                public boolean isMet(Computer computer) {
+                    return computer.getCpu().getControlUnit().getRegisterFile().get(RegisterFile.PC)==CompiledProgram.ENTRY;
+                }
+            }, DeckCompiler.LOAD_CYCLE_LIMIT);
+            if(file.get(RegisterFile.PC)!=CompiledProgram.ENTRY){
+                throw new IOException("Deck " + this.deck + " did not load");
+            }
+
+            for(int address=0;address<this.memory.length;address++){
+                this.memory[address] = computer.getMemory().fetchBits(address);
+            }
+        } catch(IOException ex){
+            throw ex;
+        } catch(Exception ex){
+            throw new IOException("Deck " + this.deck + " did not load", ex);
+        }
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            this.registers[slot] = file.get(slot);
+        }
+        for(int i=0;i<RegisterFile.getSize(RegisterFile.CC);i++){
+            this.conditions |= cu.getConditionCode(i) << i;
+        }
+    }
+
+    /**
+     * @param entry PredecodeCache entry
+     * @return true if the instruction is compiled (else it is interpreted)
+     */
+    private static boolean isCompiled(int entry){
+        int opcode = PredecodeCache.opcode(entry);
+        if((opcode==ControlUnit.OPCODE_STX || opcode==ControlUnit.OPCODE_INX) && PredecodeCache.rfi(entry)==0){
+            return false; // faults in the interpreter
+        }
+        return BlockTranslator.isTranslatable(opcode);
+    }
+
+    /**
+     * Control flow graph: follows the program from 64 through fall-through and
+     * direct branch targets, then splits what was reached into basic blocks
+     */
+    private void findBlocks(){
+        TreeSet<Integer> leaders = new TreeSet<>();
+        boolean[] reached = new boolean[this.memory.length];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        leaders.add(CompiledProgram.ENTRY);
+        work.add(CompiledProgram.ENTRY);
+
+        while(!work.isEmpty()){
+            int address = work.poll();
+            while(address < this.memory.length && !reached[address]){
+                int entry = PredecodeCache.decode(this.memory[address]);
+                int opcode = PredecodeCache.opcode(entry);
+                if(!DeckCompiler.isCompiled(entry)){
+                    // interpreted; TRAP, MLT and DVD carry on at the next word
+                    if(opcode==ControlUnit.OPCODE_TRAP || opcode==ControlUnit.OPCODE_MLT || opcode==ControlUnit.OPCODE_DVD){
+                        this.addLeader(address + 1, leaders, work);
+                    }
+                    break;
+                }
+                reached[address] = true;
+                if(BlockEngine.endsBlock(opcode)){
+                    if(PredecodeCache.eaMode(entry)==PredecodeCache.EA_DIRECT && opcode!=ControlUnit.OPCODE_RFS){
+                        this.addLeader(PredecodeCache.address(entry), leaders, work);
+                    }
+                    if(opcode!=ControlUnit.OPCODE_JMP && opcode!=ControlUnit.OPCODE_RFS){
+                        this.addLeader(address + 1, leaders, work); // not taken / return from JSR
+                    }
+                    break;
+                }
+                address++;
+            }
+        }
+
+        for(Integer start=leaders.first();start!=null;start=leaders.higher(start)){
+            if(!reached[start]){
+                continue;
+            }
+            int end = start;
+            do {
+                end++;
+            } while(end < this.memory.length && reached[end] && !leaders.contains(end)
+                    && !BlockEngine.endsBlock(PredecodeCache.opcode(PredecodeCache.decode(this.memory[end - 1])))
+                    && end - start < DeckCompiler.MAX_BLOCK_LENGTH);
+            this.blocks.add(new int[]{start, end});
+            if(end < this.memory.length && reached[end] && end - start==DeckCompiler.MAX_BLOCK_LENGTH){
+                leaders.add(end); // split, picked up by leaders.higher()
+            }
+        }
+    }
+
+    private void addLeader(int address, TreeSet<Integer> leaders, ArrayDeque<Integer> work){
+        if(address < this.memory.length && leaders.add(address)){
+            work.add(address);
+        }
+    }
+
+    /***************** SOURCE ******************/
+
+    private String writeClass(String className){
+        int dot = className.lastIndexOf('.');
+        String simpleName = className.substring(dot + 1);
+
+        StringBuilder code = new StringBuilder();
+        for(int[] block : this.blocks){
+            this.writeBlock(code, block[0], block[1]);
+        }
+
+        StringBuilder out = new StringBuilder();
+        if(dot > 0){
+            out.append("package ").append(className.substring(0, dot)).append(";\n\n");
+        }
+        if(this.usesShifter){
+            out.append("import computersimulator.components.BarrelShifter;\n");
+        }
+        if(this.usesALU){
+            out.append("import computersimulator.cpu.ArithmeticLogicUnit;\n");
+        }
+        out.append("import computersimulator.cpu.CompiledProgram;\n");
+        out.append("import computersimulator.cpu.RegisterFile;\n\n");
+        out.append("/**\n");
+        out.append(" * ").append(new File(this.deck).getName()).append(" compiled ahead of time by DeckCompiler. Do not edit.\n");
+        out.append(" */\n");
+        out.append("public class ").append(simpleName).append(" extends CompiledProgram {\n\n");
+
+        out.append("    // memory after loading: {address, word, ...}\n");
+        out.append("    private static final int[] IMAGE = {");
+        int count = 0;
+        for(int address=0;address<this.memory.length;address++){
+            if(this.memory[address]!=0){
+                out.append((count++ % 8==0) ? "\n        " : " ");
+                out.append(address).append(", 0x").append(Integer.toHexString(this.memory[address])).append(',');
+            }
+        }
+        out.append("\n    };\n");
+        out.append("    // R0-R3, X1-X3 after loading\n");
+        out.append("    private static final int[] REGISTERS = {");
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            out.append((slot==RegisterFile.R0) ? "" : ", ").append(this.registers[slot]);
+        }
+        out.append("};\n");
+        out.append("    // CC after loading\n");
+        out.append("    private static final int CONDITIONS = ").append(this.conditions).append(";\n");
+        out.append("    // compiled blocks: {first address, end address, ...}\n");
+        out.append("    private static final int[] BLOCKS = {");
+        for(int i=0;i<this.blocks.size();i++){
+            out.append((i % 8==0) ? "\n        " : " ");
+            out.append(this.blocks.get(i)[0]).append(", ").append(this.blocks.get(i)[1]).append(',');
+        }
+        out.append("\n    };\n\n");
+
+        out.append("    public ").append(simpleName).append("() {\n");
+        out.append("        super(IMAGE, REGISTERS, CONDITIONS, BLOCKS);\n");
+        out.append("    }\n\n");
+        out.append("    /**\n");
+        out.append("     * @param args [keyboard input] [clock cycle limit]\n");
+        out.append("     * @throws Exception\n");
+        out.append("     */\n");
+        out.append("    public static void main(String[] args) throws Exception {\n");
+        out.append("        CompiledProgram.runBatch(new ").append(simpleName).append("(), args);\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    protected void execute(int pc) throws Exception {\n");
+        out.append("        switch(pc){\n");
+        for(int[] block : this.blocks){
+            out.append("            case ").append(block[0]).append(": this.block").append(block[0]).append("(); break;\n");
+        }
+        out.append("            default: throw new IllegalArgumentException(\"No block at \" + pc);\n");
+        out.append("        }\n");
+        out.append("    }\n");
+        out.append(code);
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * One method per block. Registers the block uses are kept in locals and
+     * the ones it writes are stored back on the way out, faults included.
+     */
+    private void writeBlock(StringBuilder out, int start, int end){
+        Arrays.fill(this.used, false);
+        Arrays.fill(this.written, false);
+
+        ArrayList<String> body = new ArrayList<>();
+        boolean exited = false;
+        for(int address=start;address<end && !exited;address++){
+            body.add("// " + address + ": " + Integer.toBinaryString(this.memory[address] | (1 << 20)).substring(1));
+            body.add("this.fetch(" + address + ");");
+            exited = this.writeInstruction(body, address, PredecodeCache.decode(this.memory[address]));
+        }
+        if(!exited){
+            body.add("this.exit(" + end + ");");
+        }
+
+        out.append("\n    // ").append(start).append(" - ").append(end - 1).append("\n");
+        out.append("    private void block").append(start).append("() throws Exception {\n");
+        boolean writeBack = false;
+        for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+            if(this.used[slot]){
+                out.append("        int ").append(DeckCompiler.REGISTER_NAMES[slot]).append(" = this.register(RegisterFile.")
+                        .append(DeckCompiler.REGISTER_SLOTS[slot]).append(");\n");
+            }
+            writeBack |= this.written[slot];
+        }
+        String indent = writeBack ? "            " : "        ";
+        if(writeBack){
+            out.append("        try {\n");
+        }
+        for(String line : body){
+            out.append(indent).append(line).append('\n');
+        }
+        if(writeBack){
+            out.append("        } finally {\n");
+            for(int slot=RegisterFile.R0;slot<=RegisterFile.X3;slot++){
+                if(this.written[slot]){
+                    out.append("            this.setRegister(RegisterFile.").append(DeckCompiler.REGISTER_SLOTS[slot]).append(", ")
+                            .append(DeckCompiler.REGISTER_NAMES[slot]).append(");\n");
+                }
+            }
+            out.append("        }\n");
+        }
+        out.append("    }\n");
+    }
+
+    /**
+     * @param body Statements of the block
+     * @param pc Address of the instruction
+     * @param entry PredecodeCache entry
+     * @return true if the instruction always leaves the block
+     */
+    private boolean writeInstruction(ArrayList<String> body, int pc, int entry){
+        int opcode = PredecodeCache.opcode(entry);
+        int rfi = PredecodeCache.rfi(entry);
+        int xfi = PredecodeCache.xfi(entry);
+        int addr = PredecodeCache.address(entry);
+        int eaMode = PredecodeCache.eaMode(entry);
+        int raw = PredecodeCache.raw(entry);
+        int r = RegisterFile.gpr(rfi);
+        int devid = raw & 0xF;
+
+        switch(opcode){
+            case ControlUnit.OPCODE_LDR:
+                body.add(this.write(r) + " = this.load(" + this.effectiveAddress(eaMode, xfi, addr) + ");");
+                return false;
+            case ControlUnit.OPCODE_STR:
+                body.add("this.store(" + this.effectiveAddress(eaMode, xfi, addr) + ", " + this.read(r) + ");");
+                this.writeSelfModificationCheck(body, pc);
+                return false;
+            case ControlUnit.OPCODE_LDA:
+                body.add(this.write(r) + " = " + this.effectiveAddress(eaMode, xfi, addr) + ";");
+                return false;
+            case ControlUnit.OPCODE_LDX:
+                if(rfi==0){ // range checked, no X0 to write
+                    body.add("this.indexValue(this.load(" + this.effectiveAddress(eaMode, xfi, addr) + "));");
+                } else {
+                    body.add(this.write(RegisterFile.index(rfi)) + " = this.indexValue(this.load(" + this.effectiveAddress(eaMode, xfi, addr) + "));");
+                }
+                return false;
+            case ControlUnit.OPCODE_STX:
+                body.add("this.storeIndex(" + this.effectiveAddress(eaMode, xfi, addr) + ", " + this.read(RegisterFile.index(rfi)) + ");");
+                this.writeSelfModificationCheck(body, pc);
+                return false;
+            case ControlUnit.OPCODE_INX:
+                body.add(this.write(RegisterFile.index(rfi)) + " = (" + this.read(RegisterFile.index(rfi)) + " + 1) & 0x1FFF;");
+                return false;
+            case ControlUnit.OPCODE_AMR:
+            case ControlUnit.OPCODE_SMR:
+                this.usesALU = true;
+                body.add(this.write(r) + " = this.aluMemory(" + this.read(r) + ", " + this.effectiveAddress(eaMode, xfi, addr) + ", "
+                        + ((opcode==ControlUnit.OPCODE_AMR) ? "ArithmeticLogicUnit.CONTROL_ADD" : "ArithmeticLogicUnit.CONTROL_SUBTRACT") + ");");
+                return false;
+            case ControlUnit.OPCODE_AIR:
+            case ControlUnit.OPCODE_SIR:
+                this.usesALU = true;
+                body.add(this.write(r) + " = this.aluImmediate(" + this.read(r) + ", " + addr + ", "
+                        + ((opcode==ControlUnit.OPCODE_AIR) ? "ArithmeticLogicUnit.CONTROL_ADD" : "ArithmeticLogicUnit.CONTROL_SUBTRACT") + ");");
+                return false;
+            case ControlUnit.OPCODE_JMP:
+                if(eaMode==PredecodeCache.EA_DIRECT && addr!=CompiledProgram.ENTRY){
+                    body.add("this.exit(" + addr + ");");
+                } else {
+                    body.add("this.exit(this.jump(" + this.effectiveAddress(eaMode, xfi, addr) + "));");
+                }
+                return true;
+            case ControlUnit.OPCODE_JZ:
+            case ControlUnit.OPCODE_JNE:
+            case ControlUnit.OPCODE_JGE:
+            case ControlUnit.OPCODE_JCC:
+            case ControlUnit.OPCODE_SOB:
+                String target = this.effectiveAddress(eaMode, xfi, addr);
+                if(eaMode!=PredecodeCache.EA_DIRECT){
+                    body.add("int ea = " + target + ";");
+                    target = "ea";
+                }
+                body.add("boolean taken = " + this.condition(body, opcode, r, rfi) + ";");
+                body.add("this.branch(" + pc + ", taken);");
+                body.add("this.exit(taken ? " + target + " : " + (pc + 1) + ");");
+                return true;
+            case ControlUnit.OPCODE_JSR:
+                if(eaMode==PredecodeCache.EA_DIRECT){
+                    body.add(this.write(RegisterFile.gpr(3)) + " = " + (pc + 1) + ";");
+                    body.add("this.exit(" + addr + ");");
+                } else {
+                    body.add("int ea = " + this.effectiveAddress(eaMode, xfi, addr) + ";");
+                    body.add(this.write(RegisterFile.gpr(3)) + " = " + (pc + 1) + ";");
+                    body.add("this.exit(ea);");
+                }
+                return true;
+            case ControlUnit.OPCODE_RFS:
+                if(eaMode!=PredecodeCache.EA_DIRECT){ // computed for its faults only
+                    body.add(this.effectiveAddress(eaMode, xfi, addr) + ";");
+                }
+                body.add(this.write(RegisterFile.gpr(0)) + " = " + addr + ";");
+                body.add("this.exit(this.address(" + this.read(RegisterFile.gpr(3)) + "));");
+                return true;
+            case ControlUnit.OPCODE_TRR:
+                body.add("this.compare(" + this.read(RegisterFile.gpr(xfi)) + ", " + this.read(r) + ");");
+                return false;
+            case ControlUnit.OPCODE_AND:
+            case ControlUnit.OPCODE_ORR:
+                body.add(this.write(RegisterFile.gpr(xfi)) + " = " + this.read(RegisterFile.gpr(xfi))
+                        + ((opcode==ControlUnit.OPCODE_AND) ? " & " : " | ") + this.read(r) + ";");
+                return false;
+            case ControlUnit.OPCODE_NOT:
+                body.add(this.write(RegisterFile.gpr(xfi)) + " = " + this.read(RegisterFile.gpr(xfi)) + " ^ 0xFFFFF;");
+                return false;
+            case ControlUnit.OPCODE_SRC:
+            case ControlUnit.OPCODE_RRC:
+                // A/L = bit 10, L/R = bit 11, count = bits 15-19
+                this.usesShifter = true;
+                String shifted = this.read(r) + ", " + RegisterFile.getSize(RegisterFile.R0) + ", " + ((raw >>> 8) & 1) + ", " + (raw & 0x1F);
+                if(opcode==ControlUnit.OPCODE_SRC){
+                    body.add(this.write(r) + " = (int)BarrelShifter.shift(" + shifted + ", " + ((raw >>> 9) & 1) + ");");
+                } else {
+                    body.add(this.write(r) + " = (int)BarrelShifter.rotate(" + shifted + ");");
+                }
+                return false;
+            case ControlUnit.OPCODE_IN:
+                body.add(this.write(r) + " = this.input(" + devid + ");");
+                return false;
+            case ControlUnit.OPCODE_OUT:
+                body.add("this.output(" + devid + ", " + this.read(r) + ");");
+                return false;
+            case ControlUnit.OPCODE_CHK:
+                body.add(this.write(r) + " = this.check(" + devid + ");");
+                return false;
+            default:
+                throw new IllegalArgumentException("Opcode " + opcode + " is not compiled");
+        }
+    }
+
+    /**
+     * @return expression for the effective address
+     */
+    private String effectiveAddress(int eaMode, int xfi, int addr){
+        switch(eaMode){
+            case PredecodeCache.EA_DIRECT: // ADDR
+                return String.valueOf(addr);
+            case PredecodeCache.EA_REGISTER_INDIRECT: // c(Xi) + ADDR
+                return "this.address(" + this.read(RegisterFile.index(xfi)) + " + " + addr + ")";
+            case PredecodeCache.EA_INDEXED: // c(ADDR)
+                return "this.address(this.load(" + addr + "))";
+            case PredecodeCache.EA_INDEXED_OFFSET: // c(c(Xi) + ADDR)
+                return "this.address(this.load(this.address(" + this.read(RegisterFile.index(xfi)) + " + " + addr + ")))";
+            default:
+                throw new IllegalArgumentException("EA mode " + eaMode);
+        }
+    }
+
+    /**
+     * @return expression for the branch condition; SOB's decrement is added to body
+     */
+    private String condition(ArrayList<String> body, int opcode, int r, int rfi){
+        switch(opcode){
+            case ControlUnit.OPCODE_JZ:
+                return this.read(r) + " == 0";
+            case ControlUnit.OPCODE_JNE:
+                return this.read(r) + " != 0";
+            case ControlUnit.OPCODE_JGE: // sign bit clear
+                return this.read(r) + " < 0x80000";
+            case ControlUnit.OPCODE_JCC:
+                return "this.condition(" + rfi + ") == 1";
+            case ControlUnit.OPCODE_SOB: // r <- c(r) - 1, branch if not 0
+                body.add(this.write(r) + " = (" + this.read(r) + " - 1) & 0xFFFFF;");
+                return this.read(r) + " != 0";
+            default:
+                throw new IllegalArgumentException("Opcode " + opcode + " is not a conditional branch");
+        }
+    }
+
+    /**
+     * Leaves the block after a store that hit the block's own memory
+     */
+    private void writeSelfModificationCheck(ArrayList<String> body, int pc){
+        body.add("if(!this.isIntact()){");
+        body.add("    this.exit(" + (pc + 1) + ");");
+        body.add("    return;");
+        body.add("}");
+    }
+
+    private String read(int slot){
+        this.used[slot] = true;
+        return DeckCompiler.REGISTER_NAMES[slot];
+    }
+
+    private String write(int slot){
+        this.written[slot] = true;
+        return this.read(slot);
+    }
+
+    /**
+     * Writes the compiled class for a deck
+     * @param args deck className [outputDirectory]
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2){
+            System.err.println("Usage: DeckCompiler deck className [outputDirectory]");
+            return;
+        }
+        String source = new DeckCompiler(args[0]).compile(args[1]);
+
+        File file = new File((args.length > 2) ? args[2] : ".", args[1].replace('.', File.separatorChar) + ".java");
+        if(file.getParentFile()!=null){
+            file.getParentFile().mkdirs();
+        }
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(source);
+        }
+        System.out.println("Wrote " + file);
+    }
+}
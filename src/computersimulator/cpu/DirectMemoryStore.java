@@ -0,0 +1,53 @@
+package computersimulator.cpu;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Memory held off the Java heap in a direct buffer, one 32-bit slot per 
+ * word. Large memories cost the heap (and the garbage collector) only this
+ * object; the buffer counts against -XX:MaxDirectMemorySize instead.
+ */
+public class DirectMemoryStore implements IMemoryStore {
+
+    private final IntBuffer words;
+
+    public DirectMemoryStore(int size) {
+        this.words = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Override
+    public int size() {
+        return this.words.capacity();
+    }
+
+    @Override
+    public int get(int index) {
+        return this.words.get(index);
+    }
+
+    @Override
+    public void set(int index, int bits) {
+        this.words.put(index, bits);
+    }
+
+    @Override
+    public void read(int index, int[] block, int count) {
+        this.words.position(index);
+        this.words.get(block, 0, count);
+    }
+
+    @Override
+    public void write(int index, int[] block, int count) {
+        this.words.position(index);
+        this.words.put(block, 0, count);
+    }
+
+    @Override
+    public void clear() {
+        for(int i=0;i<this.words.capacity();i++){
+            this.words.put(i, 0);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package computersimulator.cpu;
+
+import computersimulator.components.MachineFaultException;
+import computersimulator.components.Unit;
+import computersimulator.components.Word;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base class of generated code: the JVM classes BlockTranslator writes at run
+ * time (TranslatedBlock) and the Java classes DeckCompiler writes ahead of
+ * time (CompiledProgram). Generated code keeps registers in locals as raw
+ * bits and calls back into the helpers below for anything that touches the
+ * rest of the machine. The helpers make the same calls as the functional
+ * handlers in ControlUnit, so results match RUNMODE_FAST.
+ *
+ * Generated classes may live in another package or class loader, so every
+ * member they use is public or protected.
+ */
+public abstract class GeneratedCode {
+
+    ControlUnit controlUnit;
+    RegisterFile registers;
+    MemoryControlUnit memory;
+    private ArithmeticLogicUnit alu;
+    private BranchPredictor bp;
+
+    /**
+     * Connects the helpers to a machine
+     */
+    void bindMachine(ControlUnit cu, MemoryControlUnit mem){
+        this.controlUnit = cu;
+        this.registers = cu.getRegisterFile();
+        this.memory = mem;
+        this.alu = cu.getALU();
+        this.bp = cu.getBranchPredictor();
+    }
+
+    /***************** CALLED FROM GENERATED CODE ******************/
+
+    /**
+     * @param slot RegisterFile slot (R0-X3)
+     * @return raw bits
+     */
+    protected final int register(int slot){
+        return this.registers.get(slot);
+    }
+
+    /**
+     * @param slot RegisterFile slot (R0-X3)
+     * @param bits raw bits
+     */
+    protected final void setRegister(int slot, int bits){
+        this.registers.setBits(slot, bits);
+    }
+
+    /**
+     * Range checked 13 bit address, as Unit.valueOf(13, value)
+     * @param value
+     * @return address
+     */
+    protected final int address(int value){
+        Unit.checkRange(13, value);
+        return value & 0x1FFF;
+    }
+
+    /**
+     * MAR <- address, MBR <- M(MAR)
+     * @return raw bits of MBR
+     */
+    protected final int load(int address) throws MachineFaultException {
+        return (int)this.memory.fetchImmediately(Unit.valueOf(13, address)).getBits();
+    }
+
+    /**
+     * MAR <- address, MBR <- value, M(MAR) <- MBR
+     * @param bits raw 20 bit value
+     */
+    protected final void store(int address, int bits) throws MachineFaultException {
+        this.memory.storeImmediately(Unit.valueOf(13, address), Word.valueOfBits(bits));
+    }
+
+    /**
+     * STX: M(address) <- c(Xi), sign extended
+     * @param bits raw 13 bit index register
+     */
+    protected final void storeIndex(int address, int bits) throws MachineFaultException {
+        Unit ea = Unit.valueOf(13, address);
+        this.memory.setMAR(ea);
+        this.memory.storeImmediately(ea, Word.valueOf((int)Unit.signExtend(bits, 13)));
+    }
+
+    /**
+     * LDX: range check of a loaded word going into an index register
+     * @param bits raw 20 bit word
+     * @return raw 13 bit index register value
+     */
+    protected final int indexValue(int bits){
+        int value = (int)Unit.signExtend(bits, 20);
+        Unit.checkRange(13, value);
+        return value & 0x1FFF;
+    }
+
+    /**
+     * AMR/SMR: RES <- c(r) (control) c(EA)
+     * @return raw 20 bit result
+     */
+    protected final int aluMemory(int operand1, int address, int control) throws Exception {
+        this.alu.setOperand2(this.memory.fetchImmediately(Unit.valueOf(13, address)));
+        return this.aluCompute(operand1, control);
+    }
+
+    /**
+     * AIR/SIR: RES <- c(r) (control) Immed
+     * @return raw 20 bit result
+     */
+    protected final int aluImmediate(int operand1, int immediate, int control) throws Exception {
+        this.alu.setOperand2(immediate, 8);
+        return this.aluCompute(operand1, control);
+    }
+
+    private int aluCompute(int operand1, int control) throws Exception {
+        this.alu.setOperand1(operand1, RegisterFile.getSize(RegisterFile.R0));
+        this.alu.setControl(control);
+        this.alu.signalReadyToStartComputation();
+        this.alu.clockCycle();
+        return (int)this.alu.getResultBits(RegisterFile.getSize(RegisterFile.R0));
+    }
+
+    /**
+     * @param conditionRegister CC bit
+     * @return 1 or 0
+     */
+    protected final int condition(int conditionRegister){
+        return this.controlUnit.getConditionCode(conditionRegister);
+    }
+
+    /**
+     * TRR: CC(4) <- c(rx) == c(ry)
+     */
+    protected final void compare(int rx, int ry){
+        if(rx == ry){
+            this.controlUnit.setCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+        } else {
+            this.controlUnit.unsetCondition(ControlUnit.CONDITION_REGISTER_EQUALORNOT);
+        }
+    }
+
+    /**
+     * Records a conditional branch with the branch predictor
+     */
+    protected final void branch(int pc, boolean taken){
+        if(taken){
+            this.bp.branchTaken(pc);
+        } else {
+            this.bp.branchNotTaken(pc);
+        }
+    }
+
+    /**
+     * JMP: a jump to 64 means the ROM finished loading the program
+     * @return address
+     */
+    protected final int jump(int address){
+        if(address==64){
+            try {
+                this.bp.scanMemory();
+            } catch (MachineFaultException ex) {
+                Logger.getLogger(GeneratedCode.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * IN
+     * @return raw 20 bit word (0 when nothing was received)
+     */
+    protected final int input(int devid){
+        Word received = this.controlUnit.getIOController().input(devid);
+        return (received==null) ? 0 : (int)received.getBits();
+    }
+
+    /**
+     * OUT
+     * @param bits raw 20 bit register
+     */
+    protected final void output(int devid, int bits){
+        this.controlUnit.getIOController().output(devid, Word.valueOfBits(bits));
+    }
+
+    /**
+     * CHK
+     * @return raw 20 bit status
+     */
+    protected final int check(int devid){
+        int status = this.controlUnit.getIOController().checkStatus(devid);
+        Unit.checkRange(20, status);
+        return (int)(status & Unit.maskForSize(20));
+    }
+}
@@ -0,0 +1,45 @@
+package computersimulator.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Memory held in an int[] on the Java heap
+ */
+public class HeapMemoryStore implements IMemoryStore {
+
+    private final int[] words;
+
+    public HeapMemoryStore(int size) {
+        this.words = new int[size];
+    }
+
+    @Override
+    public int size() {
+        return this.words.length;
+    }
+
+    @Override
+    public int get(int index) {
+        return this.words[index];
+    }
+
+    @Override
+    public void set(int index, int bits) {
+        this.words[index] = bits;
+    }
+
+    @Override
+    public void read(int index, int[] block, int count) {
+        System.arraycopy(this.words, index, block, 0, count);
+    }
+
+    @Override
+    public void write(int index, int[] block, int count) {
+        System.arraycopy(block, 0, this.words, index, count);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.words, 0);
+    }
+}
@@ -0,0 +1,12 @@
+package computersimulator.cpu;
+
+/**
+ * One entry of the ControlUnit dispatch tables. Handlers are bound once, when
+ * the control unit is built, and looked up by opcode (and EA mode for the
+ * functional path) so that execution needs no switch per instruction.
+ * @throws java.lang.Exception
+ */
+public interface IInstructionHandler {
+
+    public void execute() throws Exception;
+}
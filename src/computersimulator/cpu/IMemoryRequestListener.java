@@ -0,0 +1,29 @@
+package computersimulator.cpu;
+
+/**
+ * Told by the MemoryControlUnit how a request it accepted ended. Every
+ * accepted request ends in exactly one of these calls, made during a memory
+ * clock cycle (or during resetMemory() for cancelled requests).
+ */
+public interface IMemoryRequestListener {
+
+    /**
+     * @param tag Tag the request was given when submitted
+     * @param bits Raw 20-bit word fetched, or the word stored
+     */
+    public void memoryRequestCompleted(int tag, int bits);
+
+    /**
+     * The address could not be accessed
+     * @param tag
+     * @param faultId MachineFaultException fault ID
+     */
+    public void memoryRequestFaulted(int tag, int faultId);
+
+    /**
+     * The request was dropped before it completed (memory reset, or a
+     * MAR/MBR request superseded by a new setMAR()/setMBR())
+     * @param tag
+     */
+    public void memoryRequestCancelled(int tag);
+}
@@ -0,0 +1,48 @@
+package computersimulator.cpu;
+
+/**
+ * Backing store of the MemoryControlUnit: a fixed number of words, each held
+ * as its raw 20 bits in the low bits of an int, addressed by index into the
+ * store (not by memory address, see MemoryControlUnit). Indexes are checked
+ * by the MemoryControlUnit before they reach the store.
+ */
+public interface IMemoryStore {
+
+    /**
+     * @return Number of words
+     */
+    public int size();
+
+    /**
+     * @param index
+     * @return Raw word
+     */
+    public int get(int index);
+
+    /**
+     * @param index
+     * @param bits Raw word
+     */
+    public void set(int index, int bits);
+
+    /**
+     * Copies count words starting at index into block
+     * @param index
+     * @param block
+     * @param count
+     */
+    public void read(int index, int[] block, int count);
+
+    /**
+     * Copies count words from block into the store starting at index
+     * @param index
+     * @param block
+     * @param count
+     */
+    public void write(int index, int[] block, int count);
+
+    /**
+     * Sets every word to zero
+     */
+    public void clear();
+}
@@ -0,0 +1,18 @@
+package computersimulator.cpu;
+
+/**
+ * Notified by the MemoryControlUnit whenever memory contents change, so that
+ * anything derived from memory (compiled code) can be dropped.
+ */
+public interface IMemoryWriteListener {
+
+    /**
+     * @param address Address that was written
+     */
+    public void memoryWritten(int address);
+
+    /**
+     * Every address was reset
+     */
+    public void memoryReset();
+}
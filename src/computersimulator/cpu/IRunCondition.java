@@ -0,0 +1,14 @@
+package computersimulator.cpu;
+
+/**
+ * Stop condition for Computer.runUntil(), checked before every clock cycle
+ * (instruction in RUNMODE_FAST, block in RUNMODE_BLOCK).
+ */
+public interface IRunCondition {
+
+    /**
+     * @param computer
+     * @return true to stop running
+     */
+    public boolean isMet(Computer computer);
+}
@@ -0,0 +1,161 @@
+package computersimulator.cpu;
+
+import computersimulator.components.MachineFaultException;
+
+/**
+ * Spots programs busy-waiting on a device, e.g. program1's keyboard poll:
+ *
+ *   L1: LDA(2,0,0,1)
+ *       CHK(0, keyboard)
+ *       TRR(0, 2)
+ *       JCC(3, L1)
+ *
+ * A poll loop is a straight-line run of instructions ending in a jump back
+ * to its first instruction that checks a device status and neither stores
+ * to memory nor does IN/OUT. Its only inputs are registers, memory and
+ * device status, so once an iteration comes back to the head from its own
+ * jump with R0-R3, X1-X3 and CC unchanged, no memory written and no device
+ * status change signalled, every further iteration does the same until a
+ * device changes. Observed at instruction boundaries (RUNMODE_FAST and
+ * RUNMODE_BLOCK).
+ */
+class IdleLoopDetector implements IMemoryWriteListener {
+
+    // Longest poll loop recognized (instructions)
+    private static final int MAX_LOOP_LENGTH = 16;
+    // Registers compared between iterations
+    private static final int[] WATCHED = {RegisterFile.R0, RegisterFile.R1, RegisterFile.R2, RegisterFile.R3,
+        RegisterFile.X1, RegisterFile.X2, RegisterFile.X3, RegisterFile.CC};
+
+    private final ControlUnit controlUnit;
+    private final MemoryControlUnit memory;
+    private final InputOutputController io;
+
+    // PC at the last observation, -1 if none
+    private int previous = -1;
+    // head of the loop being watched, -1 if none
+    private int head = -1;
+    // address of the jump back to head if head starts a poll loop, else -1
+    private int jump = -1;
+
+    // registers, device status changes and cycles when last at head
+    private final int[] snapshot = new int[IdleLoopDetector.WATCHED.length];
+    private long statusChanges;
+    private long cycles;
+
+    IdleLoopDetector(ControlUnit cu, MemoryControlUnit mem, InputOutputController io) {
+        this.controlUnit = cu;
+        this.memory = mem;
+        this.io = io;
+        this.memory.addWriteListener(this);
+    }
+
+    /**
+     * Called at an instruction boundary
+     * @param cycleCount Clock cycles run so far, not counting any skipped
+     * @return Clock cycles of one iteration if the program is spinning in a
+     *   poll loop that can only exit on a device status change, otherwise 0
+     * @throws MachineFaultException
+     */
+    long observe(long cycleCount) throws MachineFaultException {
+        RegisterFile registers = this.controlUnit.getRegisterFile();
+        int pc = registers.get(RegisterFile.PC);
+        int last = this.previous;
+        this.previous = pc;
+
+        if(pc!=this.head){
+            if(last < 0 || pc > last){
+                return 0;
+            }
+            // backward transfer: pc may head a loop
+            this.head = pc;
+            this.jump = this.findPollLoop(pc);
+            this.takeSnapshot(cycleCount);
+            return 0;
+        }
+        if(this.jump < 0){
+            return 0;
+        }
+        if(last < this.head || last > this.jump){ // came from outside the loop
+            this.takeSnapshot(cycleCount);
+            return 0;
+        }
+
+        boolean unchanged = (this.statusChanges==this.io.getStatusChanges());
+        for(int i=0;i<IdleLoopDetector.WATCHED.length && unchanged;i++){
+            unchanged = (registers.get(IdleLoopDetector.WATCHED[i])==this.snapshot[i]);
+        }
+        long iteration = cycleCount - this.cycles;
+        if(unchanged && iteration > 0){
+            this.cycles = cycleCount;
+            return iteration;
+        }
+        this.takeSnapshot(cycleCount);
+        return 0;
+    }
+
+    /**
+     * @return Device status changes seen by the last observation at the head
+     */
+    long getStatusChanges(){
+        return this.statusChanges;
+    }
+
+    private void takeSnapshot(long cycleCount){
+        RegisterFile registers = this.controlUnit.getRegisterFile();
+        for(int i=0;i<IdleLoopDetector.WATCHED.length;i++){
+            this.snapshot[i] = registers.get(IdleLoopDetector.WATCHED[i]);
+        }
+        this.statusChanges = this.io.getStatusChanges();
+        this.cycles = cycleCount;
+    }
+
+    /**
+     * @param start First instruction
+     * @return Address of the jump ending the poll loop at start, or -1
+     * @throws MachineFaultException
+     */
+    private int findPollLoop(int start) throws MachineFaultException {
+        boolean checks = false;
+        int end = Math.min(start + IdleLoopDetector.MAX_LOOP_LENGTH, MemoryControlUnit.getAddressableSize());
+        for(int address=start;address<end;address++){
+            int opcode = PredecodeCache.opcode(PredecodeCache.decode(this.memory.fetchBits(address)));
+            switch(opcode){
+                case ControlUnit.OPCODE_JZ:
+                case ControlUnit.OPCODE_JNE:
+                case ControlUnit.OPCODE_JCC:
+                case ControlUnit.OPCODE_JGE:
+                case ControlUnit.OPCODE_JMP:
+                    return checks ? address : -1;
+                case ControlUnit.OPCODE_CHK:
+                    checks = true;
+                    break;
+                case ControlUnit.OPCODE_STR:
+                case ControlUnit.OPCODE_STX:
+                case ControlUnit.OPCODE_IN:
+                case ControlUnit.OPCODE_OUT:
+                    return -1;
+                default:
+                    if(BlockEngine.endsBlock(opcode)){ // JSR, RFS, SOB, TRAP, HLT
+                        return -1;
+                    }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Forgets the loop being watched
+     * @param address
+     */
+    @Override
+    public void memoryWritten(int address) {
+        this.head = -1;
+    }
+
+    @Override
+    public void memoryReset() {
+        this.head = -1;
+        this.previous = -1;
+    }
+}
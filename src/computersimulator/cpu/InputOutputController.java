@@ -9,13 +9,16 @@ import computersimulator.io.*;
  * console printer and a pane that simulates a console keyboard.
  * @author george
  */
-public class InputOutputController {
+public class InputOutputController implements IStatusListener {
     
     private CardReader cardReader;
     private ConsoleKeyboard consoleKeyboard;
     private ConsolePrinter consolePrinter;
     
     private String filename;
+    
+    // Status changes signalled by devices so far
+    private long statusChanges = 0;
 
     public void setFilename(String filename) {
         this.filename = filename;
@@ -34,6 +37,7 @@ public class InputOutputController {
     public InputOutputController() {
         consolePrinter = new ConsolePrinter();
         consoleKeyboard = new ConsoleKeyboard();
+        consoleKeyboard.setStatusListener(this);
     }
     
     public final void resetIOController(){
@@ -84,4 +88,39 @@ public class InputOutputController {
         }            
     }
     
+    /**
+     * Wakes a simulation thread waiting in awaitStatusChange()
+     * @param device 
+     */
+    @Override
+    public synchronized void statusChanged(IIODevice device){
+        this.statusChanges++;
+        this.notifyAll();
+    }
+    
+    /**
+     * @return Number of status changes signalled by devices so far
+     */
+    public synchronized long getStatusChanges(){
+        return this.statusChanges;
+    }
+    
+    /**
+     * Blocks until a device signals a status change after the given count, or
+     * the timeout runs out.
+     * @param seen Value of getStatusChanges() the caller last acted on
+     * @param timeout Milliseconds
+     * @return true if a status change was signalled
+     * @throws InterruptedException 
+     */
+    public synchronized boolean awaitStatusChange(long seen, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while(this.statusChanges==seen && remaining > 0){
+            this.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return this.statusChanges!=seen;
+    }
+    
 }
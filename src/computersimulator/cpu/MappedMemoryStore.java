@@ -0,0 +1,235 @@
+package computersimulator.cpu;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory held in a memory image file mapped into the process, so that
+ * attaching a saved image is a mapping instead of a load and saving is a
+ * force(). The file is big-endian:
+ *
+ *   offset  0  magic "CSMI"
+ *           4  format version (1)
+ *           8  header size in bytes (offset of the first word)
+ *          12  word width in bits (20)
+ *          16  memory banks
+ *          20  cells per bank
+ *          24  processor state: R0-R3, X1-X3 (raw), CC (bit i = condition
+ *              i), PC
+ *          60  unused
+ *          64  words, one 32-bit slot each, in store order (bank by bank,
+ *              see MemoryControlUnit)
+ */
+public class MappedMemoryStore implements IMemoryStore {
+
+    public static final int MAGIC = 0x43534D49;
+    public static final int VERSION = 1;
+    public static final int WORD_BITS = 20;
+    // R0-R3, X1-X3, CC, PC
+    public static final int STATE_WORDS = 9;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int VERSION_OFFSET = 4;
+    private static final int HEADER_BYTES_OFFSET = 8;
+    private static final int WORD_BITS_OFFSET = 12;
+    private static final int BANKS_OFFSET = 16;
+    private static final int BANK_CELLS_OFFSET = 20;
+    private static final int STATE_OFFSET = 24;
+
+    // Clock cycles the ROM loader gets to load a deck (see main)
+    private static final long LOAD_CYCLE_LIMIT = 10000000;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final IntBuffer words;
+    private final int banks;
+    private final int bankCells;
+
+    private MappedMemoryStore(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.banks = buffer.getInt(MappedMemoryStore.BANKS_OFFSET);
+        this.bankCells = buffer.getInt(MappedMemoryStore.BANK_CELLS_OFFSET);
+        buffer.position(buffer.getInt(MappedMemoryStore.HEADER_BYTES_OFFSET));
+        this.words = buffer.slice().asIntBuffer();
+        buffer.position(0);
+    }
+
+    /**
+     * Creates (or overwrites) an image file of zero filled memory
+     * @param file
+     * @param banks
+     * @param bankCells
+     * @return store mapped to file
+     * @throws IOException
+     */
+    public static MappedMemoryStore create(File file, int banks, int bankCells) throws IOException {
+        long length = MappedMemoryStore.HEADER_BYTES + 4L * banks * bankCells;
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.setLength(length);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        buffer.putInt(0, MappedMemoryStore.MAGIC);
+        buffer.putInt(MappedMemoryStore.VERSION_OFFSET, MappedMemoryStore.VERSION);
+        buffer.putInt(MappedMemoryStore.HEADER_BYTES_OFFSET, MappedMemoryStore.HEADER_BYTES);
+        buffer.putInt(MappedMemoryStore.WORD_BITS_OFFSET, MappedMemoryStore.WORD_BITS);
+        buffer.putInt(MappedMemoryStore.BANKS_OFFSET, banks);
+        buffer.putInt(MappedMemoryStore.BANK_CELLS_OFFSET, bankCells);
+        return new MappedMemoryStore(file, buffer);
+    }
+
+    /**
+     * Maps an existing image file
+     * @param file
+     * @return store mapped to file
+     * @throws IOException Not an image, or a version or word width this
+     *   simulator does not support
+     */
+    public static MappedMemoryStore open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if(length < MappedMemoryStore.HEADER_BYTES){
+                throw new IOException(file + " is not a memory image");
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        if(buffer.getInt(0)!=MappedMemoryStore.MAGIC){
+            throw new IOException(file + " is not a memory image");
+        }
+        if(buffer.getInt(MappedMemoryStore.VERSION_OFFSET)!=MappedMemoryStore.VERSION){
+            throw new IOException(file + ": unsupported image version " + buffer.getInt(MappedMemoryStore.VERSION_OFFSET));
+        }
+        if(buffer.getInt(MappedMemoryStore.WORD_BITS_OFFSET)!=MappedMemoryStore.WORD_BITS){
+            throw new IOException(file + ": unsupported word width " + buffer.getInt(MappedMemoryStore.WORD_BITS_OFFSET));
+        }
+        int header = buffer.getInt(MappedMemoryStore.HEADER_BYTES_OFFSET);
+        long words = (long)buffer.getInt(MappedMemoryStore.BANKS_OFFSET) * buffer.getInt(MappedMemoryStore.BANK_CELLS_OFFSET);
+        if(header < MappedMemoryStore.HEADER_BYTES || words <= 0 || buffer.capacity()!=header + 4 * words){
+            throw new IOException(file + ": damaged memory image");
+        }
+        return new MappedMemoryStore(file, buffer);
+    }
+
+    /**
+     * @param file
+     * @return true if file starts like a memory image
+     */
+    public static boolean isImage(File file){
+        if(!file.isFile()){
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt()==MappedMemoryStore.MAGIC;
+        } catch(IOException ex){
+            return false;
+        }
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public int getBanks() {
+        return this.banks;
+    }
+
+    public int getBankCells() {
+        return this.bankCells;
+    }
+
+    /**
+     * @param state STATE_WORDS words: R0-R3, X1-X3, CC, PC
+     */
+    public void readState(int[] state){
+        for(int i=0;i<MappedMemoryStore.STATE_WORDS;i++){
+            state[i] = this.buffer.getInt(MappedMemoryStore.STATE_OFFSET + 4 * i);
+        }
+    }
+
+    /**
+     * @param state STATE_WORDS words: R0-R3, X1-X3, CC, PC
+     */
+    public void writeState(int[] state){
+        for(int i=0;i<MappedMemoryStore.STATE_WORDS;i++){
+            this.buffer.putInt(MappedMemoryStore.STATE_OFFSET + 4 * i, state[i]);
+        }
+    }
+
+    /**
+     * Writes changes through to the file
+     */
+    public void force(){
+        this.buffer.force();
+    }
+
+    @Override
+    public int size() {
+        return this.words.capacity();
+    }
+
+    @Override
+    public int get(int index) {
+        return this.words.get(index);
+    }
+
+    @Override
+    public void set(int index, int bits) {
+        this.words.put(index, bits);
+    }
+
+    @Override
+    public void read(int index, int[] block, int count) {
+        this.words.position(index);
+        this.words.get(block, 0, count);
+    }
+
+    @Override
+    public void write(int index, int[] block, int count) {
+        this.words.position(index);
+        this.words.put(block, 0, count);
+    }
+
+    @Override
+    public void clear() {
+        for(int i=0;i<this.words.capacity();i++){
+            this.words.put(i, 0);
+        }
+    }
+
+    /**
+     * Runs the IPL ROM on a deck until it transfers control to 64 and saves
+     * the machine as a memory image, ready for Computer.loadImage()
+     * @param args deck image
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2){
+            System.err.println("Usage: MappedMemoryStore deck image");
+            return;
+        }
+        Computer computer = new Computer();
+        computer.getIO().setFilename(args[0]);
+        computer.IPL();
+        computer.setRunmode(Computer.RUNMODE_FAST);
+        computer.runUntil(new IRunCondition() {
+            @Override
+            public boolean isMet(Computer computer) {
+                return computer.getCpu().getControlUnit().getRegisterFile().get(RegisterFile.PC)==CompiledProgram.ENTRY;
+            }
+        }, MappedMemoryStore.LOAD_CYCLE_LIMIT);
+        if(computer.getCpu().getControlUnit().getRegisterFile().get(RegisterFile.PC)!=CompiledProgram.ENTRY){
+            throw new IOException("Deck " + args[0] + " did not load");
+        }
+        computer.saveImage(new File(args[1]));
+        System.out.println("Wrote " + args[1]);
+    }
+}
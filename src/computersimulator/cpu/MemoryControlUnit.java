@@ -1,8 +1,7 @@
 package computersimulator.cpu;
 
 import computersimulator.components.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.ArrayList;
 
 /**
  * MemoryControlUnit - MemoryControlUnit implements a single port memory. 
@@ -10,17 +9,58 @@ import java.util.logging.Logger;
  In one cycle, it should accept an addressRaw from the MAR. It should then
  accept a value in the MBR to be stored in memory on the next cycle or 
  place a value in the MBR that is read from memory on the next cycle.
+ * 
+ * Underneath, memory serves tagged requests from a bounded queue through 
+ * PORTS ports (-Dcomputersimulator.memory.ports, default 1), each starting 
+ * one request per cycle. MAR/MBR operations are requests on PORT_REGISTERS;
+ * submitFetch/submitStore queue more, so instruction fetches, loads and 
+ * stores can be in flight together. Requests start in the order they were
+ * queued and each ends with a call to its IMemoryRequestListener.
+ * 
+ * Nothing polls memory. A client of the request API:
+ *   - submits with submitFetch/submitStore on a port below getPorts() and 
+ *     keeps the tag it gets back; -1 means the queue is full, so it submits
+ *     again on a later cycle
+ *   - gets exactly one listener call per tag from inside clockCycle() (or 
+ *     resetMemory()): completed with the word, faulted with the fault ID, 
+ *     or cancelled. Listeners must not block; they may submit new requests.
+ * The ControlUnit keeps using MAR/MBR, handing signalFetch/signalStore the
+ * listener that ends its wait.
  */
 public class MemoryControlUnit implements IClockCycle {
     
-    // Memory 2d Array 8 banks of 256 words each = 2048 addresses
-    private final Word[][] memory;    
+    // Memory: 8 banks of BANK_CELLS words each, one raw 20-bit word per 
+    // store index. Bank b occupies indexes b*BANK_CELLS .. (b+1)*BANK_CELLS-1.
+    private IMemoryStore memory;    
+    // store memory goes back to on reset, whatever was attached since
+    private final IMemoryStore ownStore;
     private final static int BANK_SIZE = 8;
-    private final static int BANK_CELLS = 256;
+    private final static int WORD_MASK = (int)Unit.maskForSize(20);
+    
+    // Words of memory: 2048 unless set with -Dcomputersimulator.memory.size
+    // (rounded up to whole 32 word cache blocks per bank). Up to 8192 is 
+    // reachable through the 13-bit MAR, anything beyond only through 
+    // fetchBits/storeBits.
+    private final static int DEFAULT_MEMORY_SIZE = 2048;
+    private final static int MAXIMUM_MEMORY_SIZE = 1 << 24;
+    private final static int MEMORY_SIZE = MemoryControlUnit.configuredMemorySize();
+    private final static int BANK_CELLS = MemoryControlUnit.MEMORY_SIZE / MemoryControlUnit.BANK_SIZE;
+    // Words addressable by the 13-bit MAR and PC
+    private final static int ADDRESS_SPACE = 1 << 13;
+    
+    // -Dcomputersimulator.memory.direct=true keeps memory off the Java heap
+    private final static boolean DIRECT_MEMORY = Boolean.getBoolean("computersimulator.memory.direct");
     
     
     private final static Boolean ENABLE_CACHE = false;  
     
+    // Requests started per clock cycle, one per port
+    private final static int PORTS = Math.max(1, Math.min(Integer.getInteger("computersimulator.memory.ports", 1), 32));
+    // Requests queued or in flight (-Dcomputersimulator.memory.requests)
+    private final static int REQUEST_QUEUE_DEPTH = Math.max(1, Integer.getInteger("computersimulator.memory.requests", 8));
+    // Port of the MAR/MBR requests
+    public final static int PORT_REGISTERS = 0;
+    
     // MAR	13 bits	Memory Address Register: holds the addressRaw of the word to be fetched from memory
     private Unit memoryAddressRegister;
     // MBR	20 bits	Memory Buffer Register: holds the word just fetched from or stored into memory
@@ -28,30 +68,230 @@ public class MemoryControlUnit implements IClockCycle {
     
     private Cache cache;    
     
+    // Virtual memory, null unless PagingUnit.ENABLED
+    private final PagingUnit paging;
+    
+    // Bank timing, null unless BankTimingModel.ENABLED
+    private final BankTimingModel timing;
+    
+    private final MemoryRequestQueue requests = new MemoryRequestQueue(MemoryControlUnit.REQUEST_QUEUE_DEPTH);
+    // MAR/MBR request in the queue (STATE_PENDING): tag (-1 if none) and kind
+    private int registerTag = -1;
+    private boolean registerStore;
+    // told when the MAR/MBR request ends, may be null
+    private IMemoryRequestListener registerListener;
+    
+    // Ends MAR/MBR requests: MBR <- word fetched, and the unit is free again
+    private final IMemoryRequestListener registerPort = new IMemoryRequestListener() {
+        @Override
+        public void memoryRequestCompleted(int tag, int bits) {
+            if(tag!=registerTag){
+                return; // superseded by setMAR/setMBR
+            }
+            registerTag = -1;
+            resetState();
+            if(!registerStore){
+                memoryBufferRegister = MemoryControlUnit.toWord(bits);
+            }
+            if(registerListener!=null){
+                registerListener.memoryRequestCompleted(tag, bits);
+            }
+        }
+
+        @Override
+        public void memoryRequestFaulted(int tag, int faultId) {
+            if(tag!=registerTag){
+                return;
+            }
+            registerTag = -1;
+            resetState();
+            if(registerListener!=null){
+                registerListener.memoryRequestFaulted(tag, faultId);
+            }
+        }
+
+        @Override
+        public void memoryRequestCancelled(int tag) {
+            if(tag==registerTag){
+                cancelRegisterRequest();
+            }
+        }
+    };
+    
+    // Decoded instructions per address, dropped when an address is stored to
+    private final PredecodeCache predecode;
+    
+    // Notified on every change to memory contents
+    private final ArrayList<IMemoryWriteListener> writeListeners = new ArrayList<>();
+    
     // state is used by the fetch/store controller to determine the current operation
     private int state;
     private final static int STATE_NONE = 0;    
     private final static int STATE_PRE_STORE = 1;
     private final static int STATE_PRE_FETCH = 2;
     private final static int STATE_WAITING = 3;
+    private final static int STATE_PENDING = 4; // MAR/MBR request queued
+    
+    // upper bound for completing a functional fetch/store
+    private final static int MAX_PENDING_CYCLES = 8;
     
 
     public MemoryControlUnit() {
-        memory = new Word[MemoryControlUnit.BANK_SIZE][MemoryControlUnit.BANK_CELLS];             
+        this(MemoryControlUnit.DIRECT_MEMORY ? new DirectMemoryStore(MemoryControlUnit.MEMORY_SIZE) 
+                : new HeapMemoryStore(MemoryControlUnit.MEMORY_SIZE));
+    }
+    
+    /**
+     * @param store Backing store of getMemoryMaxSize() words
+     */
+    public MemoryControlUnit(IMemoryStore store) {
+        if(store.size()!=MemoryControlUnit.MEMORY_SIZE){
+            throw new IllegalArgumentException("Memory store must hold " + MemoryControlUnit.MEMORY_SIZE + " words");
+        }
+        memory = store;             
+        ownStore = store;
+        if(PagingUnit.ENABLED){
+            paging = new PagingUnit(store, MemoryControlUnit.BANK_SIZE, MemoryControlUnit.DIRECT_MEMORY 
+                    ? new DirectMemoryStore(PagingUnit.VIRTUAL_SIZE) : new HeapMemoryStore(PagingUnit.VIRTUAL_SIZE));
+        } else {
+            paging = null;
+        }
+        timing = BankTimingModel.ENABLED ? new BankTimingModel(MemoryControlUnit.BANK_SIZE) : null;
+        predecode = new PredecodeCache(this, MemoryControlUnit.getAddressableSize());
         this.resetMemory();
     }
     
+    /**
+     * @return Words of memory
+     */
     public static int getMemoryMaxSize(){
-        return MemoryControlUnit.BANK_CELLS * MemoryControlUnit.BANK_SIZE;
+        return MemoryControlUnit.MEMORY_SIZE;
+    }
+    
+    /**
+     * @return Words of memory reachable through MAR (and so holding code),
+     *   the virtual address space when paging
+     */
+    public static int getAddressableSize(){
+        if(PagingUnit.ENABLED){
+            return PagingUnit.VIRTUAL_SIZE;
+        }
+        return Math.min(MemoryControlUnit.MEMORY_SIZE, MemoryControlUnit.ADDRESS_SPACE);
+    }
+    
+    /**
+     * @return Paging unit, null unless paging is enabled
+     */
+    public PagingUnit getPagingUnit(){
+        return paging;
+    }
+    
+    private static int configuredMemorySize(){
+        int granule = MemoryControlUnit.BANK_SIZE * Cache.BLOCK_SIZE;
+        int size = Integer.getInteger("computersimulator.memory.size", MemoryControlUnit.DEFAULT_MEMORY_SIZE);
+        size = Math.max(MemoryControlUnit.DEFAULT_MEMORY_SIZE, Math.min(size, MemoryControlUnit.MAXIMUM_MEMORY_SIZE));
+        return (size + granule - 1) / granule * granule;
+    }
+    
+    /**
+     * @return Backing store holding the words of memory
+     */
+    public IMemoryStore getStore(){
+        return memory;
+    }
+    
+    /**
+     * Replaces the backing store, e.g. with a MappedMemoryStore over a 
+     * memory image. Memory takes on the contents of store; MAR, MBR and any 
+     * operation in progress are left alone. resetMemory() goes back to the
+     * original store.
+     * @param store Backing store of getMemoryMaxSize() words
+     */
+    public void attach(IMemoryStore store){
+        if(store.size()!=MemoryControlUnit.MEMORY_SIZE){
+            throw new IllegalArgumentException("Memory store must hold " + MemoryControlUnit.MEMORY_SIZE + " words");
+        }
+        if(this.paging!=null){
+            throw new IllegalStateException("Memory stores cannot be replaced while paging");
+        }
+        this.memory = store;
+        this.signalReplaced();
+    }
+    
+    /**
+     * All of memory may have changed: drop the cache and predecoded 
+     * instructions and tell the write listeners
+     */
+    private void signalReplaced(){
+        cache = new Cache(this);
+        predecode.invalidateAll();
+        for(IMemoryWriteListener listener : this.writeListeners){
+            listener.memoryReset();
+        }
+    }
+    
+    /**
+     * @return Bank timing model, null unless enabled
+     */
+    public BankTimingModel getBankTimingModel(){
+        return timing;
+    }
+    
+    /**
+     * @return Memory ports, each starting one request per clock cycle
+     */
+    public static int getPorts(){
+        return MemoryControlUnit.PORTS;
+    }
+    
+    /**
+     * @return Requests queued or in flight
+     */
+    public int getQueuedRequests(){
+        return this.requests.size();
+    }
+    
+    /**
+     * @return Memory banks
+     */
+    public static int getBanks(){
+        return MemoryControlUnit.BANK_SIZE;
+    }
+    
+    /**
+     * @return Cells per memory bank
+     */
+    public static int getBankCells(){
+        return MemoryControlUnit.BANK_CELLS;
+    }
+    
+    public PredecodeCache getPredecodeCache(){
+        return predecode;
+    }
+    
+    public void addWriteListener(IMemoryWriteListener listener){
+        this.writeListeners.add(listener);
+    }
+    
+    public void removeWriteListener(IMemoryWriteListener listener){
+        this.writeListeners.remove(listener);
     }
     
     
     public final void resetMemory(){
+        this.cancelRequests();
+        this.memory = this.ownStore; // detach any memory image, leaving it as it was
         initializeMemoryToZero(); // Upon powering up, set all elements of memory to zero
-        cache = new Cache(this);
+        if(this.paging!=null){
+            this.paging.reset();
+        }
+        if(this.timing!=null){
+            this.timing.reset();
+        }
+        this.signalReplaced();
         
-        memoryAddressRegister = new Unit(13);
-        memoryBufferRegister = new Word();
+        memoryAddressRegister = Unit.valueOf(13, 0);
+        memoryBufferRegister = Word.valueOf(0);
         
         this.resetState();
         
@@ -71,7 +311,7 @@ public class MemoryControlUnit implements IClockCycle {
                 if(MemoryControlUnit.ENABLE_CACHE){
                     this.cacheStoreAddressOperation();
                 } else {
-                    this.storeAddressInMemoryOperation();
+                    this.submitRegisterRequest(true);
                 }
                 break;
                 
@@ -79,7 +319,7 @@ public class MemoryControlUnit implements IClockCycle {
                 if(MemoryControlUnit.ENABLE_CACHE){
                     this.cacheFetchAddressOperation();
                 } else {
-                    this.fetchAddressOperation();
+                    this.submitRegisterRequest(false);
                 }
                 break;
                             
@@ -88,17 +328,239 @@ public class MemoryControlUnit implements IClockCycle {
                 
                 break;
         }
+        if(this.requests.size() > 0){
+            this.issueRequests();
+        }
+        if(this.timing!=null){
+            this.timing.clockCycle();
+            this.completeTimedRequests();
+        }
     }   
     
+    /**
+     * Queues a fetch
+     * @param port 0 .. getPorts()-1
+     * @param address
+     * @param listener Gets the word fetched
+     * @return tag, or -1 if the queue is full (try again next cycle)
+     */
+    public int submitFetch(int port, int address, IMemoryRequestListener listener){
+        return this.submit(port, false, address, 0, listener);
+    }
+    
+    /**
+     * Queues a store
+     * @param port 0 .. getPorts()-1
+     * @param address
+     * @param bits Raw value (low 20 bits are stored)
+     * @param listener Told once the word is stored
+     * @return tag, or -1 if the queue is full (try again next cycle)
+     */
+    public int submitStore(int port, int address, int bits, IMemoryRequestListener listener){
+        return this.submit(port, true, address, bits & MemoryControlUnit.WORD_MASK, listener);
+    }
+    
+    private int submit(int port, boolean store, int address, int bits, IMemoryRequestListener listener){
+        if(port < 0 || port >= MemoryControlUnit.PORTS){
+            throw new IllegalArgumentException("No memory port " + port);
+        }
+        if(listener==null){
+            throw new IllegalArgumentException("Memory requests need a listener");
+        }
+        return this.requests.add(port, store, address, bits, listener);
+    }
+    
+    /**
+     * Queues the operation signalled on MAR/MBR (STATE_PENDING until it 
+     * ends). Tries again next cycle if the queue is full. With nothing else
+     * queued and no bank timing it would start and complete right away, so
+     * it is served directly.
+     * @param store 
+     * @throws MachineFaultException ILLEGAL_MEMORY_ADDRESS, PAGE_FAULT (ends the operation)
+     */
+    private void submitRegisterRequest(boolean store) throws MachineFaultException {
+        if(this.timing==null && this.requests.size()==0){
+            this.serveRegisterRequest(store);
+            return;
+        }
+        int tag = this.requests.add(MemoryControlUnit.PORT_REGISTERS, store, this.memoryAddressRegister.getUnsignedValue(), 
+                (int)this.memoryBufferRegister.getBits() & MemoryControlUnit.WORD_MASK, this.registerPort);
+        if(tag >= 0){
+            this.registerTag = tag;
+            this.registerStore = store;
+            this.state = MemoryControlUnit.STATE_PENDING;
+        }
+    }
+    
+    /**
+     * MAR/MBR operation done in place, as if queued, started and completed
+     * @param store
+     * @throws MachineFaultException ILLEGAL_MEMORY_ADDRESS, PAGE_FAULT (ends the operation)
+     */
+    private void serveRegisterRequest(boolean store) throws MachineFaultException {
+        int tag = this.requests.nextTag();
+        IMemoryRequestListener listener = this.registerListener;
+        this.resetState();
+        int address = this.memoryAddressRegister.getUnsignedValue();
+        int index;
+        try {
+            index = this.indexOf(address, store);
+        } catch(MachineFaultException fault){
+            if(listener!=null){
+                listener.memoryRequestFaulted(tag, fault.getFaultID());
+            }
+            throw fault;
+        }
+        int bits;
+        if(store){
+            bits = (int)this.memoryBufferRegister.getBits() & MemoryControlUnit.WORD_MASK;
+            this.memory.set(index, bits);
+            this.signalWritten(address);
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_STORE, address, bits);
+            }
+        } else {
+            bits = this.memory.get(index);
+            this.memoryBufferRegister = MemoryControlUnit.toWord(bits);
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_FETCH, address, bits);
+            }
+        }
+        if(listener!=null){
+            listener.memoryRequestCompleted(tag, bits);
+        }
+    }
+    
+    /**
+     * Starts queued requests, oldest first and at most one per port. Issue 
+     * is in order (it stops at the first request that cannot start this 
+     * cycle), so memory is read and written in the order requests were 
+     * queued. Without bank timing a request completes as it starts; with it
+     * a fetch completes once its bank has served it, while stores are posted.
+     * @throws MachineFaultException the fault of a MAR/MBR request, after 
+     *   its listener was told
+     */
+    private void issueRequests() throws MachineFaultException {
+        int portsUsed = 0;
+        int i = 0;
+        while(i < this.requests.size()){
+            if(this.requests.isIssued(i)){
+                i++;
+                continue;
+            }
+            int port = 1 << this.requests.getPort(i);
+            if((portsUsed & port)!=0){
+                return;
+            }
+            boolean store = this.requests.isStore(i);
+            int address = this.requests.getAddress(i);
+            int index;
+            try {
+                index = this.indexOf(address, store);
+            } catch(MachineFaultException fault){
+                int tag = this.requests.getTag(i);
+                IMemoryRequestListener listener = this.requests.getListener(i);
+                boolean register = (tag==this.registerTag);
+                this.requests.remove(i);
+                listener.memoryRequestFaulted(tag, fault.getFaultID());
+                if(register){
+                    throw fault;
+                }
+                continue;
+            }
+            int timingId = -1;
+            if(this.timing!=null){
+                timingId = this.timing.submit(index / MemoryControlUnit.BANK_CELLS, index % MemoryControlUnit.BANK_CELLS);
+                if(timingId < 0){
+                    return; // banks are backed up, try again next cycle
+                }
+            }
+            portsUsed |= port;
+            int bits;
+            if(store){
+                bits = this.requests.getBits(i);
+                this.memory.set(index, bits);
+                this.signalWritten(address);
+                if(Trace.ENABLED){
+                    Trace.record(Trace.MEMORY_STORE, address, bits);
+                }
+                timingId = -1; // posted
+            } else {
+                bits = this.memory.get(index);
+            }
+            if(timingId < 0){
+                this.complete(i, bits);
+            } else {
+                this.requests.issue(i, bits, timingId);
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * Completes the fetches their banks have served
+     */
+    private void completeTimedRequests(){
+        int i = 0;
+        while(i < this.requests.size()){
+            if(this.requests.isIssued(i) && this.timing.isDone(this.requests.getTimingId(i))){
+                this.complete(i, this.requests.getBits(i));
+            } else {
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * Takes request i off the queue and tells its listener
+     * @param i
+     * @param bits Word fetched or stored
+     */
+    private void complete(int i, int bits){
+        int tag = this.requests.getTag(i);
+        IMemoryRequestListener listener = this.requests.getListener(i);
+        if(Trace.ENABLED && !this.requests.isStore(i)){
+            Trace.record(Trace.MEMORY_FETCH, this.requests.getAddress(i), bits);
+        }
+        this.requests.remove(i);
+        listener.memoryRequestCompleted(tag, bits);
+    }
+    
+    /**
+     * Drops every request, telling their listeners
+     */
+    private void cancelRequests(){
+        while(this.requests.size() > 0){
+            int tag = this.requests.getTag(0);
+            IMemoryRequestListener listener = this.requests.getListener(0);
+            this.requests.remove(0);
+            listener.memoryRequestCancelled(tag);
+        }
+        this.registerListener = null;
+    }
+    
+    /**
+     * The MAR/MBR request, if one is queued, no longer concerns MAR/MBR: it 
+     * still runs, but its listener is told it was cancelled and MBR is left
+     * alone
+     */
+    private void cancelRegisterRequest(){
+        if(this.registerTag >= 0){
+            int tag = this.registerTag;
+            this.registerTag = -1;
+            if(this.registerListener!=null){
+                this.registerListener.memoryRequestCancelled(tag);
+            }
+        }
+    }
+    
 
     /**
      * Set the Memory Buffer Register (used in store)
      * @param dataUnit The value to store (converted to Word)
      */
     public void setMBR(Unit dataUnit){
-        Word res = new Word();
-        res.setValueBinary(dataUnit.getBinaryString());
-        this.setMBR(res);
+        this.setMBR(Word.valueOf(dataUnit));
     }
     
     /**
@@ -106,17 +568,18 @@ public class MemoryControlUnit implements IClockCycle {
      * @param dataWord The value to store
      */
     public void setMBR(Word dataWord){
+        this.cancelRegisterRequest();
         this.state = MemoryControlUnit.STATE_WAITING;
-        this.memoryBufferRegister = Word.cloneWord(dataWord);
+        this.memoryBufferRegister = Word.snapshot(dataWord);
         
     }
     
     /**
-     *
+     * MBR always holds an immutable Word, so it is returned without a copy
      * @return memoryBufferRegister
      */
     public Word getMBR(){
-        return Word.cloneWord(memoryBufferRegister);
+        return memoryBufferRegister;
     }
     
     /**
@@ -124,70 +587,114 @@ public class MemoryControlUnit implements IClockCycle {
      * @param addressUnit The addressRaw to get/store
      */    
     public void setMAR(Unit addressUnit){
+        this.cancelRegisterRequest();
         this.state = MemoryControlUnit.STATE_WAITING;
-        this.memoryAddressRegister = Unit.cloneUnit(addressUnit);
+        this.memoryAddressRegister = Unit.snapshot(addressUnit);
     }   
 
     /**
-     *
+     * MAR always holds an immutable Unit, so it is returned without a copy
      * @return memoryAddressRegister
      */
     public Unit getMAR(){
-        return Unit.cloneUnit(memoryAddressRegister);
+        return memoryAddressRegister;
     }
     
     
-    /**
-     * Check to see if we're mid-operation this clock cycle
-     * @return true/false 
-     */
-    public boolean isBusy(){
-        switch(state){          
-            case MemoryControlUnit.STATE_NONE:
-                return false;        
-            case MemoryControlUnit.STATE_WAITING: 
-                Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "Memory error. Likely forgot to signal which operation.");
-            default:
-                return true;
-        }    
+    public void signalFetch(){      
+       this.signalFetch(null);
     }
     
-    public void signalFetch(){      
+    public void signalStore(){
+       this.signalStore(null);
+    }
+    
+    /**
+     * MBR <- M(MAR) on the next clock cycle (or later, when queued)
+     * @param listener Told when the fetch ends, may be null
+     */
+    public void signalFetch(IMemoryRequestListener listener){      
+       this.registerListener = listener;
        this.state = MemoryControlUnit.STATE_PRE_FETCH;
     }
     
-    public void signalStore(){
+    /**
+     * M(MAR) <- MBR on the next clock cycle (or later, when queued)
+     * @param listener Told when the store ends, may be null
+     */
+    public void signalStore(IMemoryRequestListener listener){
+       this.registerListener = listener;
        this.state = MemoryControlUnit.STATE_PRE_STORE;       
     }
     
+    /**
+     * Functional fetch (Computer.RUNMODE_FAST): MAR <- address, MBR <- M(MAR)
+     * completed in this call instead of on the next clock cycle.
+     * @param address
+     * @return MBR
+     * @throws MachineFaultException 
+     */
+    public Word fetchImmediately(Unit address) throws MachineFaultException {
+        this.setMAR(address);
+        this.signalFetch();
+        this.completePendingOperation();
+        return this.memoryBufferRegister;
+    }
+    
+    /**
+     * Functional store (Computer.RUNMODE_FAST): MAR <- address, MBR <- value,
+     * M(MAR) <- MBR completed in this call instead of on the next clock cycle.
+     * @param address
+     * @param value
+     * @throws MachineFaultException 
+     */
+    public void storeImmediately(Unit address, Word value) throws MachineFaultException {
+        this.setMAR(address);
+        this.setMBR(value);
+        this.signalStore();
+        this.completePendingOperation();
+    }
+    
+    /**
+     * MAR <- address, MBR <- value for a fetch whose result is already known 
+     * (instructions of a compiled block). Memory itself is not accessed.
+     * @param address immutable address
+     * @param value immutable contents of address
+     */
+    public void latchFetch(Unit address, Word value){
+        this.memoryAddressRegister = address;
+        this.memoryBufferRegister = value;
+        this.resetState();
+    }
+    
+    /**
+     * Runs the fetch/store controller until the signaled operation is done
+     * (a cache miss takes more than one cycle). Gives up after a few cycles,
+     * leaving the unit busy exactly like the clocked path would be.
+     * @throws MachineFaultException 
+     */
+    private void completePendingOperation() throws MachineFaultException {
+        int cycles = 0;
+        int limit = (this.timing==null) ? MemoryControlUnit.MAX_PENDING_CYCLES : this.timing.getMaxLatency();
+        while(this.state != MemoryControlUnit.STATE_NONE && cycles < limit){
+            this.clockCycle();
+            cycles++;
+        }
+    }
+    
        
     
     /**
      * Calculates relative addressRaw for memory location from MAR
      * @param address
-     * @throws computersimulator.components.MachineFaultException
-     * @TODO: 8191 words are addressable via MAR despite only 2048 exist. (see pg 16)... means we need virtual memory?
+     * @throws computersimulator.components.MachineFaultException ILLEGAL_MEMORY_ADDRESS past the end of memory
      * @return Array{bankIndex,cellIndex}
      */
     public int[] calculateActualMemoryLocation(Unit address) throws MachineFaultException {
-        // Load the addressRaw in MAR
-        int addressRaw = address.getUnsignedValue();
-                
-        // Decode the Address in MAR      
-        
-        // Stripe across memory banks to simulate efficient read/write by data line
-        int bankIndex = (int)(addressRaw % MemoryControlUnit.BANK_SIZE);
-        int cellIndex = (int)Math.floor(addressRaw /MemoryControlUnit.BANK_SIZE);
-               
-        Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "Calculated Memory Address: {0} as Bank: {1}, Cell: {2}", new Object[]{addressRaw, bankIndex, cellIndex});
-        
-        if(bankIndex > MemoryControlUnit.BANK_SIZE){
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "Memory index[{0}][{1}] out of bounds. (Memory Size: [{2}][{3}])", new Object[]{bankIndex, cellIndex, MemoryControlUnit.BANK_SIZE, MemoryControlUnit.BANK_CELLS});
-            throw new MachineFaultException(MachineFaultException.ILLEGAL_MEMORY_ADDRESS);       
-        }
+        int index = this.indexOf(address.getUnsignedValue(), false);
         
         // Return the result index array
-        int[] result = {bankIndex,cellIndex};        
+        int[] result = {index / MemoryControlUnit.BANK_CELLS, index % MemoryControlUnit.BANK_CELLS};        
         return result;
     }
     
@@ -198,14 +705,26 @@ public class MemoryControlUnit implements IClockCycle {
      * @throws computersimulator.components.MachineFaultException
      */
     public Word engineerFetchByMemoryLocation(Unit address) throws MachineFaultException{       
-        Word value;
+        return MemoryControlUnit.toWord(this.fetchBits(address.getUnsignedValue()));
+    }
+    
+    /**
+     * Engineering console function to read directly from memory without
+     * creating a Word
+     * @param address
+     * @return Raw 20-bit memory value
+     * @throws computersimulator.components.MachineFaultException
+     */
+    public int fetchBits(int address) throws MachineFaultException{       
+        int value;
         if(MemoryControlUnit.ENABLE_CACHE){
-            value = cache.engineerFetchWord(address);
+            value = (int)cache.engineerFetchWord(Unit.valueOf(13, address)).getBits() & MemoryControlUnit.WORD_MASK;
         } else {
-            int[] addr = this.calculateActualMemoryLocation(address);
-            value = new Word(this.memory[addr[0]][addr[1]]);        
+            value = this.memory.get(this.indexOf(address, false));        
+        }
+        if(Trace.ENABLED){
+            Trace.record(Trace.ENGINEER_FETCH, address, value);
         }
-        Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "ENGINEER: Fetch Addr: {0}  ---  Value: {1}", new Object[]{address.getUnsignedValue(), value});        
         
         return value;
     }
@@ -217,13 +736,27 @@ public class MemoryControlUnit implements IClockCycle {
      * @throws computersimulator.components.MachineFaultException
      */
     public void engineerSetMemoryLocation(Unit address, Word value) throws MachineFaultException{
+        this.storeBits(address.getUnsignedValue(), (int)value.getBits());
+    }       
+    
+    /**
+     * Engineering console function to write directly to memory without
+     * creating a Word
+     * @param address
+     * @param bits Raw value (low 20 bits are stored)
+     * @throws computersimulator.components.MachineFaultException
+     */
+    public void storeBits(int address, int bits) throws MachineFaultException{
+        int value = bits & MemoryControlUnit.WORD_MASK;
         if(MemoryControlUnit.ENABLE_CACHE){
-            cache.engineerStoreWord(address, value);
+            cache.engineerStoreWord(Unit.valueOf(13, address), MemoryControlUnit.toWord(value));
         } else {
-            int[] addr = this.calculateActualMemoryLocation(address);    
-            this.memory[addr[0]][addr[1]] = new Word(value);
+            this.memory.set(this.indexOf(address, true), value);
+        }
+        this.signalWritten(address);
+        if(Trace.ENABLED){
+            Trace.record(Trace.ENGINEER_STORE, address, value);
         }
-        Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "ENGINEER: Set Addr: {0} to  Value: {1}", new Object[]{address.getUnsignedValue(), value});        
     }       
     
     /**
@@ -235,7 +768,9 @@ public class MemoryControlUnit implements IClockCycle {
         if(result!=null){
             this.memoryBufferRegister = result;
             this.resetState();
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Fetch MAR({0}): {1}", new Object[]{this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister});
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_FETCH, this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister.getBits());
+            }
         } // else cache miss, try next time        
     }    
     
@@ -246,12 +781,27 @@ public class MemoryControlUnit implements IClockCycle {
     private void cacheStoreAddressOperation() throws MachineFaultException{
         Boolean result = cache.storeWord(memoryAddressRegister,memoryBufferRegister);
         if(result==true){            
+            this.signalWritten(this.memoryAddressRegister.getUnsignedValue());
             this.resetState();
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Memory Set - MAR({0}) to {1}", new Object[]{this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister});
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_STORE, this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister.getBits());
+            }
         } // else cache miss, try next time        
     }  
     
     
+    /**
+     * A memory cell changed: drop its predecoded instruction and tell the 
+     * write listeners
+     * @param address 
+     */
+    private void signalWritten(int address){
+        this.predecode.invalidate(address);
+        for(int i=0;i<this.writeListeners.size();i++){
+            this.writeListeners.get(i).memoryWritten(address);
+        }
+    }
+    
     /**
      * Reset state
      */    
@@ -263,11 +813,47 @@ public class MemoryControlUnit implements IClockCycle {
      * Initialize memory banks to zero filled words. 
      */   
     private void initializeMemoryToZero(){
-        for (Word[] bank : this.memory) {
-            for (int i = 0; i < bank.length; i++) {
-                bank[i] = new Word(0); // set to zero
+        this.memory.clear();
+    }
+    
+    /**
+     * Index of an address in memory: addresses are striped across the 
+     * banks, bank = address % 8 and cell = address / 8.
+     * @param address
+     * @return index into memory
+     * @throws MachineFaultException ILLEGAL_MEMORY_ADDRESS past the end of memory
+     */
+    private static int physicalIndex(int address) throws MachineFaultException {
+        if(address < 0 || address >= MemoryControlUnit.MEMORY_SIZE){
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_BAD_ADDRESS, address);
             }
+            throw new MachineFaultException(MachineFaultException.ILLEGAL_MEMORY_ADDRESS);
         }
+        return (address % MemoryControlUnit.BANK_SIZE) * MemoryControlUnit.BANK_CELLS + address / MemoryControlUnit.BANK_SIZE;
+    }
+    
+    /**
+     * Index of an address in memory, translated by the paging unit first
+     * when paging
+     * @param address
+     * @param store true for a store
+     * @return index into memory
+     * @throws MachineFaultException ILLEGAL_MEMORY_ADDRESS, PAGE_FAULT
+     */
+    private int indexOf(int address, boolean store) throws MachineFaultException {
+        if(this.paging!=null){
+            address = this.paging.translate(address, store);
+        }
+        return MemoryControlUnit.physicalIndex(address);
+    }
+    
+    /**
+     * @param bits Raw 20-bit value
+     * @return immutable Word
+     */
+    private static Word toWord(int bits){
+        return Word.valueOfBits(bits);
     }
     
     /**
@@ -296,16 +882,9 @@ public class MemoryControlUnit implements IClockCycle {
      * @param count
      * @return cache block
      */
-    public Word[] getCacheBlock(Integer[] blockStart, int count){
-    
-        Word[] results = new Word[count];
-        
-        int j=0;
-        for(int i=blockStart[1];i<blockStart[1]+count;i++){
-            results[j] = new Word(this.memory[blockStart[0]][i]);
-            j++;
-        }
-        
+    public int[] getCacheBlock(Integer[] blockStart, int count){
+        int[] results = new int[count];
+        this.memory.read(blockStart[0] * MemoryControlUnit.BANK_CELLS + blockStart[1], results, count);
         return results;
     }
     
@@ -314,59 +893,11 @@ public class MemoryControlUnit implements IClockCycle {
      * @param block
      * @param blockStart 
      */
-    public void writeCacheBlock(Word[] block, Integer[] blockStart){
-        int j=0;
+    public void writeCacheBlock(int[] block, Integer[] blockStart){
+        this.memory.write(blockStart[0] * MemoryControlUnit.BANK_CELLS + blockStart[1], block, block.length);
         for(int i=blockStart[1];i<blockStart[1]+block.length;i++){
-            this.memory[blockStart[0]][i] = new Word(block[j]);
-            j++;
+            this.signalWritten(i * MemoryControlUnit.BANK_SIZE + blockStart[0]);
         }
     }
     
-    
-    /**
-     * fetchAddressOperation - This fetches an addressRaw specified by MAR, and
- puts the contents of that memory location into MBR. 
-     * Private because it is called by clockCycle.
-     */    
-    private void fetchAddressOperation(){
-        try {
-            // Load and Decode the Address in MAR
-            int[] addr = this.calculateActualMemoryLocation(this.memoryAddressRegister);
-            int bankIndex = addr[0]; 
-            int cellIndex = addr[1]; 
-        
-            // Copy the contents of that memory location into the MBR            
-            this.memoryBufferRegister = new Word(this.memory[bankIndex][cellIndex]);            
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Fetch MAR({0}): {1}", new Object[]{this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister});
-            this.resetState();
-        } catch(MachineFaultException e){
-            //@TODO: Handle bad addressRaw (virtual memory?)
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Bad Address: {0} -> {1}", new Object[]{this.memoryAddressRegister, e.getMessage()});
-        }
-        
-        
-    }
-    
-    /**
-     * storeAddressInMemoryOperation - This stores a MBR value into memory at
-     * the location specified by MAR.
-     * Private because it is called by clockCycle.
-     */
-    private void storeAddressInMemoryOperation(){   
-        try {        
-            // Load and Decode the Address in MAR
-            int[] addr = this.calculateActualMemoryLocation(this.memoryAddressRegister);
-            int bankIndex = addr[0]; 
-            int cellIndex = addr[1];        
-
-            //Copy the value from MDR to Memory                
-            this.memory[bankIndex][cellIndex] = new Word(this.memoryBufferRegister);
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Memory Set - MAR({0}) to {1}", new Object[]{this.memoryAddressRegister.getUnsignedValue(), this.memoryBufferRegister});
-            this.resetState();
-        } catch(MachineFaultException e){
-            //@TODO: Handle bad addressRaw (virtual memory?)
-            Logger.getLogger(MemoryControlUnit.class.getName()).log(Level.CONFIG, "-- Bad Address: {0} -> {1}", new Object[]{this.memoryAddressRegister, e.getMessage()});
-        }                
-    }    
-    
 }
@@ -0,0 +1,148 @@
+package computersimulator.cpu;
+
+/**
+ * Bounded queue of tagged memory requests for the MemoryControlUnit, oldest
+ * first. A request stays queued until it completes; once issued to memory
+ * it is marked with the bank timing request id (-1 without timing).
+ */
+class MemoryRequestQueue {
+
+    private final int[] tag;
+    private final int[] port;
+    private final boolean[] store;
+    private final int[] address;
+    // word to store, or word fetched once issued
+    private final int[] bits;
+    private final IMemoryRequestListener[] listener;
+    private final boolean[] issued;
+    private final int[] timingId;
+    private int size;
+
+    private int nextTag;
+
+    /**
+     * @param depth Requests the queue holds
+     */
+    MemoryRequestQueue(int depth) {
+        this.tag = new int[depth];
+        this.port = new int[depth];
+        this.store = new boolean[depth];
+        this.address = new int[depth];
+        this.bits = new int[depth];
+        this.listener = new IMemoryRequestListener[depth];
+        this.issued = new boolean[depth];
+        this.timingId = new int[depth];
+    }
+
+    /**
+     * @param port
+     * @param store true for a store
+     * @param address
+     * @param bits Word to store
+     * @param listener
+     * @return tag, or -1 if the queue is full
+     */
+    int add(int port, boolean store, int address, int bits, IMemoryRequestListener listener){
+        if(this.size==this.tag.length){
+            return -1;
+        }
+        int id = this.nextTag();
+        this.tag[this.size] = id;
+        this.port[this.size] = port;
+        this.store[this.size] = store;
+        this.address[this.size] = address;
+        this.bits[this.size] = bits;
+        this.listener[this.size] = listener;
+        this.issued[this.size] = false;
+        this.timingId[this.size] = -1;
+        this.size++;
+        return id;
+    }
+
+    /**
+     * @return a new tag, for a request served without queueing it
+     */
+    int nextTag(){
+        int id = this.nextTag;
+        this.nextTag = (this.nextTag + 1) & Integer.MAX_VALUE;
+        return id;
+    }
+
+    /**
+     * Removes request i, keeping the others in order
+     * @param i
+     */
+    void remove(int i){
+        this.size--;
+        for(int j=i;j<this.size;j++){
+            this.tag[j] = this.tag[j + 1];
+            this.port[j] = this.port[j + 1];
+            this.store[j] = this.store[j + 1];
+            this.address[j] = this.address[j + 1];
+            this.bits[j] = this.bits[j + 1];
+            this.listener[j] = this.listener[j + 1];
+            this.issued[j] = this.issued[j + 1];
+            this.timingId[j] = this.timingId[j + 1];
+        }
+        this.listener[this.size] = null;
+    }
+
+    /**
+     * Marks request i as issued to memory
+     * @param i
+     * @param bits Word fetched (or stored)
+     * @param timingId Bank timing request id, -1 if it already completed
+     */
+    void issue(int i, int bits, int timingId){
+        this.issued[i] = true;
+        this.bits[i] = bits;
+        this.timingId[i] = timingId;
+    }
+
+    /**
+     * Empties the queue. Tags keep counting, so old tags are never reused
+     * soon after a reset.
+     */
+    void clear(){
+        for(int i=0;i<this.size;i++){
+            this.listener[i] = null;
+        }
+        this.size = 0;
+    }
+
+    int size(){
+        return this.size;
+    }
+
+    int getTag(int i){
+        return this.tag[i];
+    }
+
+    int getPort(int i){
+        return this.port[i];
+    }
+
+    boolean isStore(int i){
+        return this.store[i];
+    }
+
+    int getAddress(int i){
+        return this.address[i];
+    }
+
+    int getBits(int i){
+        return this.bits[i];
+    }
+
+    IMemoryRequestListener getListener(int i){
+        return this.listener[i];
+    }
+
+    boolean isIssued(int i){
+        return this.issued[i];
+    }
+
+    int getTimingId(int i){
+        return this.timingId[i];
+    }
+}
@@ -0,0 +1,274 @@
+package computersimulator.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Microcode ROM for the execute phase of the micro-stepped ControlUnit.
+ * Every opcode has a microprogram: a run of micro-op words in ROM that
+ * ControlUnit.executeInstructionRegister() steps through with an int micro-PC.
+ *
+ * A word is a micro-op, an optional operand (an address, ALU control or
+ * branch condition) and the END flag, which closes the clock cycle after
+ * the micro-op. WAIT holds the micro-PC (a stalled cycle) while memory is
+ * busy. Every microprogram is followed by COMPLETE, the PC update cycle.
+ *
+ * Programs keep the step counts of the hand-written micro states they
+ * replaced; ControlUnit.estimateCycles() is derived from them.
+ */
+final class Microcode {
+
+    // Word layout: micro-op (bits 0-7), END (bit 8), operand (bits 16-31)
+    static final int OP_MASK = 0xFF;
+    static final int END = 1 << 8;
+    private static final int OPERAND_SHIFT = 16;
+
+    // Memory
+    static final int MAR_EA = 0;        // MAR <- EA
+    static final int MAR_CONST = 1;     // MAR <- operand
+    static final int FETCH = 2;         // MBR <- M(MAR) (signal)
+    static final int STORE = 3;         // M(MAR) <- MBR (signal)
+    static final int WAIT = 4;          // stall while memory is busy
+    static final int MBR_R = 5;         // MBR <- RF(RFI)
+    static final int MBR_X = 6;         // MBR <- X(RFI)
+    static final int MBR_PC = 7;        // MBR <- PC + 1
+    static final int MBR_MSR = 8;       // MBR <- MSR
+    static final int R_MBR = 9;         // RF(RFI) <- MBR
+    static final int X_MBR = 10;        // X(RFI) <- MBR
+    // Registers
+    static final int R_EA = 11;         // RF(RFI) <- EA
+    static final int X_INC = 12;        // X(RFI) <- c(X(RFI)) + 1
+    static final int R_DEC = 13;        // RF(RFI) <- c(RF(RFI)) - 1
+    static final int R0_IMMED = 14;     // R0 <- Immed
+    static final int R3_PC = 15;        // R3 <- PC + 1
+    // ALU
+    static final int OP1_R = 16;        // OP1 <- RF(RFI)
+    static final int OP1_RX = 17;       // OP1 <- RF(rx)
+    static final int OP2_MBR = 18;      // OP2 <- MBR
+    static final int OP2_IMMED = 19;    // OP2 <- Immed
+    static final int OP2_RY = 20;       // OP2 <- RF(ry)
+    static final int ALU_GO = 21;       // CTRL <- operand, start
+    static final int R_RES = 22;        // RF(RFI) <- RES
+    static final int RX_RES = 23;       // RF(rx) <- RES high, RF(rx+1) <- RES low
+    // Logic unit (barrel shifter), done in place
+    static final int SHIFT = 24;
+    static final int ROTATE = 25;
+    static final int TEST_RR = 26;      // cc(4) <- c(rx) == c(ry)
+    static final int AND = 27;
+    static final int ORR = 28;
+    static final int NOT = 29;
+    // Transfer of control
+    static final int PC_EA = 30;        // PC' <- EA
+    static final int JUMP = 31;         // PC' <- EA, scans memory for branches on a jump to 64
+    static final int PC_R3 = 32;        // PC' <- c(R3)
+    static final int BRANCH = 33;       // PC' <- EA if operand condition holds, tells the predictor
+    static final int TRAP_CHECK = 34;   // faults on a trap code above 15
+    static final int PC_TRAP = 35;      // PC' <- MBR + trap code
+    static final int HALT = 36;
+    static final int ILLEGAL = 37;
+    // IO
+    static final int IN = 38;
+    static final int OUT = 39;
+    static final int CHK = 40;
+    // Sequencing
+    static final int NOP = 41;
+    static final int COMPLETE = 42;     // PC <- PC' or PC + 1, instruction done
+
+    private static final String[] OP_NAMES = {
+        "MAR <- EA", "MAR <- ", "MBR <- M(MAR)", "M(MAR) <- MBR", "WAIT MEMORY",
+        "MBR <- RF(RFI)", "MBR <- X(RFI)", "MBR <- PC + 1", "MBR <- MSR", "RF(RFI) <- MBR", "X(RFI) <- MBR",
+        "RF(RFI) <- EA", "X(RFI) <- X(RFI) + 1", "RF(RFI) <- RF(RFI) - 1", "R0 <- Immed", "R3 <- PC + 1",
+        "OP1 <- RF(RFI)", "OP1 <- RF(rx)", "OP2 <- MBR", "OP2 <- Immed", "OP2 <- RF(ry)", "CTRL <- ", "RF(RFI) <- RES", "RF(rx) <- RES",
+        "SHIFT", "ROTATE", "TEST RF(rx) = RF(ry)", "RF(rx) <- RF(rx) AND RF(ry)", "RF(rx) <- RF(rx) OR RF(ry)", "RF(rx) <- NOT RF(rx)",
+        "PC' <- EA", "PC' <- EA (JMP)", "PC' <- R3", "BRANCH ", "CHECK TRAP CODE", "PC' <- MBR + trap code", "HALT", "ILLEGAL OPCODE",
+        "IN", "OUT", "CHK",
+        "NOP", "PC <- PC'"
+    };
+
+    // BRANCH conditions
+    static final int IF_ZERO = 0;               // c(RFI) == 0
+    static final int IF_NOT_ZERO = 1;           // c(RFI) != 0
+    static final int IF_NOT_NEGATIVE = 2;       // c(RFI) >= 0
+    static final int IF_POSITIVE = 3;           // c(RFI) > 0
+    static final int IF_CONDITION_CODE = 4;     // cc(RFI) == 1
+    private static final String[] CONDITION_NAMES = {"IF ZERO", "IF NOT ZERO", "IF NOT NEGATIVE", "IF POSITIVE", "IF CC"};
+
+    static final int[] ROM;
+    // ROM address of each opcode's microprogram
+    private static final int[] ENTRIES = new int[ControlUnit.OPCODE_COUNT];
+    // Clock cycles each opcode spends in the execute phase
+    private static final int[] CYCLES = new int[ControlUnit.OPCODE_COUNT];
+    private static final String[] MNEMONICS = new String[ControlUnit.OPCODE_COUNT];
+
+    private static int[] rom = new int[256];
+    private static int size = 0;
+
+    static {
+        int illegal = Microcode.assemble(ILLEGAL | END);
+        Arrays.fill(Microcode.ENTRIES, illegal);
+        Arrays.fill(Microcode.MNEMONICS, "ILLEGAL");
+
+        Microcode.define(ControlUnit.OPCODE_HLT, "HLT", HALT | END);
+        Microcode.define(ControlUnit.OPCODE_LDR, "LDR", MAR_EA, FETCH, WAIT, R_MBR | END);
+        Microcode.define(ControlUnit.OPCODE_STR, "STR", MAR_EA, MBR_R, STORE, WAIT, NOP | END);
+        Microcode.define(ControlUnit.OPCODE_LDA, "LDA", R_EA | END);
+        Microcode.define(ControlUnit.OPCODE_AMR, "AMR", MAR_EA, FETCH, WAIT, OP2_MBR | END,
+                OP1_R | END, Microcode.alu(ArithmeticLogicUnit.CONTROL_ADD) | END, NOP | END, R_RES | END);
+        Microcode.define(ControlUnit.OPCODE_SMR, "SMR", MAR_EA, FETCH, WAIT, OP2_MBR | END,
+                OP1_R | END, Microcode.alu(ArithmeticLogicUnit.CONTROL_SUBTRACT) | END, NOP | END, R_RES | END);
+        Microcode.define(ControlUnit.OPCODE_AIR, "AIR", OP1_R | END, OP2_IMMED | END,
+                Microcode.alu(ArithmeticLogicUnit.CONTROL_ADD) | END, NOP | END, R_RES | END);
+        Microcode.define(ControlUnit.OPCODE_SIR, "SIR", OP1_R | END, OP2_IMMED | END,
+                Microcode.alu(ArithmeticLogicUnit.CONTROL_SUBTRACT) | END, NOP | END, R_RES | END);
+        Microcode.define(ControlUnit.OPCODE_JZ, "JZ", Microcode.branch(IF_ZERO) | END);
+        Microcode.define(ControlUnit.OPCODE_JNE, "JNE", Microcode.branch(IF_NOT_ZERO) | END);
+        Microcode.define(ControlUnit.OPCODE_JCC, "JCC", Microcode.branch(IF_CONDITION_CODE) | END);
+        Microcode.define(ControlUnit.OPCODE_JMP, "JMP", JUMP | END);
+        Microcode.define(ControlUnit.OPCODE_JSR, "JSR", R3_PC | END, PC_EA | END);
+        Microcode.define(ControlUnit.OPCODE_RFS, "RFS", R0_IMMED | END, PC_R3 | END);
+        Microcode.define(ControlUnit.OPCODE_SOB, "SOB", R_DEC | END, NOP | END, Microcode.branch(IF_POSITIVE) | END);
+        Microcode.define(ControlUnit.OPCODE_JGE, "JGE", Microcode.branch(IF_NOT_NEGATIVE) | END);
+        Microcode.define(ControlUnit.OPCODE_MLT, "MLT", OP1_RX | END, OP2_RY | END,
+                Microcode.alu(ArithmeticLogicUnit.CONTROL_MULTIPLY) | END, NOP | END, RX_RES | END);
+        Microcode.define(ControlUnit.OPCODE_DVD, "DVD", OP1_RX | END, OP2_RY | END,
+                Microcode.alu(ArithmeticLogicUnit.CONTROL_DIVIDE) | END, NOP | END, RX_RES | END);
+        Microcode.define(ControlUnit.OPCODE_TRR, "TRR", TEST_RR | END);
+        Microcode.define(ControlUnit.OPCODE_AND, "AND", AND | END);
+        Microcode.define(ControlUnit.OPCODE_ORR, "ORR", ORR | END);
+        Microcode.define(ControlUnit.OPCODE_NOT, "NOT", NOT | END);
+        Microcode.define(ControlUnit.OPCODE_TRAP, "TRAP", TRAP_CHECK,
+                Microcode.mar(2), MBR_PC, STORE, WAIT,          // save PC
+                Microcode.mar(3), MBR_MSR, STORE | END,         // save MSR
+                WAIT | END,
+                Microcode.mar(0), FETCH | END,                  // trap table address
+                WAIT, PC_TRAP | END);
+        Microcode.define(ControlUnit.OPCODE_SRC, "SRC", SHIFT | END);
+        Microcode.define(ControlUnit.OPCODE_RRC, "RRC", ROTATE | END);
+        Microcode.define(ControlUnit.OPCODE_LDX, "LDX", MAR_EA, FETCH, WAIT, X_MBR | END);
+        Microcode.define(ControlUnit.OPCODE_STX, "STX", MAR_EA | END, MBR_X, STORE, WAIT, NOP | END);
+        Microcode.define(ControlUnit.OPCODE_INX, "INX", X_INC | END);
+        Microcode.define(ControlUnit.OPCODE_IN, "IN", IN | END);
+        Microcode.define(ControlUnit.OPCODE_OUT, "OUT", OUT | END);
+        Microcode.define(ControlUnit.OPCODE_CHK, "CHK", CHK | END);
+
+        ROM = Arrays.copyOf(Microcode.rom, Microcode.size);
+        Microcode.rom = null;
+        for(int opcode=0;opcode<ControlUnit.OPCODE_COUNT;opcode++){
+            Microcode.CYCLES[opcode] = Microcode.countCycles(Microcode.ENTRIES[opcode]);
+        }
+    }
+
+    private Microcode() {
+    }
+
+    /**
+     * @param opcode
+     * @return ROM address of the opcode's microprogram
+     */
+    static int entry(int opcode){
+        return Microcode.ENTRIES[opcode];
+    }
+
+    /**
+     * @param opcode
+     * @return Clock cycles the opcode spends in the execute phase (PC update
+     *   included, HLT up to the halt), with memory answering in one cycle
+     */
+    static int cycles(int opcode){
+        return Microcode.CYCLES[opcode];
+    }
+
+    /**
+     * @param opcode
+     * @return ROM address of the opcode's PC update
+     */
+    static int completion(int opcode){
+        int pc = Microcode.ENTRIES[opcode];
+        while((Microcode.ROM[pc] & Microcode.OP_MASK)!=COMPLETE){
+            pc++;
+        }
+        return pc;
+    }
+
+    static String mnemonic(int opcode){
+        return Microcode.MNEMONICS[opcode];
+    }
+
+    static int operand(int word){
+        return word >>> Microcode.OPERAND_SHIFT;
+    }
+
+    /**
+     * @param word
+     * @return Register transfer notation of a micro-op word
+     */
+    static String describe(int word){
+        int op = word & Microcode.OP_MASK;
+        switch(op){
+            case MAR_CONST:
+            case ALU_GO:
+                return Microcode.OP_NAMES[op] + Microcode.operand(word);
+            case BRANCH:
+                return Microcode.OP_NAMES[op] + Microcode.CONDITION_NAMES[Microcode.operand(word)];
+            default:
+                return Microcode.OP_NAMES[op];
+        }
+    }
+
+    private static int mar(int address){
+        return MAR_CONST | (address << Microcode.OPERAND_SHIFT);
+    }
+
+    private static int alu(int control){
+        return ALU_GO | (control << Microcode.OPERAND_SHIFT);
+    }
+
+    private static int branch(int condition){
+        return BRANCH | (condition << Microcode.OPERAND_SHIFT);
+    }
+
+    private static void define(int opcode, String mnemonic, int... words){
+        Microcode.ENTRIES[opcode] = Microcode.assemble(words);
+        Microcode.MNEMONICS[opcode] = mnemonic;
+    }
+
+    /**
+     * Appends a microprogram and its PC update cycle to the ROM
+     * @return ROM address of the microprogram
+     */
+    private static int assemble(int... words){
+        int entry = Microcode.size;
+        if(Microcode.size + words.length + 1 > Microcode.rom.length){
+            Microcode.rom = Arrays.copyOf(Microcode.rom, Microcode.rom.length * 2);
+        }
+        for(int word : words){
+            Microcode.rom[Microcode.size++] = word;
+        }
+        Microcode.rom[Microcode.size++] = COMPLETE | END;
+        return entry;
+    }
+
+    /**
+     * Cycles closed by END, plus one stalled cycle for a WAIT on memory
+     * signalled earlier in the same cycle
+     */
+    private static int countCycles(int entry){
+        int cycles = 0;
+        boolean signalled = false;
+        for(int pc=entry;;pc++){
+            int word = Microcode.ROM[pc];
+            int op = word & Microcode.OP_MASK;
+            if(op==FETCH || op==STORE){
+                signalled = true;
+            } else if(op==WAIT && signalled){
+                cycles++;
+            }
+            if((word & Microcode.END)!=0){
+                cycles++;
+                signalled = false;
+            }
+            if(op==COMPLETE || op==HALT){
+                return cycles;
+            }
+        }
+    }
+}
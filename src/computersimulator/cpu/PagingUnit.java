@@ -0,0 +1,285 @@
+package computersimulator.cpu;
+
+import computersimulator.components.MachineFaultException;
+
+/**
+ * Demand paged virtual memory for the MemoryControlUnit. Off unless the JVM
+ * is started with -Dcomputersimulator.memory.paging=true.
+ *
+ * The 13-bit address space (or the first -Dcomputersimulator.memory.virtual.size
+ * words of it) is split into pages of 256 words, matching the physical frames
+ * of memory. Page 0 (ROM, trap and fault vectors, loader) stays in frame 0 and
+ * the page table fills the last frame; every other frame is paged.
+ *
+ * Page table entries are words in simulated memory, one per virtual page:
+ *
+ *   bit 19 present, bit 18 dirty, bit 17 referenced, low bits frame number
+ *
+ * Translations are cached in a small fully associative TLB. A miss walks the
+ * page table; a page that is not present is read in from the backing store,
+ * evicting a frame picked by the clock algorithm (written back if dirty).
+ * This pager runs inside the memory unit and takes no clock cycles. Only
+ * addresses outside the virtual address space fault, with
+ * MachineFaultException.PAGE_FAULT through the machine fault routine.
+ */
+public class PagingUnit {
+
+    public static final boolean ENABLED = Boolean.getBoolean("computersimulator.memory.paging");
+
+    public static final int PAGE_SIZE = 256;
+    // Words of virtual memory, whole pages up to the 13-bit address space
+    public static final int VIRTUAL_SIZE = PagingUnit.configuredVirtualSize();
+    private static final int PAGES = PagingUnit.VIRTUAL_SIZE / PagingUnit.PAGE_SIZE;
+    private static final int TLB_SIZE = 8;
+
+    // Page table entry bits
+    private static final int PRESENT = 1 << 19;
+    private static final int DIRTY = 1 << 18;
+    private static final int REFERENCED = 1 << 17;
+    private static final int FRAME_MASK = (1 << 17) - 1;
+
+    private final IMemoryStore memory;
+    private final int banks;
+    private final int bankCells;
+    // Paged out contents, page p at p*PAGE_SIZE laid out like a frame (by bank)
+    private final IMemoryStore backingStore;
+
+    // Physical address of the page table
+    private final int pageTableBase;
+    // Virtual page held by each frame, -1 if free or not paged
+    private final int[] framePage;
+    private int clockHand;
+
+    // TLB: virtual page and physical frame base address, page -1 if unused
+    private final int[] tlbPage = new int[PagingUnit.TLB_SIZE];
+    private final int[] tlbFrameBase = new int[PagingUnit.TLB_SIZE];
+    // the page table entry of the TLB entry already has the dirty bit set
+    private final boolean[] tlbDirty = new boolean[PagingUnit.TLB_SIZE];
+    private int tlbNext;
+
+    // one bank's share of a frame, used when copying pages
+    private final int[] bankBuffer;
+
+    private long tlbHits;
+    private long tlbMisses;
+    private long pageFaults;
+    private long pageOuts;
+
+    /**
+     * @param memory Physical memory
+     * @param banks Memory banks (addresses are striped across them)
+     * @param backingStore Store of VIRTUAL_SIZE words for paged out pages
+     */
+    PagingUnit(IMemoryStore memory, int banks, IMemoryStore backingStore) {
+        this.memory = memory;
+        this.banks = banks;
+        this.bankCells = memory.size() / banks;
+        this.backingStore = backingStore;
+        int frames = memory.size() / PagingUnit.PAGE_SIZE;
+        this.framePage = new int[frames];
+        this.pageTableBase = (frames - 1) * PagingUnit.PAGE_SIZE;
+        this.bankBuffer = new int[PagingUnit.PAGE_SIZE / banks];
+    }
+
+    private static int configuredVirtualSize(){
+        int size = Integer.getInteger("computersimulator.memory.virtual.size", 1 << 13);
+        size = Math.max(2 * PagingUnit.PAGE_SIZE, Math.min(size, 1 << 13));
+        return size / PagingUnit.PAGE_SIZE * PagingUnit.PAGE_SIZE;
+    }
+
+    /**
+     * Empties the backing store, TLB and page table and maps page 0 to frame
+     * 0. Physical memory must already be cleared.
+     */
+    void reset(){
+        this.backingStore.clear();
+        for(int i=0;i<this.framePage.length;i++){
+            this.framePage[i] = -1;
+        }
+        for(int page=0;page<PagingUnit.PAGES;page++){
+            this.writeEntry(page, 0);
+        }
+        this.writeEntry(0, PagingUnit.PRESENT);
+        this.clockHand = 1;
+        this.flushTLB();
+        this.tlbHits = 0;
+        this.tlbMisses = 0;
+        this.pageFaults = 0;
+        this.pageOuts = 0;
+    }
+
+    /**
+     * @param address Virtual address
+     * @param store true for a store (marks the page dirty)
+     * @return Physical address
+     * @throws MachineFaultException PAGE_FAULT outside the virtual address space
+     */
+    int translate(int address, boolean store) throws MachineFaultException {
+        if(address < 0 || address >= PagingUnit.VIRTUAL_SIZE){
+            if(Trace.ENABLED){
+                Trace.record(Trace.MEMORY_BAD_ADDRESS, address);
+            }
+            throw new MachineFaultException(MachineFaultException.PAGE_FAULT);
+        }
+        int page = address / PagingUnit.PAGE_SIZE;
+        int offset = address % PagingUnit.PAGE_SIZE;
+        for(int i=0;i<PagingUnit.TLB_SIZE;i++){
+            if(this.tlbPage[i]==page){
+                this.tlbHits++;
+                if(store && !this.tlbDirty[i]){
+                    this.writeEntry(page, this.readEntry(page) | PagingUnit.DIRTY);
+                    this.tlbDirty[i] = true;
+                }
+                return this.tlbFrameBase[i] + offset;
+            }
+        }
+
+        // TLB miss: walk the page table
+        this.tlbMisses++;
+        int entry = this.readEntry(page);
+        if((entry & PagingUnit.PRESENT)==0){
+            entry = this.pageIn(page);
+        }
+        entry |= PagingUnit.REFERENCED;
+        if(store){
+            entry |= PagingUnit.DIRTY;
+        }
+        this.writeEntry(page, entry);
+
+        int slot = this.tlbNext;
+        this.tlbNext = (this.tlbNext + 1) % PagingUnit.TLB_SIZE;
+        this.tlbPage[slot] = page;
+        this.tlbFrameBase[slot] = (entry & PagingUnit.FRAME_MASK) * PagingUnit.PAGE_SIZE;
+        this.tlbDirty[slot] = (entry & PagingUnit.DIRTY)!=0;
+        return this.tlbFrameBase[slot] + offset;
+    }
+
+    /**
+     * Brings page into a frame from the backing store
+     * @param page
+     * @return page table entry of page
+     */
+    private int pageIn(int page){
+        this.pageFaults++;
+        int frame = this.findFrame();
+        int evicted = this.framePage[frame];
+        if(evicted >= 0){
+            this.pageOut(evicted, frame);
+        }
+        for(int bank=0;bank<this.banks;bank++){
+            this.backingStore.read(page * PagingUnit.PAGE_SIZE + bank * this.bankBuffer.length, this.bankBuffer, this.bankBuffer.length);
+            this.memory.write(this.frameIndex(frame, bank), this.bankBuffer, this.bankBuffer.length);
+        }
+        this.framePage[frame] = page;
+        if(Trace.ENABLED){
+            Trace.record(Trace.PAGE_IN, page, frame, evicted);
+        }
+        return PagingUnit.PRESENT | frame;
+    }
+
+    /**
+     * Removes page from frame, writing it back if it was changed
+     * @param page
+     * @param frame
+     */
+    private void pageOut(int page, int frame){
+        int entry = this.readEntry(page);
+        if((entry & PagingUnit.DIRTY)!=0){
+            this.pageOuts++;
+            for(int bank=0;bank<this.banks;bank++){
+                this.memory.read(this.frameIndex(frame, bank), this.bankBuffer, this.bankBuffer.length);
+                this.backingStore.write(page * PagingUnit.PAGE_SIZE + bank * this.bankBuffer.length, this.bankBuffer, this.bankBuffer.length);
+            }
+            if(Trace.ENABLED){
+                Trace.record(Trace.PAGE_OUT, page, frame);
+            }
+        }
+        this.writeEntry(page, 0);
+        this.framePage[frame] = -1;
+        this.flushTLB(page);
+    }
+
+    /**
+     * Clock algorithm over the paged frames: a free frame, else the first
+     * one whose page was not referenced since the hand last passed it
+     * @return frame
+     */
+    private int findFrame(){
+        int first = 1;
+        int last = this.framePage.length - 2; // the page table frame is not paged
+        while(true){
+            int frame = this.clockHand;
+            this.clockHand = (frame >= last) ? first : frame + 1;
+            int page = this.framePage[frame];
+            if(page < 0){
+                return frame;
+            }
+            int entry = this.readEntry(page);
+            if((entry & PagingUnit.REFERENCED)==0){
+                return frame;
+            }
+            this.writeEntry(page, entry & ~PagingUnit.REFERENCED);
+            this.flushTLB(page); // next use walks the table and sets it again
+        }
+    }
+
+    private int readEntry(int page){
+        return this.memory.get(this.physicalIndex(this.pageTableBase + page));
+    }
+
+    private void writeEntry(int page, int entry){
+        this.memory.set(this.physicalIndex(this.pageTableBase + page), entry);
+    }
+
+    /**
+     * Same striping as MemoryControlUnit: bank = address % banks,
+     * cell = address / banks
+     */
+    private int physicalIndex(int address){
+        return (address % this.banks) * this.bankCells + address / this.banks;
+    }
+
+    /**
+     * @return Store index of the first cell of frame in bank
+     */
+    private int frameIndex(int frame, int bank){
+        return bank * this.bankCells + frame * this.bankBuffer.length;
+    }
+
+    private void flushTLB(){
+        for(int i=0;i<PagingUnit.TLB_SIZE;i++){
+            this.tlbPage[i] = -1;
+        }
+        this.tlbNext = 0;
+    }
+
+    private void flushTLB(int page){
+        for(int i=0;i<PagingUnit.TLB_SIZE;i++){
+            if(this.tlbPage[i]==page){
+                this.tlbPage[i] = -1;
+            }
+        }
+    }
+
+    public long getTlbHits(){
+        return this.tlbHits;
+    }
+
+    public long getTlbMisses(){
+        return this.tlbMisses;
+    }
+
+    /**
+     * @return Pages read in from the backing store
+     */
+    public long getPageFaults(){
+        return this.pageFaults;
+    }
+
+    /**
+     * @return Dirty pages written back to the backing store
+     */
+    public long getPageOuts(){
+        return this.pageOuts;
+    }
+}
@@ -0,0 +1,187 @@
+package computersimulator.cpu;
+
+import computersimulator.components.MachineFaultException;
+import computersimulator.components.Unit;
+
+/**
+ * Predecoded instructions, one packed int per memory address. An entry is
+ * filled the first time the instruction at an address is fetched (or asked
+ * for) and dropped when the MemoryControlUnit stores to that address.
+ *
+ * Entry layout (bit 31 = valid):
+ *   [31] valid  [22..20] EA mode  [19..0] raw instruction
+ * The instruction fields are read back with the static accessors below.
+ */
+public class PredecodeCache {
+
+    // Effective address modes
+    public static final int EA_DIRECT=0;
+    public static final int EA_REGISTER_INDIRECT=1;
+    public static final int EA_INDEXED=2;
+    public static final int EA_INDEXED_OFFSET=3;
+    public static final int EA_NONE=4; // instruction has no effective address
+
+    public static final int INVALID=0;
+    private static final int VALID=1<<31;
+
+    private final int[] entries;
+
+    private final MemoryControlUnit memory;
+
+    public PredecodeCache(MemoryControlUnit mem, int size) {
+        this.memory = mem;
+        this.entries = new int[size];
+    }
+
+    /**
+     * @param address
+     * @return entry or INVALID when nothing is cached for the address
+     */
+    public int lookup(int address){
+        if(address<0 || address>=this.entries.length){
+            return PredecodeCache.INVALID;
+        }
+        return this.entries[address];
+    }
+
+    /**
+     * Lookup, decoding from memory on a miss
+     * @param address
+     * @return entry
+     * @throws MachineFaultException
+     */
+    public int get(int address) throws MachineFaultException {
+        int entry = this.lookup(address);
+        if(entry==PredecodeCache.INVALID){
+            entry = this.fill(address, this.memory.fetchBits(address));
+        }
+        return entry;
+    }
+
+    /**
+     * Decode the instruction held at address and remember it
+     * @param address
+     * @param raw Raw instruction bits (as stored in memory)
+     * @return entry
+     */
+    public int fill(int address, int raw){
+        int entry = PredecodeCache.decode(raw);
+        if(address>=0 && address<this.entries.length){
+            this.entries[address] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Drop the entry for address (the memory cell changed)
+     * @param address
+     */
+    public void invalidate(int address){
+        if(address>=0 && address<this.entries.length){
+            this.entries[address] = PredecodeCache.INVALID;
+        }
+    }
+
+    /**
+     * Drop every entry
+     */
+    public void invalidateAll(){
+        for(int i=0;i<this.entries.length;i++){
+            this.entries[i] = PredecodeCache.INVALID;
+        }
+    }
+
+    /**
+     * Decode without caching
+     * @param raw Raw instruction bits
+     * @return entry
+     */
+    public static int decode(int raw){
+        raw &= (int)Unit.maskForSize(20);
+        int xfi = (raw >>> 12) & 0x3;
+        int index = (raw >>> 9) & 0x1;
+
+        int eaMode;
+        if(!PredecodeCache.needsEffectiveAddress(raw >>> 14)){
+            eaMode = PredecodeCache.EA_NONE;
+        } else if(index==0 && xfi==0){
+            eaMode = PredecodeCache.EA_DIRECT;
+        } else if(index==0){
+            eaMode = PredecodeCache.EA_REGISTER_INDIRECT;
+        } else if(xfi==0){
+            eaMode = PredecodeCache.EA_INDEXED;
+        } else {
+            eaMode = PredecodeCache.EA_INDEXED_OFFSET;
+        }
+
+        return PredecodeCache.VALID | (eaMode << 20) | raw;
+    }
+
+    /**
+     * @param opcode
+     * @return false for the instructions that skip EA calculation
+     */
+    public static boolean needsEffectiveAddress(int opcode){
+        switch(opcode){
+            case ControlUnit.OPCODE_INX:
+            case ControlUnit.OPCODE_AIR:
+            case ControlUnit.OPCODE_SIR:
+            case ControlUnit.OPCODE_MLT:
+            case ControlUnit.OPCODE_DVD:
+            case ControlUnit.OPCODE_TRR:
+            case ControlUnit.OPCODE_AND:
+            case ControlUnit.OPCODE_ORR:
+            case ControlUnit.OPCODE_NOT:
+            case ControlUnit.OPCODE_SRC:
+            case ControlUnit.OPCODE_RRC:
+            case ControlUnit.OPCODE_IN:
+            case ControlUnit.OPCODE_OUT:
+            case ControlUnit.OPCODE_CHK:
+            case ControlUnit.OPCODE_HLT:
+            case ControlUnit.OPCODE_TRAP:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // Field accessors (bit 0 = most significant bit of the instruction)
+
+    public static int raw(int entry){
+        return entry & 0xFFFFF;
+    }
+
+    /** bits 0-5 */
+    public static int opcode(int entry){
+        return (entry >>> 14) & 0x3F;
+    }
+
+    /** bits 6-7 */
+    public static int xfi(int entry){
+        return (entry >>> 12) & 0x3;
+    }
+
+    /** bits 8-9 */
+    public static int rfi(int entry){
+        return (entry >>> 10) & 0x3;
+    }
+
+    /** bit 10 */
+    public static int index(int entry){
+        return (entry >>> 9) & 0x1;
+    }
+
+    /** bit 11 */
+    public static int trace(int entry){
+        return (entry >>> 8) & 0x1;
+    }
+
+    /** bits 12-19 */
+    public static int address(int entry){
+        return entry & 0xFF;
+    }
+
+    public static int eaMode(int entry){
+        return (entry >>> 20) & 0x7;
+    }
+}
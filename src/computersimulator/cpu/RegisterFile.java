@@ -0,0 +1,156 @@
+package computersimulator.cpu;
+
+import computersimulator.components.Unit;
+import computersimulator.components.Word;
+
+/**
+ * RegisterFile - every register of the control unit lives in one int[] slot,
+ * holding its raw bits masked to the register's width. The execute paths read
+ * and write the slots directly; Unit/Word views are only built on demand
+ * (GUI, logging, ALU latches).
+ */
+public class RegisterFile {
+
+    // R0…R3	20 bits General Purpose Registers
+    public static final int R0=0;
+    public static final int R1=1;
+    public static final int R2=2;
+    public static final int R3=3;
+    // X1…X3	13 bits	Index Registers
+    public static final int X1=4;
+    public static final int X2=5;
+    public static final int X3=6;
+    // PC	13 bits	Program Counter
+    public static final int PC=7;
+    // IR	20 bits	Instruction Register
+    public static final int IR=8;
+    // MSR	20 bits	Machine Status Register
+    public static final int MSR=9;
+    // MFR	4 bits	Machine Fault Register
+    public static final int MFR=10;
+    // CC	4 bits	Condition Code
+    public static final int CC=11;
+
+    private static final int[] SIZES = {20,20,20,20, 13,13,13, 13, 20, 20, 4, 4};
+
+    private final int[] slots = new int[SIZES.length];
+
+    /**
+     * @param RFI General Purpose Register ID (0-3)
+     * @return slot
+     */
+    public static int gpr(int RFI){
+        return R0 + RFI;
+    }
+
+    /**
+     * @param ixid Index Register ID (1-3)
+     * @return slot
+     */
+    public static int index(int ixid){
+        return X1 + ixid - 1;
+    }
+
+    /**
+     * @param slot
+     * @return Number of bits in slot
+     */
+    public static int getSize(int slot){
+        return SIZES[slot];
+    }
+
+    /**
+     * Zero every register
+     */
+    public void reset(){
+        for(int i=0;i<this.slots.length;i++){
+            this.slots[i]=0;
+        }
+    }
+
+    /**
+     * @param slot
+     * @return Value as Unsigned Integer (raw bits)
+     */
+    public int get(int slot){
+        return this.slots[slot];
+    }
+
+    /**
+     * @param slot
+     * @return Value as Signed Integer
+     */
+    public int getSigned(int slot){
+        return (int)Unit.signExtend(this.slots[slot], SIZES[slot]);
+    }
+
+    /**
+     * Range checked set, same rules as Unit.setValue
+     * @param slot
+     * @param value
+     * @throws ArithmeticException
+     */
+    public void set(int slot, int value) throws java.lang.ArithmeticException {
+        Unit.checkRange(SIZES[slot], value);
+        this.slots[slot] = (int)(value & Unit.maskForSize(SIZES[slot]));
+    }
+
+    /**
+     * Loads raw bits, cutting anything wider than the register
+     * @param slot
+     * @param bits
+     */
+    public void setBits(int slot, long bits){
+        this.slots[slot] = (int)(bits & Unit.maskForSize(SIZES[slot]));
+    }
+
+    /**
+     * Extracts a bit field (indexes counted from the most significant bit)
+     * @param slot
+     * @param start Start Index
+     * @param stop  Stop Index
+     * @return Unsigned value of bits start to stop
+     */
+    public int bits(int slot, int start, int stop){
+        return (int)((this.slots[slot] >>> (SIZES[slot] - 1 - stop)) & Unit.maskForSize(stop - start + 1));
+    }
+
+    /**
+     * @param slot
+     * @param index Index (0 is the most significant bit)
+     * @return 1 or 0
+     */
+    public int bit(int slot, int index){
+        return (this.slots[slot] >>> (SIZES[slot] - 1 - index)) & 1;
+    }
+
+    /**
+     * @param slot
+     * @param index Index (0 is the most significant bit)
+     * @param value 1 or 0
+     */
+    public void setBit(int slot, int index, int value){
+        int mask = 1 << (SIZES[slot] - 1 - index);
+        if(value==0){
+            this.slots[slot] &= ~mask;
+        } else {
+            this.slots[slot] |= mask;
+        }
+    }
+
+    /**
+     * @param slot
+     * @return immutable Unit view of a register
+     */
+    public Unit getUnit(int slot){
+        return Unit.valueOf(SIZES[slot], this.slots[slot]);
+    }
+
+    /**
+     * @param slot 20 bit slot
+     * @return immutable Word view of a register
+     */
+    public Word getWord(int slot){
+        return Word.valueOfBits(this.slots[slot]);
+    }
+}
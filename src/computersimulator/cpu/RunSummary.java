@@ -0,0 +1,138 @@
+package computersimulator.cpu;
+
+/**
+ * Result of Computer.run()/runUntil(): what ran and why it stopped.
+ */
+public class RunSummary {
+
+    // HLT was executed
+    public static final int STOP_HALT = 0;
+    // the clock cycle budget was used up
+    public static final int STOP_CYCLE_LIMIT = 1;
+    // the IRunCondition was met
+    public static final int STOP_CONDITION = 2;
+    // the CPU was stopped from outside (e.g. the Halt button)
+    public static final int STOP_STOPPED = 3;
+
+    private static final String[] STOP_NAMES = {"halt", "cycle limit", "condition", "stopped"};
+
+    private final long cycles;
+    private final long instructions;
+    private final int stopReason;
+    private final int faults;
+    private final int lastFault;
+    // Bank timing statistics of the run, -1 when the model is disabled
+    private final long memoryRequests;
+    private final long rowHits;
+    private final long conflictCycles;
+    private final long memoryLatency;
+
+    public RunSummary(long cycles, long instructions, int stopReason, int faults, int lastFault) {
+        this(cycles, instructions, stopReason, faults, lastFault, -1, -1, -1, -1);
+    }
+
+    /**
+     * @param cycles
+     * @param instructions
+     * @param stopReason
+     * @param faults
+     * @param lastFault
+     * @param memoryRequests Requests served by the memory banks (-1: no bank timing)
+     * @param rowHits
+     * @param conflictCycles
+     * @param memoryLatency
+     */
+    public RunSummary(long cycles, long instructions, int stopReason, int faults, int lastFault,
+            long memoryRequests, long rowHits, long conflictCycles, long memoryLatency) {
+        this.cycles = cycles;
+        this.instructions = instructions;
+        this.stopReason = stopReason;
+        this.faults = faults;
+        this.lastFault = lastFault;
+        this.memoryRequests = memoryRequests;
+        this.rowHits = rowHits;
+        this.conflictCycles = conflictCycles;
+        this.memoryLatency = memoryLatency;
+    }
+
+    /**
+     * @return Clock cycles run (estimated in RUNMODE_FAST/RUNMODE_BLOCK)
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return Instructions fetched
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return STOP_XXX
+     */
+    public int getStopReason() {
+        return stopReason;
+    }
+
+    public boolean isHalted() {
+        return stopReason==RunSummary.STOP_HALT;
+    }
+
+    /**
+     * @return Machine faults signalled (each one handed to the fault handler)
+     */
+    public int getFaults() {
+        return faults;
+    }
+
+    /**
+     * @return MachineFaultException fault ID of the last fault, -1 if none
+     */
+    public int getLastFault() {
+        return lastFault;
+    }
+
+    /**
+     * @return Requests served by the memory banks, -1 without bank timing
+     *   (see BankTimingModel)
+     */
+    public long getMemoryRequests() {
+        return memoryRequests;
+    }
+
+    /**
+     * @return Requests that hit the open row of their bank, -1 without bank timing
+     */
+    public long getRowHits() {
+        return rowHits;
+    }
+
+    /**
+     * @return Cycles requests waited behind another request to the same 
+     *   bank, -1 without bank timing
+     */
+    public long getConflictCycles() {
+        return conflictCycles;
+    }
+
+    /**
+     * @return Cycles from queueing to completion, summed over requests 
+     *   served, -1 without bank timing
+     */
+    public long getMemoryLatency() {
+        return memoryLatency;
+    }
+
+    @Override
+    public String toString() {
+        String result = RunSummary.STOP_NAMES[this.stopReason] + ": " + this.cycles + " cycles, " 
+                + this.instructions + " instructions, " + this.faults + " faults";
+        if(this.memoryRequests >= 0){
+            result += "; memory " + this.memoryRequests + " requests, " + this.rowHits + " row hits, " 
+                    + this.conflictCycles + " conflict cycles, " + this.memoryLatency + " latency";
+        }
+        return result;
+    }
+}
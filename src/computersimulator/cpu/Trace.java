@@ -0,0 +1,180 @@
+package computersimulator.cpu;
+
+import java.io.PrintStream;
+import java.text.MessageFormat;
+
+/**
+ * Simulator trace. Off unless the JVM is started with
+ * -Dcomputersimulator.trace=true (ring size: -Dcomputersimulator.trace.size).
+ *
+ * Call sites are guarded by if(Trace.ENABLED); ENABLED is a static final,
+ * so with tracing off the JIT drops the guarded code and the hot paths do
+ * no trace work at all. With tracing on, events are kept as primitive
+ * records (event id, three long arguments) in a preallocated ring buffer
+ * holding the most recent events, and are only formatted when read with
+ * format() or dump().
+ */
+public final class Trace {
+
+    public static final boolean ENABLED = Boolean.getBoolean("computersimulator.trace");
+
+    // Events                               arguments
+    public static final int FETCH = 0;              // PC
+    public static final int INSTRUCTION_REGISTER = 1; // IR
+    public static final int DECODE = 2;             // IR
+    public static final int EFFECTIVE_ADDRESS = 3;  // EA mode, step
+    public static final int EFFECTIVE_ADDRESS_DONE = 4; // EA mode, EA
+    public static final int MICRO_OP = 5;           // micro-PC, micro-op word
+    public static final int INSTRUCTION = 6;        // PC, IR, next PC (-1: PC + 1)
+    public static final int MACHINE_FAULT = 7;      // fault ID
+    public static final int MACHINE_FAULT_STEP = 8; // step, value
+    public static final int MEMORY_FETCH = 9;       // address, value
+    public static final int MEMORY_STORE = 10;      // address, value
+    public static final int MEMORY_BAD_ADDRESS = 11; // address
+    public static final int ENGINEER_FETCH = 12;    // address, value
+    public static final int ENGINEER_STORE = 13;    // address, value
+    public static final int ALU_OPERAND1 = 14;      // value
+    public static final int ALU_OPERAND2 = 15;      // value
+    public static final int ALU_CONTROL = 16;       // control
+    public static final int ALU_STATE = 17;         // state
+    public static final int ALU_RESULT = 18;        // result, size
+    public static final int ALU_OVERFLOW = 19;
+    public static final int CACHE_FETCH = 20;       // address, hit (1/0)
+    public static final int CACHE_STORE = 21;       // address, hit (1/0)
+    public static final int CACHE_FILL = 22;        // cache block, memory bank, memory block
+    public static final int CACHE_EVICT = 23;       // cache block, written back (1/0)
+    public static final int PAGE_IN = 24;           // page, frame, evicted page (-1: none)
+    public static final int PAGE_OUT = 25;          // page, frame
+
+    private static final String[] FORMATS = {
+        "Fetch: PC({0}) -> MAR",
+        "Fetch: MBR -> IR ({0})",
+        "Decode: opcode={2}, xfi={3}, rfi={4}, index={5}, trace={6}, address={7}",
+        "EA mode {0}: step {1}",
+        "EA mode {0}: EA = {1}",
+        "Micro-{0}: {2}",
+        "{0}: {2} IR={1} -> {3}",
+        "[FAULT]: Machine Fault Occurred! [{0}]",
+        "[FAULT] Micro-{0} ({1})",
+        "-- Fetch M({0}): {1}",
+        "-- Memory Set - M({0}) to {1}",
+        "-- Bad Address: {0}",
+        "ENGINEER: Fetch Addr: {0}  ---  Value: {1}",
+        "ENGINEER: Set Addr: {0} to  Value: {1}",
+        "[ALU]: OP1<-{0}",
+        "[ALU]: OP2<-{0}",
+        "[ALU]: CNTRL<-{0}",
+        "[ALU]: State Change: {0}",
+        "[ALU]: Result: {0} ({1} bits)",
+        "[ALU]: ****overflow occured****",
+        "[Cache]: Read M({0}) hit={1}",
+        "[Cache]: Store M({0}) hit={1}",
+        "[Cache]: Fetched block {1}/{2} into location {0}",
+        "[Cache]: Freeing cache block {0}, written back={1}",
+        "[Paging]: Page {0} -> frame {1} (evicted {2})",
+        "[Paging]: Page {0} written back from frame {1}"
+    };
+
+    // Record layout in the ring: event, a, b, c
+    private static final int RECORD = 4;
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(16, Integer.getInteger("computersimulator.trace.size", 1 << 16)));
+    private static final long[] RING = Trace.ENABLED ? new long[Trace.CAPACITY * Trace.RECORD] : null;
+    // Events recorded so far
+    private static long count = 0;
+
+    private Trace() {
+    }
+
+    public static void record(int event){
+        Trace.record(event, 0, 0, 0);
+    }
+
+    public static void record(int event, long a){
+        Trace.record(event, a, 0, 0);
+    }
+
+    public static void record(int event, long a, long b){
+        Trace.record(event, a, b, 0);
+    }
+
+    /**
+     * Adds an event to the ring, overwriting the oldest once full. Only
+     * call when ENABLED.
+     * @param event
+     * @param a
+     * @param b
+     * @param c
+     */
+    public static synchronized void record(int event, long a, long b, long c){
+        int slot = (int)(Trace.count & (Trace.CAPACITY - 1)) * Trace.RECORD;
+        Trace.RING[slot] = event;
+        Trace.RING[slot + 1] = a;
+        Trace.RING[slot + 2] = b;
+        Trace.RING[slot + 3] = c;
+        Trace.count++;
+    }
+
+    /**
+     * @return Events recorded since start (or the last clear), including
+     *   ones overwritten in the ring
+     */
+    public static synchronized long getCount(){
+        return Trace.count;
+    }
+
+    public static synchronized void clear(){
+        Trace.count = 0;
+    }
+
+    /**
+     * Formats the events still in the ring, oldest first, one per line
+     * @return trace text ("" when tracing is off)
+     */
+    public static String format(){
+        StringBuilder out = new StringBuilder();
+        synchronized(Trace.class){
+            if(!Trace.ENABLED){
+                return "";
+            }
+            long first = Math.max(0, Trace.count - Trace.CAPACITY);
+            for(long i=first;i<Trace.count;i++){
+                int slot = (int)(i & (Trace.CAPACITY - 1)) * Trace.RECORD;
+                out.append(i).append(' ');
+                out.append(Trace.formatRecord((int)Trace.RING[slot], Trace.RING[slot + 1], Trace.RING[slot + 2], Trace.RING[slot + 3]));
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes format() to out
+     * @param out
+     */
+    public static void dump(PrintStream out){
+        out.print(Trace.format());
+        out.flush();
+    }
+
+    private static String formatRecord(int event, long a, long b, long c){
+        Object[] arguments;
+        switch(event){
+            case Trace.DECODE: {
+                int decoded = PredecodeCache.decode((int)a);
+                arguments = new Object[]{a, b, PredecodeCache.opcode(decoded), PredecodeCache.xfi(decoded), PredecodeCache.rfi(decoded),
+                    PredecodeCache.index(decoded), PredecodeCache.trace(decoded), PredecodeCache.address(decoded)};
+                break;
+            }
+            case Trace.MICRO_OP:
+                arguments = new Object[]{a, b, Microcode.describe((int)b)};
+                break;
+            case Trace.INSTRUCTION:
+                arguments = new Object[]{String.valueOf(a), String.valueOf(b), Microcode.mnemonic(PredecodeCache.opcode(PredecodeCache.decode((int)b))),
+                    (c < 0) ? "next" : String.valueOf(c)};
+                break;
+            default:
+                arguments = new Object[]{String.valueOf(a), String.valueOf(b), String.valueOf(c)};
+        }
+        return MessageFormat.format(Trace.FORMATS[event], arguments);
+    }
+}
@@ -0,0 +1,98 @@
+package computersimulator.cpu;
+
+import computersimulator.components.Unit;
+import computersimulator.components.Word;
+
+/**
+ * Base class of the JVM classes generated by BlockTranslator. A subclass
+ * implements run() for one basic block, keeping R0-R3 and X1-X3 in locals
+ * (raw register bits) and using the GeneratedCode helpers for the rest of
+ * the machine.
+ */
+public abstract class TranslatedBlock extends GeneratedCode {
+
+    // per instruction: fetch address, contents, predecoded entry
+    private Unit[] fetchAddresses;
+    private Word[] instructions;
+    private int[] decoded;
+    private int start;
+
+    // instruction currently executing (index into the block)
+    private int current;
+    // cleared when memory covered by the block is written
+    private boolean valid = true;
+
+    /**
+     * Runs the block from its first instruction.
+     * @return number of instructions completed (less than the block length
+     *   when the block stored into itself)
+     * @throws Exception Machine faults and anything else raised by an
+     *   instruction; registers are written back first
+     */
+    public abstract int run() throws Exception;
+
+    /**
+     * Called once after the generated class is instantiated
+     */
+    void bind(ControlUnit cu, MemoryControlUnit mem, int start, Word[] instructions, int[] decoded){
+        this.bindMachine(cu, mem);
+        this.start = start;
+        this.instructions = instructions;
+        this.decoded = decoded;
+        this.fetchAddresses = new Unit[instructions.length];
+        for(int i=0;i<instructions.length;i++){
+            this.fetchAddresses[i] = Unit.valueOf(13, start + i);
+        }
+    }
+
+    /**
+     * @return index of the instruction running (or that raised)
+     */
+    int getCurrent() {
+        return current;
+    }
+
+    void invalidate(){
+        this.valid = false;
+    }
+
+    /***************** CALLED FROM GENERATED CODE ******************/
+
+    /**
+     * @return false once the block's own memory was written
+     */
+    protected final boolean isValid(){
+        return this.valid;
+    }
+
+    /**
+     * Copies the register locals back to the register file
+     */
+    protected final void writeBack(int r0, int r1, int r2, int r3, int x1, int x2, int x3){
+        this.registers.setBits(RegisterFile.R0, r0);
+        this.registers.setBits(RegisterFile.R1, r1);
+        this.registers.setBits(RegisterFile.R2, r2);
+        this.registers.setBits(RegisterFile.R3, r3);
+        this.registers.setBits(RegisterFile.X1, x1);
+        this.registers.setBits(RegisterFile.X2, x2);
+        this.registers.setBits(RegisterFile.X3, x3);
+    }
+
+    /**
+     * Block exit: registers written back, PC <- nextPC
+     */
+    protected final void exit(int nextProgramCounter, int r0, int r1, int r2, int r3, int x1, int x2, int x3){
+        this.writeBack(r0, r1, r2, r3, x1, x2, x3);
+        this.controlUnit.completeInstruction(nextProgramCounter);
+    }
+
+    /**
+     * MAR <- PC, MBR <- M(PC), IR <- MBR for instruction i; PC holds its address
+     * @param i Index into the block
+     */
+    protected final void fetch(int i){
+        this.current = i;
+        this.registers.setBits(RegisterFile.PC, this.start + i);
+        this.controlUnit.latchInstruction(this.fetchAddresses[i], this.instructions[i], this.decoded[i]);
+    }
+}
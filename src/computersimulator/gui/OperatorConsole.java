@@ -51,6 +51,9 @@ import javax.swing.event.ChangeListener;
 
 public class OperatorConsole implements Runnable {    
 
+    // Clock cycles run between display updates (RUNMODE_FAST/RUNMODE_BLOCK)
+    private static final long DISPLAY_UPDATE_CYCLES = 100000;
+
     private Computer computer;
 
     // HashMap of Visual Components
@@ -223,7 +226,7 @@ public class OperatorConsole implements Runnable {
         buttonPanel.add(deposit);
         buttonPanel.add(new JSeparator(SwingConstants.VERTICAL));
         
-        SpinnerListModel model = new SpinnerListModel(new String[] {"Step", "Run"});
+        SpinnerListModel model = new SpinnerListModel(new String[] {"Step", "Run", "Fast", "Block"});
         final JSpinner spinner = new JSpinner(model);        
         JComponent field = ((JSpinner.DefaultEditor) spinner.getEditor());
         Dimension prefSize = field.getPreferredSize();
@@ -330,6 +333,14 @@ public class OperatorConsole implements Runnable {
                                         publish();
                                     } while(computer.getCpu().isRunning());                
                                     break;
+                                case Computer.RUNMODE_FAST: // runs whole instructions until halt
+                                case Computer.RUNMODE_BLOCK: // runs basic blocks until halt
+                                    computer.getCpu().setRunning(true);
+                                    do {
+                                        computer.run(OperatorConsole.DISPLAY_UPDATE_CYCLES);
+                                        publish();
+                                    } while(computer.getCpu().isRunning());
+                                    break;
                             }                                    
                              
                             return null;
@@ -377,6 +388,12 @@ public class OperatorConsole implements Runnable {
                    case "Run":
                        computer.setRunmode(Computer.RUNMODE_RUN);
                        break;
+                   case "Fast":
+                       computer.setRunmode(Computer.RUNMODE_FAST);
+                       break;
+                   case "Block":
+                       computer.setRunmode(Computer.RUNMODE_BLOCK);
+                       break;
                }
            }                      
         });
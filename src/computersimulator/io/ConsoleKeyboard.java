@@ -11,7 +11,10 @@ import java.util.logging.Logger;
  */
 public class ConsoleKeyboard implements IIODevice {
     
-    private Word buffer;
+    // written by the GUI thread, read by the simulation thread
+    private volatile Word buffer;
+    
+    private IStatusListener statusListener = null;
     
     /**
      * Console Keyboard Constructor
@@ -21,6 +24,13 @@ public class ConsoleKeyboard implements IIODevice {
         
     }
     
+    /**
+     * @param listener Notified on every key press
+     */
+    public void setStatusListener(IStatusListener listener){
+        this.statusListener = listener;
+    }
+    
     /**
      * Input reads a word
      * @return Word
@@ -58,6 +68,9 @@ public class ConsoleKeyboard implements IIODevice {
     public void buttonPress(int keyCode){        
         Logger.getLogger(CardReader.class.getName()).log(Level.CONFIG, "[IO]: Key Press - "+keyCode);
         buffer = new Word(keyCode);        
+        if(this.statusListener!=null){
+            this.statusListener.statusChanged(this);
+        }
     }
     
 }
@@ -0,0 +1,13 @@
+package computersimulator.io;
+
+/**
+ * Notified by an IO device whenever its status may have changed from outside
+ * the simulation thread (e.g. a key press on the console keyboard).
+ */
+public interface IStatusListener {
+
+    /**
+     * @param device Device whose status changed
+     */
+    public void statusChanged(IIODevice device);
+}